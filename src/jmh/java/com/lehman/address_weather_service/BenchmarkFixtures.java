@@ -0,0 +1,64 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Loads the recorded upstream responses the benchmarks run against.
+ */
+final class BenchmarkFixtures {
+    static final String STREET = "1261 Pleasant Grove Blvd";
+    static final String CITY = "Roseville";
+    static final String STATE = "CA";
+    static final String ZIPCODE = "95747";
+
+    private BenchmarkFixtures() { }
+
+    /**
+     * Reads a test resource.
+     * @param name is a String with the resource name.
+     * @return A byte array with the resource content.
+     */
+    static byte[] read(String name) {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing benchmark fixture " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a cache entry holding the recorded NWS forecast.
+     * @param compressed is a boolean with true to include the compressed copy.
+     * @return A CachedForecast that expires in 30 minutes.
+     */
+    static CachedForecast forecastEntry(boolean compressed) {
+        long now = System.currentTimeMillis();
+        CachedForecast entry = new CachedForecast(read("NwsGovClientForecastResult1.json"), null,
+            now, now + 30 * 60 * 1000L, STREET, CITY, STATE, ZIPCODE);
+        return compressed ? entry.withCompressed() : entry;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the forecast cache under contended access from many
+ * threads, configured the same way as the application's cache. Keys
+ * are drawn from a skewed distribution so a few zipcodes are hot,
+ * like real traffic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForecastCacheBenchmark {
+    private static final int KEYS = 1 << 14;
+    private static final int MASK = KEYS - 1;
+
+    @Param({ "10000" })
+    public int maxEntries;
+
+    private Cache<String, CachedForecast> cache;
+    private String[] keys;
+    private CachedForecast entry;
+
+    /**
+     * Per thread position in the key sequence.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.index = (int) Thread.currentThread().threadId() * 7919;
+        }
+
+        int next() {
+            return this.index++ & MASK;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.cache = Caffeine.newBuilder()
+            .expireAfter(new ForecastExpiry(TimeUnit.MINUTES.toMillis(10)))
+            .maximumSize(this.maxEntries)
+            .build();
+        this.entry = BenchmarkFixtures.forecastEntry(true);
+
+        // Squaring a uniform value skews the keys towards the low zipcodes.
+        Random random = new Random(42);
+        this.keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            double u = random.nextDouble();
+            this.keys[i] = String.format("%05d", (int) (u * u * this.maxEntries * 2));
+        }
+        for (String key : this.keys) {
+            this.cache.put(key, this.entry);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public CachedForecast read(Cursor cursor) {
+        return this.cache.getIfPresent(this.keys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(7)
+    public CachedForecast readWriteGet(Cursor cursor) {
+        return this.cache.getIfPresent(this.keys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWritePut(Cursor cursor) {
+        this.cache.put(this.keys[cursor.next()], this.entry);
+    }
+}
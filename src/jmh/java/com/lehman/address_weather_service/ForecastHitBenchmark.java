@@ -0,0 +1,86 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the forecast endpoint when the forecast is in the cache,
+ * from the request parameters to the bytes written to the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForecastHitBenchmark {
+    @Param({ "plain", "gzip" })
+    public String encoding;
+
+    private StubForecastService service;
+    private ForecastController controller;
+    private MockHttpServletRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.service = new StubForecastService();
+        CachedForecast entry = BenchmarkFixtures.forecastEntry(this.encoding.equals("gzip"));
+        this.service.resolveGridPoint(BenchmarkFixtures.STREET, BenchmarkFixtures.CITY, BenchmarkFixtures.STATE, BenchmarkFixtures.ZIPCODE);
+        this.service.cache.put(StubForecastService.gridKey(BenchmarkFixtures.ZIPCODE), entry);
+        this.controller = new ForecastController(this.service);
+
+        this.request = new MockHttpServletRequest("GET", "/forecast");
+        if (this.encoding.equals("gzip")) {
+            this.request.addHeader("Accept-Encoding", "gzip, deflate, br");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.controller.shutdown();
+        this.service.shutdown();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse forecastHit() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.controller.forecast(this.request, response, BenchmarkFixtures.STREET, BenchmarkFixtures.CITY,
+            BenchmarkFixtures.STATE, BenchmarkFixtures.ZIPCODE, null);
+        return response;
+    }
+}
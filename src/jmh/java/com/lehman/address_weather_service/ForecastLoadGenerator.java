@@ -0,0 +1,293 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the forecast endpoint. Starts the
+ * UpstreamSimulator in place of the Census Bureau and NWS, starts the
+ * service against it and sends forecast requests at a fixed rate for
+ * a number of zipcodes drawn from a Zipf distribution, then reports
+ * the throughput, status codes and latency percentiles. Requests are
+ * sent on schedule whether or not earlier ones have finished, and
+ * latency is measured from when a request was scheduled, so a stalled
+ * service shows up in the tail instead of slowing down the load.
+ * <p>
+ * Settings are passed as name=value arguments. The load.* and
+ * upstream.* settings are listed in DEFAULTS, and any other setting is
+ * passed to the service as a property, e.g. weatherservice.nwsRatePerSecond=0.
+ * With load.modes=blocking,async the same load is run against the
+ * blocking and the async forecast endpoint in turn, each with a new
+ * service and simulator, and their results are compared.
+ */
+public final class ForecastLoadGenerator {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        // Target requests per second, and seconds to warm up and measure.
+        DEFAULTS.put("load.rate", "200");
+        DEFAULTS.put("load.warmupSeconds", "10");
+        DEFAULTS.put("load.seconds", "30");
+        // Number of distinct zipcodes, and the Zipf exponent of how
+        // often each is requested, 0 for uniform.
+        DEFAULTS.put("load.keys", "10000");
+        DEFAULTS.put("load.skew", "1.0");
+        // Simulated upstream latency and the fractions of upstream
+        // requests that fail with a 500 or are throttled with a 429.
+        DEFAULTS.put("upstream.latencyMedianMillis", "80");
+        DEFAULTS.put("upstream.latencyP99Millis", "500");
+        DEFAULTS.put("upstream.errorRate", "0.01");
+        DEFAULTS.put("upstream.throttleRate", "0");
+        // Comma separated forecast endpoint modes to compare, blocking
+        // and async, or empty to run the service as configured.
+        DEFAULTS.put("load.modes", "");
+    }
+
+    private ForecastLoadGenerator() { }
+
+    /**
+     * Runs the load test.
+     * @param args is an Array of name=value settings.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("logging.level.root", "WARN");
+        properties.put("weatherservice.persistentCacheEnabled", "false");
+        properties.put("weatherservice.localGeocoderEnabled", "false");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value but got '" + arg + "'.");
+            }
+            String name = arg.substring(0, eq);
+            if (settings.containsKey(name)) {
+                settings.put(name, arg.substring(eq + 1));
+            } else {
+                properties.put(name, arg.substring(eq + 1));
+            }
+        }
+
+        System.out.println("Settings: " + settings);
+        String modes = settings.get("load.modes");
+        if (modes.isBlank()) {
+            run(settings, properties);
+            return;
+        }
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String mode : modes.split(",")) {
+            mode = mode.trim();
+            if (!mode.equals("blocking") && !mode.equals("async")) {
+                throw new IllegalArgumentException("Unknown mode '" + mode + "', expected blocking or async.");
+            }
+            Map<String, String> modeProperties = new LinkedHashMap<>(properties);
+            modeProperties.put("weatherservice.asyncEnabled", Boolean.toString(mode.equals("async")));
+            System.out.println();
+            System.out.println("Mode: " + mode);
+            results.put(mode, run(settings, modeProperties));
+        }
+
+        System.out.println();
+        System.out.printf("%-10s %12s %10s %10s %10s  %s%n", "Mode", "Req/s", "p50 ms", "p99 ms", "max ms", "Status");
+        for (Map.Entry<String, Result> result : results.entrySet()) {
+            Result r = result.getValue();
+            System.out.printf("%-10s %12.1f %10.1f %10.1f %10.1f  %s%n", result.getKey(), r.count / r.seconds,
+                r.percentileMillis(0.5), r.percentileMillis(0.99), r.percentileMillis(1), r.statuses);
+        }
+    }
+
+    /**
+     * Starts the simulator and the service with the properties, runs
+     * the warmup and the measured load, and reports the results.
+     * @return A Result with the measured latencies and status counts.
+     */
+    private static Result run(Map<String, String> settings, Map<String, String> properties) throws Exception {
+        double rate = Double.parseDouble(settings.get("load.rate"));
+        int keys = Math.min(Integer.parseInt(settings.get("load.keys")), 89999);
+        ZipfSampler sampler = new ZipfSampler(keys, Double.parseDouble(settings.get("load.skew")));
+        properties = new LinkedHashMap<>(properties);
+
+        try (UpstreamSimulator simulator = new UpstreamSimulator()) {
+            simulator.setLatency(Long.parseLong(settings.get("upstream.latencyMedianMillis")),
+                Long.parseLong(settings.get("upstream.latencyP99Millis")));
+            simulator.setErrorRate(Double.parseDouble(settings.get("upstream.errorRate")));
+            simulator.setThrottleRate(Double.parseDouble(settings.get("upstream.throttleRate")));
+            properties.putIfAbsent("weatherservice.geocodeUrl", simulator.getGeocodeUrl());
+            properties.putIfAbsent("weatherservice.nwsUrl", simulator.getNwsUrl());
+
+            // Passed as command line arguments so they override application.properties.
+            String[] serviceArgs = properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AddressWeatherServiceApplication.class).run(serviceArgs);
+                 ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+                 HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(executor)
+                    .build()) {
+                String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/forecast?street=1+Main+St&city=Roseville&state=CA&zipcode=";
+
+                System.out.println("Warming up for " + settings.get("load.warmupSeconds") + " s.");
+                run(client, executor, base, sampler, rate, Integer.parseInt(settings.get("load.warmupSeconds")));
+
+                long geocodes = simulator.getGeocodeRequests();
+                long points = simulator.getPointsRequests();
+                long forecasts = simulator.getForecastRequests();
+                System.out.println("Measuring for " + settings.get("load.seconds") + " s.");
+                Result result = run(client, executor, base, sampler, rate, Integer.parseInt(settings.get("load.seconds")));
+
+                System.out.println();
+                System.out.printf("Throughput: %.1f req/s (target %.1f req/s, %d requests)%n",
+                    result.count / result.seconds, rate, result.count);
+                System.out.println("Status: " + result.statuses);
+                System.out.printf("Latency ms: p50=%.1f p99=%.1f p999=%.1f max=%.1f%n",
+                    result.percentileMillis(0.5), result.percentileMillis(0.99), result.percentileMillis(0.999), result.percentileMillis(1));
+                System.out.println("Upstream requests: geocode=" + (simulator.getGeocodeRequests() - geocodes)
+                    + " points=" + (simulator.getPointsRequests() - points)
+                    + " forecast=" + (simulator.getForecastRequests() - forecasts));
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Sends requests at the rate for the number of seconds and waits for
+     * them to finish.
+     * @return A Result with the latencies and status counts.
+     */
+    private static Result run(HttpClient client, ExecutorService executor, String base, ZipfSampler sampler,
+                              double rate, int seconds) throws InterruptedException {
+        int total = (int) Math.max(1, rate * seconds);
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long[] latencies = new long[total];
+        Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        LongAdder finished = new LongAdder();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long scheduled = start + i * interval;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            String zipcode = Integer.toString(10000 + sampler.next());
+            executor.execute(() -> {
+                String status;
+                try {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(base + zipcode))
+                        .timeout(Duration.ofSeconds(30))
+                        .build();
+                    status = Integer.toString(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+                } catch (IOException e) {
+                    status = "io";
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    status = "interrupted";
+                }
+                latencies[index] = System.nanoTime() - scheduled;
+                statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+                finished.increment();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (finished.sum() < total && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Long> counts = new TreeMap<>();
+        statuses.forEach((status, count) -> counts.put(status, count.sum()));
+        long[] done = Arrays.copyOf(latencies, total);
+        Arrays.sort(done);
+        return new Result(done, total, elapsed, counts);
+    }
+
+    /**
+     * Latencies and status counts of a run.
+     */
+    private static final class Result {
+        private final long[] latencies;
+        private final long count;
+        private final double seconds;
+        private final Map<String, Long> statuses;
+
+        private Result(long[] latencies, long count, double seconds, Map<String, Long> statuses) {
+            this.latencies = latencies;
+            this.count = count;
+            this.seconds = seconds;
+            this.statuses = statuses;
+        }
+
+        private double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile * this.latencies.length) - 1;
+            return this.latencies[Math.max(0, Math.min(this.latencies.length - 1, index))] / 1e6;
+        }
+    }
+
+    /**
+     * Draws key indexes from a Zipf distribution, where the key of rank
+     * k is requested in proportion to 1 / k^skew.
+     */
+    private static final class ZipfSampler {
+        private final double[] cdf;
+
+        private ZipfSampler(int keys, double skew) {
+            this.cdf = new double[keys];
+            double sum = 0;
+            for (int i = 0; i < keys; i++) {
+                sum += 1 / Math.pow(i + 1, skew);
+                this.cdf[i] = sum;
+            }
+            for (int i = 0; i < keys; i++) {
+                this.cdf[i] /= sum;
+            }
+        }
+
+        private int next() {
+            int index = Arrays.binarySearch(this.cdf, ThreadLocalRandom.current().nextDouble());
+            return Math.min(this.cdf.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+}
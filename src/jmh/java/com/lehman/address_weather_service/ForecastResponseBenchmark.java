@@ -0,0 +1,81 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks formatting the forecast response around a recorded NWS
+ * forecast, which replaced building the result String per request,
+ * along with the one time compression done when a forecast is cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForecastResponseBenchmark {
+    private CachedForecast entry;
+    private MockHttpServletRequest plainRequest;
+    private MockHttpServletRequest gzipRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.entry = BenchmarkFixtures.forecastEntry(true);
+        this.plainRequest = new MockHttpServletRequest("GET", "/forecast");
+        this.gzipRequest = new MockHttpServletRequest("GET", "/forecast");
+        this.gzipRequest.addHeader("Accept-Encoding", "gzip");
+    }
+
+    @Benchmark
+    public MockHttpServletResponse writePlain() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ForecastResponseWriter.write(this.plainRequest, response, this.entry, true, false, this.entry.getWrittenAt() + 5000);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse writeGzip() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ForecastResponseWriter.write(this.gzipRequest, response, this.entry, true, false, this.entry.getWrittenAt() + 5000);
+        return response;
+    }
+
+    @Benchmark
+    public CompressedEnvelope compress() {
+        return ForecastResponseWriter.compress(this.entry.getForecastBytes());
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly the service starts in each of its build modes:
+ * the plain jar (jvm), the AOT processed application with the CDS
+ * archive built by the aot profile (cds) and the GraalVM native image
+ * built by the native profile (native). Each run starts the service
+ * against the UpstreamSimulator, reports the time from launching the
+ * process to the first successful forecast response and the resident
+ * set size of the process at that point, then stops it. Modes that
+ * haven't been built are skipped.
+ * <p>
+ * Settings are passed as name=value arguments: modes with a comma
+ * separated list of modes, runs with the number of runs per mode, and
+ * build and name with the build directory and final name, which the
+ * benchmark profile fills in.
+ */
+public final class StartupBenchmark {
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private StartupBenchmark() { }
+
+    /**
+     * Runs the startup benchmark.
+     * @param args is an Array of name=value settings.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("modes", "jvm,cds,native");
+        settings.put("runs", "3");
+        settings.put("build", "target");
+        settings.put("name", "address-weather-service-1.0.0");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value but got '" + arg + "'.");
+            }
+            settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        Path build = Path.of(settings.get("build"));
+        String name = settings.get("name");
+        int runs = Integer.parseInt(settings.get("runs"));
+        String java = ProcessHandle.current().info().command().orElse("java");
+
+        try (UpstreamSimulator simulator = new UpstreamSimulator();
+             HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build()) {
+            for (String mode : settings.get("modes").split(",")) {
+                List<String> command = command(mode.trim(), java, build, name);
+                if (command == null) {
+                    System.out.println(mode + ": not built, skipping.");
+                    continue;
+                }
+                for (int run = 1; run <= runs; run++) {
+                    measure(mode.trim() + " run " + run, command, simulator, client);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the command that starts the service in the mode.
+     * @return A List with the command or null if the mode isn't built.
+     */
+    private static List<String> command(String mode, String java, Path build, String name) {
+        switch (mode) {
+            case "jvm": {
+                Path jar = build.resolve(name + ".jar");
+                return Files.exists(jar) ? new ArrayList<>(List.of(java, "-jar", jar.toString())) : null;
+            }
+            case "cds": {
+                Path jar = build.resolve("cds").resolve(name + ".jar");
+                Path archive = build.resolve("cds").resolve("application.jsa");
+                if (!Files.exists(jar) || !Files.exists(archive)) {
+                    return null;
+                }
+                return new ArrayList<>(List.of(java, "-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true", "-jar", jar.toString()));
+            }
+            case "native": {
+                Path executable = build.resolve("address-weather-service");
+                return Files.isExecutable(executable) ? new ArrayList<>(List.of(executable.toString())) : null;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown mode '" + mode + "'.");
+        }
+    }
+
+    /**
+     * Starts the service, waits for the first successful forecast and
+     * prints the time it took and the resident set size.
+     */
+    private static void measure(String label, List<String> command, UpstreamSimulator simulator, HttpClient client) throws Exception {
+        int port = freePort();
+        List<String> full = new ArrayList<>(command);
+        full.addAll(Arrays.asList(
+            "--server.port=" + port,
+            "--logging.level.root=WARN",
+            "--weatherservice.geocodeUrl=" + simulator.getGeocodeUrl(),
+            "--weatherservice.nwsUrl=" + simulator.getNwsUrl(),
+            "--weatherservice.persistentCacheEnabled=false"
+        ));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+            + "/forecast?street=1261+Pleasant+Grove+Blvd&city=Roseville&state=CA&zipcode=95747")).timeout(Duration.ofSeconds(5)).build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(full).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            long deadline = start + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (System.nanoTime() < deadline && process.isAlive()) {
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        double millis = (System.nanoTime() - start) / 1e6;
+                        System.out.printf("%s: first forecast after %.0f ms, RSS %s%n", label, millis, rss(process.pid()));
+                        return;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet.
+                }
+                Thread.sleep(5);
+            }
+            System.out.println(label + ": no successful forecast within " + TIMEOUT_SECONDS + " s.");
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Reads the resident set size of the process on Linux.
+     * @return A String with the size in MB or n/a.
+     */
+    private static String rss(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    long kb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    return (kb / 1024) + " MB";
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not on Linux.
+        }
+        return "n/a";
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the tree and streaming parses of the recorded Census
+ * geocode and NWS points responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpstreamParseBenchmark {
+    private CensusGovGeocodeClient censusClient;
+    private NwsGovClient nwsClient;
+
+    private byte[] census;
+    private String censusJson;
+    private byte[] points;
+    private String pointsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.censusClient = new CensusGovGeocodeClient("http://localhost/geocoder");
+        this.nwsClient = new NwsGovClient("http://localhost/points/");
+        this.census = BenchmarkFixtures.read("CensusGovGeocodeClientResult1.json");
+        this.censusJson = new String(this.census, StandardCharsets.UTF_8);
+        this.points = BenchmarkFixtures.read("NwsGovClientPointsResult1.json");
+        this.pointsJson = new String(this.points, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Coordinates censusTree() throws JsonProcessingException {
+        return this.censusClient.getCoordinatesFromCensusJson(this.censusJson);
+    }
+
+    @Benchmark
+    public Coordinates censusStream() throws IOException {
+        return this.censusClient.getCoordinatesFromCensusStream(new ByteArrayInputStream(this.census));
+    }
+
+    @Benchmark
+    public GridPoint pointsTree() throws JsonProcessingException {
+        return this.nwsClient.getGridPointFromPointsJson(this.pointsJson);
+    }
+
+    @Benchmark
+    public GridPoint pointsStream() throws IOException {
+        return this.nwsClient.getGridPointFromPointsStream(new ByteArrayInputStream(this.points));
+    }
+}
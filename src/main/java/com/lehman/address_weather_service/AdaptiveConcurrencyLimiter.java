@@ -0,0 +1,123 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Additive increase, multiplicative decrease (AIMD) limit on the number
+ * of concurrent calls to an upstream service. Calls over the limit are
+ * rejected right away instead of queueing. The limit grows by about one
+ * per limit's worth of successful calls while the limit is being used,
+ * and is cut by the backoff ratio whenever a call fails or takes longer
+ * than the latency threshold, so it follows the upstream's latency
+ * down when it slows and back up when it recovers.
+ */
+public class AdaptiveConcurrencyLimiter {
+    protected final int minLimit;
+    protected final int maxLimit;
+    protected final long latencyThresholdNanos;
+    protected final double backoffRatio;
+
+    private double limit;
+    private int inFlight;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Constructor sets up the limiter.
+     * @param initialLimit is an int with the starting limit.
+     * @param minLimit is an int with the lowest the limit can go.
+     * @param maxLimit is an int with the highest the limit can go.
+     * @param latencyThresholdMillis is a long with the call latency in
+     * millis above which the limit is cut.
+     * @param backoffRatio is a double between 0 and 1 the limit is
+     * multiplied by when it is cut.
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyThresholdNanos = latencyThresholdMillis * 1_000_000L;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Takes a slot if the number of calls in flight is under the limit.
+     * Every acquired slot must be given back with onSample or release.
+     * @return A boolean with true if a slot was acquired.
+     */
+    public synchronized boolean tryAcquire() {
+        if (this.inFlight >= (int) this.limit) {
+            this.rejectedCount.increment();
+            return false;
+        }
+        this.inFlight++;
+        return true;
+    }
+
+    /**
+     * Gives back a slot and adjusts the limit from the call.
+     * @param nanos is a long with the call latency in nanoseconds.
+     * @param dropped is a boolean with true if the call failed in a way
+     * that indicates the upstream is overloaded.
+     */
+    public synchronized void onSample(long nanos, boolean dropped) {
+        int used = this.inFlight;
+        this.inFlight--;
+        if (dropped || nanos > this.latencyThresholdNanos) {
+            this.limit = Math.max(this.minLimit, this.limit * this.backoffRatio);
+        } else if (used * 2 >= this.limit) {
+            // Only grow while the limit is actually being used.
+            this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+        }
+    }
+
+    /**
+     * Gives back a slot without adjusting the limit.
+     */
+    public synchronized void release() {
+        this.inFlight--;
+    }
+
+    /**
+     * Gets the current limit.
+     * @return An int with the limit.
+     */
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Gets the number of calls in flight.
+     * @return An int with the calls in flight.
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Gets the number of calls rejected for being over the limit.
+     * @return A long with the rejected count.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+}
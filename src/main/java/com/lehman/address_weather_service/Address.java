@@ -0,0 +1,131 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * Public class that contains a street address, used as the
+ * input for batch forecast requests.
+ */
+public class Address {
+    protected String street;
+    protected String city;
+    protected String state;
+    protected String zipcode;
+
+    /**
+     * Default constructor.
+     */
+    public Address() { }
+
+    /**
+     * Constructor sets the address values.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     */
+    public Address(String street, String city, String state, String zipcode) {
+        this.street = street;
+        this.city = city;
+        this.state = state;
+        this.zipcode = zipcode;
+    }
+
+    /**
+     * Gets the street.
+     * @return A String with the street address line 1.
+     */
+    public String getStreet() {
+        return street;
+    }
+
+    /**
+     * Sets the street.
+     * @param street is a String with the street address line 1.
+     */
+    public void setStreet(String street) {
+        this.street = street;
+    }
+
+    /**
+     * Gets the city.
+     * @return A String with the city name.
+     */
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * Sets the city.
+     * @param city is a String with the city name.
+     */
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    /**
+     * Gets the state.
+     * @return A String with the 2 letter state abbreviation.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state.
+     * @param state is a String with the 2 letter state abbreviation.
+     */
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * Gets the zipcode.
+     * @return A String with the zipcode.
+     */
+    public String getZipcode() {
+        return zipcode;
+    }
+
+    /**
+     * Sets the zipcode.
+     * @param zipcode is a String with the zipcode.
+     */
+    public void setZipcode(String zipcode) {
+        this.zipcode = zipcode;
+    }
+
+    /**
+     * Checks that all of the address fields are provided.
+     * @return A boolean with true if complete and false if not.
+     */
+    public boolean isComplete() {
+        return this.street != null && this.city != null && this.state != null && this.zipcode != null;
+    }
+
+    /**
+     * Creates a String representation of the address.
+     * @return A String with the address.
+     */
+    @Override
+    public String toString() {
+        return this.street + ", " + this.city + ", " + this.state + " " + this.zipcode;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads addresses from a CSV stream with street, city, state and
+ * zipcode columns, one row at a time so that the whole input is never
+ * held in memory. Fields may be quoted with double quotes to include
+ * commas, with doubled quotes for a literal quote, but a row can't span
+ * lines. An optional header row and blank lines are skipped and don't
+ * count as rows.
+ */
+public class AddressCsvReader {
+    private static final String[] HEADER = { "street", "city", "state", "zipcode" };
+
+    private final BufferedReader reader;
+    private long row = -1;
+    private boolean first = true;
+
+    /**
+     * Constructor sets the stream to read.
+     * @param in is an InputStream with the UTF-8 CSV.
+     */
+    public AddressCsvReader(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next row. A row with missing columns gives an Address
+     * that isn't complete.
+     * @return An Address object or null at the end of the stream.
+     * @throws IOException
+     */
+    public Address next() throws IOException {
+        String line;
+        while ((line = this.reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = parse(line);
+            if (this.first) {
+                this.first = false;
+                if (isHeader(fields)) {
+                    continue;
+                }
+            }
+            this.row++;
+            return new Address(field(fields, 0), field(fields, 1), field(fields, 2), field(fields, 3));
+        }
+        return null;
+    }
+
+    /**
+     * Skips rows, used to resume from a row offset.
+     * @param rows is a long with the number of rows to skip.
+     * @return A long with the number of rows skipped, which is less
+     * than requested if the stream ended.
+     * @throws IOException
+     */
+    public long skip(long rows) throws IOException {
+        long skipped = 0;
+        while (skipped < rows && this.next() != null) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Gets the 0 based number of the last row read.
+     * @return A long with the row number or -1 if none were read.
+     */
+    public long getRow() {
+        return this.row;
+    }
+
+    /**
+     * Splits a CSV line into its fields.
+     * @param line is a String with the line.
+     * @return A List of Strings with the fields.
+     */
+    static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        if (fields.size() != HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (!HEADER[i].equalsIgnoreCase(fields.get(i).trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+}
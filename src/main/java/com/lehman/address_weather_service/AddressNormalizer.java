@@ -0,0 +1,143 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds canonical address keys so that equivalent spellings of
+ * the same address (case, whitespace, punctuation and street suffix
+ * or directional abbreviations) map to the same cache entry.
+ */
+public final class AddressNormalizer {
+    // USPS standard street suffix and directional abbreviations.
+    private static final Map<String, String> ABBREVIATIONS = Map.ofEntries(
+        Map.entry("ALLEY", "ALY"),
+        Map.entry("AVENUE", "AVE"),
+        Map.entry("AV", "AVE"),
+        Map.entry("BOULEVARD", "BLVD"),
+        Map.entry("BOUL", "BLVD"),
+        Map.entry("CIRCLE", "CIR"),
+        Map.entry("COURT", "CT"),
+        Map.entry("DRIVE", "DR"),
+        Map.entry("EXPRESSWAY", "EXPY"),
+        Map.entry("FREEWAY", "FWY"),
+        Map.entry("HIGHWAY", "HWY"),
+        Map.entry("LANE", "LN"),
+        Map.entry("PARKWAY", "PKWY"),
+        Map.entry("PLACE", "PL"),
+        Map.entry("PLAZA", "PLZ"),
+        Map.entry("ROAD", "RD"),
+        Map.entry("SQUARE", "SQ"),
+        Map.entry("STREET", "ST"),
+        Map.entry("STR", "ST"),
+        Map.entry("TERRACE", "TER"),
+        Map.entry("TRAIL", "TRL"),
+        Map.entry("NORTH", "N"),
+        Map.entry("SOUTH", "S"),
+        Map.entry("EAST", "E"),
+        Map.entry("WEST", "W"),
+        Map.entry("NORTHEAST", "NE"),
+        Map.entry("NORTHWEST", "NW"),
+        Map.entry("SOUTHEAST", "SE"),
+        Map.entry("SOUTHWEST", "SW"),
+        Map.entry("APARTMENT", "APT"),
+        Map.entry("SUITE", "STE")
+    );
+
+    private AddressNormalizer() { }
+
+    /**
+     * Builds the canonical key for the provided address.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A String with the canonical address key.
+     */
+    public static String normalize(String street, String city, String state, String zipcode) {
+        StringBuilder sb = new StringBuilder(64);
+        appendWords(sb, street, true);
+        sb.append('|');
+        appendWords(sb, city, false);
+        sb.append('|');
+        appendWords(sb, state, false);
+        sb.append('|');
+        sb.append(normalizeZipcode(zipcode));
+        return sb.toString();
+    }
+
+    /**
+     * Normalizes the street address line the same way it is in the
+     * canonical key.
+     * @param street is a String with the street address line 1.
+     * @return A String with the normalized street.
+     */
+    public static String normalizeStreet(String street) {
+        StringBuilder sb = new StringBuilder(32);
+        appendWords(sb, street, true);
+        return sb.toString();
+    }
+
+    /**
+     * Normalizes a zipcode down to its 5 digit form, dropping any
+     * ZIP+4 extension.
+     * @param zipcode is a String with the zipcode.
+     * @return A String with the 5 digit zipcode.
+     */
+    public static String normalizeZipcode(String zipcode) {
+        if (zipcode == null) {
+            return "";
+        }
+        String trimmed = zipcode.trim();
+        int dash = trimmed.indexOf('-');
+        if (dash >= 0) {
+            trimmed = trimmed.substring(0, dash);
+        }
+        return trimmed.length() > 5 ? trimmed.substring(0, 5) : trimmed;
+    }
+
+    /**
+     * Appends the upper cased words of the value separated by single
+     * spaces, dropping punctuation and optionally abbreviating.
+     * @param sb is the StringBuilder to append to.
+     * @param value is a String with the value to normalize.
+     * @param abbreviate is a boolean with true to apply the street
+     * abbreviations.
+     */
+    private static void appendWords(StringBuilder sb, String value, boolean abbreviate) {
+        if (value == null) {
+            return;
+        }
+        String cleaned = value.toUpperCase(Locale.ROOT).replaceAll("[.,#]", " ");
+        boolean first = true;
+        for (String word : cleaned.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (!first) {
+                sb.append(' ');
+            }
+            sb.append(abbreviate ? ABBREVIATIONS.getOrDefault(word, word) : word);
+            first = false;
+        }
+    }
+}
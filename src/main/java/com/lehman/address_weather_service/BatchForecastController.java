@@ -0,0 +1,364 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchForecastController serves the batch and bulk forecast endpoints,
+ * which get the forecasts of many addresses in a single request.
+ */
+@RestController
+public class BatchForecastController {
+    private static Logger logger = LogManager.getLogger(BatchForecastController.class);
+
+    protected final ForecastService forecastService;
+
+    @Value( "${weatherservice.batchMaxAddresses}" )
+    protected int batchMaxAddresses;
+
+    @Value( "${weatherservice.batchMaxConcurrency}" )
+    protected int batchMaxConcurrency;
+
+    @Value( "${weatherservice.bulkMaxInFlight}" )
+    protected int bulkMaxInFlight;
+
+    protected ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Constructor takes the forecast service the endpoints are served by.
+     * @param forecastService is the ForecastService to get forecasts from.
+     */
+    public BatchForecastController(ForecastService forecastService) {
+        this.forecastService = forecastService;
+    }
+
+    /**
+     * Stops the batch executor.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.batchExecutor.shutdownNow();
+    }
+
+    /**
+     * The batch forecast endpoint takes a JSON array of addresses and
+     * returns a JSON object with a result for each address in the same
+     * order. Addresses are deduplicated, cache hits are served directly
+     * and the misses are loaded in parallel on virtual threads, bounded
+     * by the batch concurrency setting. Addresses in the same NWS grid
+     * cell share a single load. A failure for one address is returned
+     * in its result and doesn't fail the batch.
+     * @param addresses is a List of Address objects.
+     * @param fields is a String with the comma separated forecast field
+     * paths to return, or null for the whole forecasts.
+     * @return A String with the forecast results in JSON format.
+     */
+    @PostMapping("/forecast/batch")
+    public String forecastBatch(
+        HttpServletResponse response,
+        @RequestBody List<Address> addresses,
+        @RequestParam(value = "fields", required = false) String fields
+    ) {
+        ForecastProjection projection = ForecastController.parseFields(fields);
+        if (addresses.size() > this.batchMaxAddresses) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "A batch may contain at most " + this.batchMaxAddresses + " addresses.");
+        }
+        response.setContentType("application/json");
+
+        // Look up each distinct address once, serving fresh cache hits
+        // right away and loading everything else in parallel.
+        Map<String, CompletableFuture<ForecastResult>> lookups = new HashMap<>();
+        Semaphore permits = new Semaphore(this.batchMaxConcurrency);
+        for (Address address : addresses) {
+            if (address == null || !address.isComplete()) {
+                continue;
+            }
+            String addressKey = batchKey(address);
+            if (lookups.containsKey(addressKey)) {
+                continue;
+            }
+            ForecastResult hit = this.forecastService.getCachedForecast(address.getStreet(), address.getCity(), address.getState(), address.getZipcode());
+            if (hit != null) {
+                lookups.put(addressKey, CompletableFuture.completedFuture(hit));
+            } else {
+                lookups.put(addressKey, CompletableFuture.supplyAsync(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        return UpstreamScheduler.withPriority(UpstreamScheduler.Priority.BATCH,
+                            () -> this.forecastService.getForecast(address.getStreet(), address.getCity(), address.getState(), address.getZipcode()));
+                    } catch (JsonProcessingException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        permits.release();
+                    }
+                }, this.batchExecutor));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ \"results\": [");
+        for (int i = 0; i < addresses.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            Address address = addresses.get(i);
+            if (address == null || !address.isComplete()) {
+                this.appendBatchError(sb, i, address, "The street, city, state and zipcode are required.");
+                continue;
+            }
+            try {
+                ForecastResult result = lookups.get(batchKey(address)).join();
+                if (result == null) {
+                    this.appendBatchError(sb, i, address, "Forecast not found for the provided address.");
+                } else {
+                    CachedForecast entry = projection == null ? result.getEntry() : this.forecastService.project(result.getEntry(), projection);
+                    this.appendBatchResult(sb, i, address, result, entry);
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to project forecast for address: '{}': {}", address, e.getMessage());
+                this.appendBatchError(sb, i, address, "Failed to get the forecast for the provided address.");
+            } catch (ReleasedForecastException e) {
+                logger.warn("Batch forecast was evicted for address: '{}': {}", address, e.getMessage());
+                this.appendBatchError(sb, i, address, "Failed to get the forecast for the provided address.");
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.warn("Batch forecast failed for address: '{}': {}", address, cause.getMessage());
+                this.appendBatchError(sb, i, address, "Failed to get the forecast for the provided address.");
+            }
+        }
+        sb.append("] }");
+        return sb.toString();
+    }
+
+    /**
+     * The bulk forecast endpoint streams a CSV of street, city, state
+     * and zipcode rows in and streams a line of NDJSON out for each row,
+     * with the same result fields as the batch endpoint and the row
+     * number as the index. Rows are read only as fast as their forecasts
+     * are loaded, with at most bulkMaxInFlight rows loading at a time,
+     * so memory use doesn't grow with the size of the input. Results are
+     * written in input order, or as they finish with order=completion. A
+     * job that was cut off can be resumed by sending the same CSV with
+     * the offset of the first row that has no result.
+     * @param request is the HttpServletRequest with the CSV body.
+     * @param response is the HttpServletResponse to stream to.
+     * @param order is a String with input or completion.
+     * @param offset is a long with the number of rows to skip.
+     * @param fields is a String with the comma separated forecast field
+     * paths to return, or null for the whole forecasts.
+     * @throws IOException
+     */
+    @PostMapping("/forecast/bulk")
+    public void forecastBulk(
+        HttpServletRequest request,
+        HttpServletResponse response,
+        @RequestParam(value = "order", defaultValue = "input") String order,
+        @RequestParam(value = "offset", defaultValue = "0") long offset,
+        @RequestParam(value = "fields", required = false) String fields
+    ) throws IOException {
+        ForecastProjection projection = ForecastController.parseFields(fields);
+        boolean inputOrder = order.equalsIgnoreCase("input");
+        if (!inputOrder && !order.equalsIgnoreCase("completion")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The order must be input or completion.");
+        }
+        if (offset < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The offset can't be negative.");
+        }
+
+        AddressCsvReader reader = new AddressCsvReader(request.getInputStream());
+        reader.skip(offset);
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream out = response.getOutputStream();
+
+        // Rows loading in input order, or the lines of the finished rows
+        // in completion order. Only the request thread reads and writes,
+        // and it stops reading while bulkMaxInFlight rows are loading.
+        ArrayDeque<CompletableFuture<String>> window = new ArrayDeque<>();
+        LinkedBlockingQueue<String> completed = new LinkedBlockingQueue<>();
+        int inFlight = 0;
+        Address address;
+        while ((address = reader.next()) != null) {
+            long row = reader.getRow();
+            Address rowAddress = address;
+            CompletableFuture<String> line = CompletableFuture.supplyAsync(() -> this.bulkLine(row, rowAddress, projection), this.batchExecutor);
+            if (inputOrder) {
+                window.add(line);
+            } else {
+                line.thenAccept(completed::add);
+            }
+            inFlight++;
+
+            // Write whatever is done, and wait when the window is full.
+            int written = this.writeBulkLines(out, window, completed, inputOrder, inFlight >= this.bulkMaxInFlight);
+            inFlight -= written;
+            if (written > 0) {
+                out.flush();
+            }
+        }
+        while (inFlight > 0) {
+            inFlight -= this.writeBulkLines(out, window, completed, inputOrder, true);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the finished lines of a bulk job.
+     * @param out is the OutputStream to write to.
+     * @param window is the ArrayDeque of rows loading in input order,
+     * which the written rows are removed from.
+     * @param completed is the LinkedBlockingQueue of finished lines in
+     * completion order.
+     * @param inputOrder is a boolean with true to write in input order.
+     * @param wait is a boolean with true to wait for at least one line.
+     * @return An int with the number of lines written.
+     * @throws IOException
+     */
+    protected int writeBulkLines(OutputStream out, ArrayDeque<CompletableFuture<String>> window,
+            LinkedBlockingQueue<String> completed, boolean inputOrder, boolean wait) throws IOException {
+        int written = 0;
+        if (inputOrder) {
+            while (!window.isEmpty() && (window.peek().isDone() || (wait && written == 0))) {
+                out.write(window.poll().join().getBytes(StandardCharsets.UTF_8));
+                written++;
+            }
+            return written;
+        }
+
+        try {
+            String line = wait ? completed.take() : completed.poll();
+            while (line != null) {
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                written++;
+                line = completed.poll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for bulk forecasts.", e);
+        }
+        return written;
+    }
+
+    /**
+     * Loads the forecast for a bulk row and builds its NDJSON line.
+     * Failures are returned in the line rather than thrown.
+     * @param row is a long with the row number.
+     * @param address is the Address of the row.
+     * @param projection is the ForecastProjection to apply or null.
+     * @return A String with the line, including the newline.
+     */
+    protected String bulkLine(long row, Address address, ForecastProjection projection) {
+        StringBuilder sb = new StringBuilder();
+        if (!address.isComplete()) {
+            this.appendBatchError(sb, row, address, "The street, city, state and zipcode are required.");
+            return sb.append('\n').toString();
+        }
+        try {
+            ForecastResult result = this.forecastService.getCachedForecast(address.getStreet(), address.getCity(), address.getState(), address.getZipcode());
+            if (result == null) {
+                result = UpstreamScheduler.withPriority(UpstreamScheduler.Priority.BATCH,
+                    () -> this.forecastService.getForecast(address.getStreet(), address.getCity(), address.getState(), address.getZipcode()));
+            }
+            if (result == null) {
+                this.appendBatchError(sb, row, address, "Forecast not found for the provided address.");
+            } else {
+                CachedForecast entry = projection == null ? result.getEntry() : this.forecastService.project(result.getEntry(), projection);
+                this.appendBatchResult(sb, row, address, result, entry);
+            }
+        } catch (Exception e) {
+            logger.warn("Bulk forecast failed for address: '{}': {}", address, e.getMessage());
+            sb.setLength(0);
+            this.appendBatchError(sb, row, address, "Failed to get the forecast for the provided address.");
+        }
+        return sb.append('\n').toString();
+    }
+
+    /**
+     * Appends a successful batch item result.
+     * @param sb is the StringBuilder to append to.
+     * @param index is a long with the index of the address in the batch.
+     * @param address is the Address the result is for.
+     * @param result is the ForecastResult for the address.
+     * @param entry is the CachedForecast to write, which is the result
+     * entry or a projection of it.
+     */
+    protected void appendBatchResult(StringBuilder sb, long index, Address address, ForecastResult result, CachedForecast entry) {
+        sb.append("{ \"index\": ").append(index);
+        sb.append(", \"zipcode\": ").append(JsonSupport.toJsonString(address.getZipcode()));
+        sb.append(", \"success\": true, \"forecast\": ");
+        sb.append(entry.getForecast());
+        sb.append(", \"cached\": ").append(result.isCached());
+        sb.append(", \"stale\": ").append(result.isStale());
+        sb.append(", \"age\": ").append(TimeUnit.MILLISECONDS.toSeconds(result.getEntry().getAgeMillis(System.currentTimeMillis())));
+        sb.append(" }");
+    }
+
+    /**
+     * Appends a failed batch item result.
+     * @param sb is the StringBuilder to append to.
+     * @param index is a long with the index of the address in the batch.
+     * @param address is the Address the result is for, which may be null.
+     * @param message is a String with the error message.
+     */
+    protected void appendBatchError(StringBuilder sb, long index, Address address, String message) {
+        sb.append("{ \"index\": ").append(index);
+        sb.append(", \"zipcode\": ").append(JsonSupport.toJsonString(address == null ? null : address.getZipcode()));
+        sb.append(", \"success\": false, \"message\": ").append(JsonSupport.toJsonString(message));
+        sb.append(" }");
+    }
+
+    /**
+     * Gets the key a batch address is deduplicated by.
+     * @param address is the Address to get the key for.
+     * @return A String with the canonical address key.
+     */
+    private static String batchKey(Address address) {
+        return AddressNormalizer.normalize(address.getStreet(), address.getCity(), address.getState(), address.getZipcode());
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheDebugController serves the debug endpoints that show the state
+ * of the forecast cache.
+ */
+@RestController
+public class CacheDebugController {
+    protected final ForecastService forecastService;
+
+    /**
+     * Constructor takes the forecast service whose cache is shown.
+     * @param forecastService is the ForecastService to show the cache of.
+     */
+    public CacheDebugController(ForecastService forecastService) {
+        this.forecastService = forecastService;
+    }
+
+    /**
+     * The hot grid cells debug endpoint lists the most requested grid
+     * cells, most requested first, with their estimated recent request
+     * counts and cache state, along with the prefetch hit rate.
+     * @return A String with the hot set in JSON format.
+     */
+    @GetMapping("/debug/cache/hot")
+    public String hotGridCells(HttpServletResponse response) {
+        if (this.forecastService.hotKeys == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Prefetching is not enabled.");
+        }
+        response.setContentType("application/json");
+
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ \"hotKeys\": [");
+        boolean first = true;
+        for (HotKeyTracker.HotKey hot : this.forecastService.hotKeys.getHotKeys()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            CachedForecast entry = this.forecastService.cache.getIfPresent(hot.getKey());
+            sb.append("{ \"key\": ").append(JsonSupport.toJsonString(hot.getKey()));
+            sb.append(", \"frequency\": ").append(hot.getFrequency());
+            sb.append(", \"cached\": ").append(entry != null);
+            if (entry != null) {
+                sb.append(", \"expiresIn\": ").append(TimeUnit.MILLISECONDS.toSeconds(entry.getExpiresAt() - now));
+            }
+            sb.append(" }");
+        }
+        sb.append("], \"prefetches\": ").append(this.forecastService.prefetchCount.sum());
+        sb.append(", \"prefetchHits\": ").append(this.forecastService.prefetchHitCount.sum());
+        sb.append(", \"prefetchHitRate\": ").append(this.forecastService.getPrefetchHitRate());
+        sb.append(" }");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,413 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Immutable forecast cache entry. Holds the forecast JSON along with
+ * when it was written and when it expires, and the address it was
+ * loaded for so that it can be reloaded in the background. The
+ * forecast is kept as pre-encoded UTF-8 bytes, optionally with a
+ * pre-compressed copy, so cache hits can be written out as is, and
+ * with the ETag clients use to revalidate it and the NWS validators
+ * used to revalidate it upstream.
+ */
+public class CachedForecast {
+    // Approximate heap bytes of an entry besides its forecast payload,
+    // for the address, validators, ETag and object headers.
+    protected static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    protected final byte[] forecast;
+    protected final CompressedEnvelope compressed;
+    protected final String etag;
+    protected final NwsForecast upstream;
+    protected final long writtenAt;
+    protected final long expiresAt;
+
+    protected final String street;
+    protected final String city;
+    protected final String state;
+    protected final String zipcode;
+
+    /**
+     * Constructor sets the entry values.
+     * @param forecast is a String with the forecast JSON.
+     * @param writtenAt is a long with the epoch millis the forecast was loaded.
+     * @param expiresAt is a long with the epoch millis the forecast expires.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     */
+    public CachedForecast(String forecast, long writtenAt, long expiresAt, String street, String city, String state, String zipcode) {
+        this(forecast.getBytes(StandardCharsets.UTF_8), null, writtenAt, expiresAt, street, city, state, zipcode);
+    }
+
+    /**
+     * Constructor sets the entry values from the encoded forecast.
+     * @param forecast is a byte array with the UTF-8 forecast JSON.
+     * @param compressed is the CompressedEnvelope of the forecast or null.
+     * @param writtenAt is a long with the epoch millis the forecast was loaded.
+     * @param expiresAt is a long with the epoch millis the forecast expires.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     */
+    public CachedForecast(byte[] forecast, CompressedEnvelope compressed, long writtenAt, long expiresAt,
+                          String street, String city, String state, String zipcode) {
+        this(forecast, compressed, writtenAt, expiresAt, street, city, state, zipcode, null);
+    }
+
+    /**
+     * Constructor sets the entry values from the encoded forecast along
+     * with the NWS validators.
+     * @param forecast is a byte array with the UTF-8 forecast JSON.
+     * @param compressed is the CompressedEnvelope of the forecast or null.
+     * @param writtenAt is a long with the epoch millis the forecast was loaded.
+     * @param expiresAt is a long with the epoch millis the forecast expires.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param upstream is a NwsForecast with the forecast URL and NWS
+     * validators, without the body, or null if there aren't any.
+     */
+    public CachedForecast(byte[] forecast, CompressedEnvelope compressed, long writtenAt, long expiresAt,
+                          String street, String city, String state, String zipcode, NwsForecast upstream) {
+        this(forecast, compressed, computeEtag(forecast), writtenAt, expiresAt, street, city, state, zipcode, upstream);
+    }
+
+    /**
+     * Constructor sets the entry values with an already computed ETag,
+     * for subclasses that keep the forecast somewhere else.
+     * @param forecast is a byte array with the UTF-8 forecast JSON or null.
+     * @param compressed is the CompressedEnvelope of the forecast or null.
+     * @param etag is a String with the ETag of the forecast.
+     * @param writtenAt is a long with the epoch millis the forecast was loaded.
+     * @param expiresAt is a long with the epoch millis the forecast expires.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param upstream is a NwsForecast with the NWS validators or null.
+     */
+    protected CachedForecast(byte[] forecast, CompressedEnvelope compressed, String etag, long writtenAt, long expiresAt,
+                             String street, String city, String state, String zipcode, NwsForecast upstream) {
+        this.forecast = forecast;
+        this.compressed = compressed;
+        this.etag = etag;
+        this.upstream = upstream;
+        this.writtenAt = writtenAt;
+        this.expiresAt = expiresAt;
+        this.street = street;
+        this.city = city;
+        this.state = state;
+        this.zipcode = zipcode;
+    }
+
+    /**
+     * Gets the forecast JSON. This decodes the stored bytes, so the
+     * response path should use getForecastBytes instead.
+     * @return A String with the forecast JSON.
+     */
+    public String getForecast() {
+        return new String(this.getForecastBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the UTF-8 encoded forecast JSON. The returned array must
+     * not be modified.
+     * @return A byte array with the forecast JSON.
+     */
+    public byte[] getForecastBytes() {
+        return forecast;
+    }
+
+    /**
+     * Gets the pre-compressed copy of the forecast response. The
+     * response path should use writeDeflated instead.
+     * @return A CompressedEnvelope or null if there isn't one.
+     */
+    public CompressedEnvelope getCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Adds a reader of the forecast bytes. Entries kept off the heap
+     * have to be retained while their bytes are read and released
+     * after, and entries on the heap can always be read.
+     * @return A boolean with true if retained and false if the
+     * forecast was already released.
+     */
+    public boolean retain() {
+        return true;
+    }
+
+    /**
+     * Drops a reader of the forecast bytes, or the cache's reference
+     * once the entry has been removed from the cache.
+     */
+    public void release() { }
+
+    /**
+     * Gets the number of bytes of the UTF-8 encoded forecast JSON.
+     * @return An int with the forecast length.
+     */
+    public int getForecastLength() {
+        return this.forecast.length;
+    }
+
+    /**
+     * Writes the UTF-8 encoded forecast JSON without copying it. The
+     * entry must be retained while it is written.
+     * @param out is the OutputStream to write to.
+     * @throws IOException
+     */
+    public void writeForecast(OutputStream out) throws IOException {
+        out.write(this.forecast);
+    }
+
+    /**
+     * Checks if the entry has a pre-compressed copy of the response.
+     * @return A boolean with true if it has one and false if not.
+     */
+    public boolean hasCompressed() {
+        return this.compressed != null;
+    }
+
+    /**
+     * Gets the number of bytes of the pre-compressed deflate blocks.
+     * @return An int with the deflated length.
+     */
+    public int getDeflatedLength() {
+        return this.compressed.getDeflated().length;
+    }
+
+    /**
+     * Gets the CRC32 of the bytes the pre-compressed copy holds.
+     * @return A long with the CRC32.
+     */
+    public long getCompressedCrc() {
+        return this.compressed.getCrc();
+    }
+
+    /**
+     * Gets the number of bytes the pre-compressed copy holds
+     * uncompressed.
+     * @return An int with the uncompressed length.
+     */
+    public int getCompressedLength() {
+        return this.compressed.getLength();
+    }
+
+    /**
+     * Writes the pre-compressed deflate blocks without copying them.
+     * The entry must be retained while they are written.
+     * @param out is the OutputStream to write to.
+     * @throws IOException
+     */
+    public void writeDeflated(OutputStream out) throws IOException {
+        out.write(this.compressed.getDeflated());
+    }
+
+    /**
+     * Creates a copy of this entry with the pre-compressed copy of
+     * the forecast response.
+     * @return A new CachedForecast with the compressed copy.
+     */
+    public CachedForecast withCompressed() {
+        byte[] forecast = this.getForecastBytes();
+        CompressedEnvelope envelope = ForecastResponseWriter.compress(forecast);
+        return new CachedForecast(forecast, envelope, this.writtenAt, this.expiresAt,
+            this.street, this.city, this.state, this.zipcode, this.upstream);
+    }
+
+    /**
+     * Creates a copy of this entry with a projection of the forecast in
+     * place of the whole forecast.
+     * @param projected is a byte array with the projected UTF-8 JSON.
+     * @return A new CachedForecast with the projected forecast.
+     */
+    public CachedForecast projected(byte[] projected) {
+        return new CachedForecast(projected, null, this.writtenAt, this.expiresAt,
+            this.street, this.city, this.state, this.zipcode, this.upstream);
+    }
+
+    /**
+     * Creates a copy of this entry with the forecast and its compressed
+     * copy moved off the heap.
+     * @return A new OffHeapCachedForecast with the same values.
+     */
+    public CachedForecast offHeap() {
+        return new OffHeapCachedForecast(this);
+    }
+
+    /**
+     * Checks if the forecast is kept off the heap.
+     * @return A boolean with true if off heap and false if not.
+     */
+    public boolean isOffHeap() {
+        return false;
+    }
+
+    /**
+     * Gets the number of bytes of the forecast and its compressed copy.
+     * @return An int with the payload size in bytes.
+     */
+    public int getPayloadBytes() {
+        return this.forecast.length + (this.compressed == null ? 0 : this.compressed.getDeflated().length);
+    }
+
+    /**
+     * Gets the approximate number of bytes the entry takes up, which is
+     * its weight in the forecast cache.
+     * @return An int with the size in bytes.
+     */
+    public int getWeight() {
+        return ENTRY_OVERHEAD_BYTES + this.getPayloadBytes();
+    }
+
+    /**
+     * Creates a copy of this entry that was revalidated at the provided
+     * time, keeping the forecast and its compressed copy.
+     * @param writtenAt is a long with the epoch millis the forecast was revalidated.
+     * @param expiresAt is a long with the epoch millis the forecast now expires.
+     * @param upstream is a NwsForecast with the current NWS validators.
+     * @return A new CachedForecast with the new times.
+     */
+    public CachedForecast revalidated(long writtenAt, long expiresAt, NwsForecast upstream) {
+        return new CachedForecast(this.forecast, this.compressed, writtenAt, expiresAt,
+            this.street, this.city, this.state, this.zipcode, upstream);
+    }
+
+    /**
+     * Gets the ETag of the forecast, which is a weak validator since
+     * the response around the forecast changes with its age.
+     * @return A String with the ETag.
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Gets the NWS forecast URL and validators.
+     * @return A NwsForecast without a body or null if there aren't any.
+     */
+    public NwsForecast getUpstream() {
+        return upstream;
+    }
+
+    /**
+     * Gets the time the forecast was loaded.
+     * @return A long with the epoch millis the forecast was loaded.
+     */
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    /**
+     * Gets the time the forecast expires.
+     * @return A long with the epoch millis the forecast expires.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Gets the street the forecast was loaded for.
+     * @return A String with the street address line 1.
+     */
+    public String getStreet() {
+        return street;
+    }
+
+    /**
+     * Gets the city the forecast was loaded for.
+     * @return A String with the city name.
+     */
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * Gets the state the forecast was loaded for.
+     * @return A String with the 2 letter state abbreviation.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Gets the zipcode the forecast was loaded for.
+     * @return A String with the zipcode.
+     */
+    public String getZipcode() {
+        return zipcode;
+    }
+
+    /**
+     * Gets the age of the entry.
+     * @param now is a long with the current epoch millis.
+     * @return A long with the age in milliseconds.
+     */
+    public long getAgeMillis(long now) {
+        return Math.max(0, now - this.writtenAt);
+    }
+
+    /**
+     * Gets the number of whole seconds until the entry expires.
+     * @param now is a long with the current epoch millis.
+     * @return A long with the remaining seconds, 0 if expired.
+     */
+    public long getRemainingSeconds(long now) {
+        return Math.max(0, (this.expiresAt - now) / 1000);
+    }
+
+    /**
+     * Checks if the entry has passed its expiration time. An expired
+     * entry may still be served as stale.
+     * @param now is a long with the current epoch millis.
+     * @return A boolean with true if expired and false if not.
+     */
+    public boolean isExpired(long now) {
+        return now >= this.expiresAt;
+    }
+
+    /**
+     * Computes the weak ETag for the forecast bytes.
+     * @param forecast is a byte array with the forecast.
+     * @return A String with the ETag.
+     */
+    private static String computeEtag(byte[] forecast) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(forecast);
+            return "W/\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -19,25 +19,52 @@
 
 package com.lehman.address_weather_service;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Census Bureau web client handles geocoding requests.
  */
 public class CensusGovGeocodeClient {
-    private RestClient client = RestClient.create();
+    private final RestClient client;
     protected String url;
 
+    // Parse responses with the streaming parser instead of a JSON tree.
+    protected boolean streamingParse = true;
+
+    protected ForecastMetrics metrics = new ForecastMetrics();
+
+    protected UpstreamGuard guard = UpstreamGuard.unguarded("census");
+
+    protected UpstreamScheduler scheduler = new UpstreamScheduler(0, 0);
+
+    // Host the scheduler rate limits the requests by.
+    protected final String host;
+
     /**
      * Default constructor takes a URL to use.
      * @param url is a String with the URL to use.
      */
     public CensusGovGeocodeClient(String url) {
+        this(RestClient.create(), url);
+    }
+
+    /**
+     * Constructor takes the shared RestClient and the URL to use.
+     * @param client is the RestClient to make requests with.
+     * @param url is a String with the URL to use.
+     */
+    public CensusGovGeocodeClient(RestClient client, String url) {
+        this.client = client;
         this.url = url;
+        this.host = UpstreamScheduler.hostOf(url);
     }
 
     /**
@@ -51,6 +78,34 @@ public class CensusGovGeocodeClient {
      * @throws JsonProcessingException
      */
     public Coordinates geocode(String street, String city, String state, String zipcode) throws JsonProcessingException {
+        return this.metrics.time(ForecastMetrics.Stage.GEOCODE, () -> this.scheduler.call(this.host,
+            () -> this.guard.call(() -> this.requestCoordinates(street, city, state, zipcode))));
+    }
+
+    /**
+     * Makes the geocode request for the address and parses the
+     * coordinates from the response.
+     * @param street is a String with the first line of the address.
+     * @param city is a String with the city.
+     * @param state is a String with the two character state code.
+     * @param zipcode is a String with the zipcode.
+     * @return A Coordinate object with the geocoded point.
+     * @throws JsonProcessingException
+     */
+    private Coordinates requestCoordinates(String street, String city, String state, String zipcode) throws JsonProcessingException {
+        if (this.streamingParse) {
+            try {
+                return this.client.get()
+                    .uri(this.url, street, city, state, zipcode)
+                    .exchange((request, response) -> {
+                        UpstreamResponses.checkStatus(response);
+                        return UpstreamResponses.parseAndDrain(response, this::getCoordinatesFromCensusStream);
+                    });
+            } catch (ResourceAccessException e) {
+                throw UpstreamResponses.unwrapParseFailure(e);
+            }
+        }
+
         String json = this.client.get()
             .uri(this.url, street, city, state, zipcode)
             .retrieve()
@@ -70,8 +125,7 @@ public class CensusGovGeocodeClient {
         Coordinates coordinates = null;
 
         // Parse the result JSON
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode root = objectMapper.readTree(json);
+        JsonNode root = JsonSupport.READER.readTree(json);
 
         // Get the coordinate values and set them in the return object.
         JsonNode result = root.get("result");
@@ -88,4 +142,82 @@ public class CensusGovGeocodeClient {
 
         return coordinates;
     }
+
+    /**
+     * Reads the Census JSON response from the provided stream and
+     * returns a Coordinates object or null if not found. Only the
+     * fields leading to the first match's coordinates are read, and
+     * reading stops as soon as both values have been found.
+     * @param in is an InputStream with the Census Bureau response.
+     * @return A Coordinates object or null if not found.
+     * @throws IOException
+     */
+    public Coordinates getCoordinatesFromCensusStream(InputStream in) throws IOException {
+        try (JsonParser parser = JsonSupport.MAPPER.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !StreamingJson.findField(parser, "result")) {
+                return null;
+            }
+            if (parser.currentToken() != JsonToken.START_OBJECT || !StreamingJson.findField(parser, "addressMatches")) {
+                return null;
+            }
+            if (parser.currentToken() != JsonToken.START_ARRAY || parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            if (!StreamingJson.findField(parser, "coordinates") || parser.currentToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            Double x = null;
+            Double y = null;
+            while ((x == null || y == null) && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("x".equals(name)) {
+                    x = parser.getValueAsDouble();
+                } else if ("y".equals(name)) {
+                    y = parser.getValueAsDouble();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            Coordinates coordinates = new Coordinates();
+            coordinates.setLongitude(x == null ? 0.0 : x);
+            coordinates.setLatitude(y == null ? 0.0 : y);
+            return coordinates;
+        }
+    }
+
+    /**
+     * Sets whether responses are parsed with the streaming parser or
+     * read into a JSON tree.
+     * @param streamingParse is a boolean with true to use the streaming parser.
+     */
+    public void setStreamingParse(boolean streamingParse) {
+        this.streamingParse = streamingParse;
+    }
+
+    /**
+     * Sets the metrics the geocode latency and failures are recorded to.
+     * @param metrics is the ForecastMetrics to record to.
+     */
+    public void setMetrics(ForecastMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the guard the geocode requests go through.
+     * @param guard is the UpstreamGuard to use.
+     */
+    public void setGuard(UpstreamGuard guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * Sets the scheduler that rate limits the requests.
+     * @param scheduler is the UpstreamScheduler to use.
+     */
+    public void setScheduler(UpstreamScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
 }
@@ -0,0 +1,203 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count based circuit breaker for an upstream service. While closed it
+ * keeps the outcomes of the last window of calls, and once enough
+ * calls have been made and the failure rate reaches the threshold it
+ * opens and rejects every call for the open duration. After that a
+ * single probe call is let through (half open); if it succeeds the
+ * breaker closes again and if it fails it opens for another period.
+ */
+public class CircuitBreaker {
+    /**
+     * The breaker states, with the value reported by the state gauge.
+     */
+    public enum State {
+        CLOSED(0),
+        HALF_OPEN(1),
+        OPEN(2);
+
+        private final int value;
+
+        State(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    protected final int minimumCalls;
+    protected final double failureRateThreshold;
+    protected final long openMillis;
+
+    // Ring buffer with the outcomes of the last window of calls.
+    private final boolean[] window;
+    private int next;
+    private int calls;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private boolean probeInFlight;
+
+    private final LongAdder openedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Constructor sets up a closed breaker.
+     * @param windowSize is an int with the number of recent calls the
+     * failure rate is computed over.
+     * @param minimumCalls is an int with the number of calls needed
+     * before the breaker may open.
+     * @param failureRateThreshold is a double with the failure rate from
+     * 0 to 1 that opens the breaker.
+     * @param openMillis is a long with the millis the breaker stays open.
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openMillis) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.min(Math.max(1, minimumCalls), this.window.length);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Checks if a call may be made. Every permitted call must be
+     * followed by onSuccess, onFailure or release.
+     * @return A boolean with true if the call is permitted.
+     */
+    public synchronized boolean tryAcquire() {
+        if (this.state == State.OPEN && System.currentTimeMillis() >= this.openUntil) {
+            this.state = State.HALF_OPEN;
+        }
+        if (this.state == State.CLOSED) {
+            return true;
+        }
+        if (this.state == State.HALF_OPEN && !this.probeInFlight) {
+            this.probeInFlight = true;
+            return true;
+        }
+        this.rejectedCount.increment();
+        return false;
+    }
+
+    /**
+     * Records a successful call.
+     */
+    public synchronized void onSuccess() {
+        if (this.state == State.HALF_OPEN) {
+            this.probeInFlight = false;
+            this.close();
+        } else if (this.state == State.CLOSED) {
+            this.add(false);
+        }
+    }
+
+    /**
+     * Records a failed call.
+     */
+    public synchronized void onFailure() {
+        if (this.state == State.HALF_OPEN) {
+            this.probeInFlight = false;
+            this.open();
+        } else if (this.state == State.CLOSED) {
+            this.add(true);
+            if (this.calls >= this.minimumCalls && this.failures >= this.failureRateThreshold * this.calls) {
+                this.open();
+            }
+        }
+    }
+
+    /**
+     * Releases a permitted call that was never made, without recording
+     * an outcome.
+     */
+    public synchronized void release() {
+        this.probeInFlight = false;
+    }
+
+    /**
+     * Gets the current state.
+     * @return The breaker State.
+     */
+    public synchronized State getState() {
+        if (this.state == State.OPEN && System.currentTimeMillis() >= this.openUntil) {
+            return State.HALF_OPEN;
+        }
+        return this.state;
+    }
+
+    /**
+     * Gets the millis until an open breaker lets a probe call through.
+     * @return A long with the millis, 0 if it isn't open.
+     */
+    public synchronized long getOpenRemainingMillis() {
+        return this.state == State.OPEN ? Math.max(0, this.openUntil - System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * Gets the number of times the breaker has opened.
+     * @return A long with the open count.
+     */
+    public long getOpenedCount() {
+        return this.openedCount.sum();
+    }
+
+    /**
+     * Gets the number of calls rejected while open.
+     * @return A long with the rejected count.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    private void add(boolean failure) {
+        if (this.calls == this.window.length) {
+            if (this.window[this.next]) {
+                this.failures--;
+            }
+        } else {
+            this.calls++;
+        }
+        this.window[this.next] = failure;
+        if (failure) {
+            this.failures++;
+        }
+        this.next = (this.next + 1) % this.window.length;
+    }
+
+    private void open() {
+        this.state = State.OPEN;
+        this.openUntil = System.currentTimeMillis() + this.openMillis;
+        this.openedCount.increment();
+    }
+
+    private void close() {
+        this.state = State.CLOSED;
+        this.next = 0;
+        this.calls = 0;
+        this.failures = 0;
+    }
+}
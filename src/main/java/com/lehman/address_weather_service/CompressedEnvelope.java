@@ -0,0 +1,69 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * Pre-compressed start of a forecast response. Holds the raw deflate
+ * blocks for the response prefix and forecast payload, flushed to a
+ * byte boundary so the per-request suffix can be appended as a final
+ * stored block, along with the CRC32 and length of the uncompressed
+ * bytes needed to write the gzip trailer.
+ */
+public class CompressedEnvelope {
+    protected final byte[] deflated;
+    protected final long crc;
+    protected final int length;
+
+    /**
+     * Constructor sets the compressed values.
+     * @param deflated is a byte array with the raw deflate blocks.
+     * @param crc is a long with the CRC32 of the uncompressed bytes.
+     * @param length is an int with the number of uncompressed bytes.
+     */
+    public CompressedEnvelope(byte[] deflated, long crc, int length) {
+        this.deflated = deflated;
+        this.crc = crc;
+        this.length = length;
+    }
+
+    /**
+     * Gets the raw deflate blocks.
+     * @return A byte array with the deflate blocks.
+     */
+    public byte[] getDeflated() {
+        return deflated;
+    }
+
+    /**
+     * Gets the CRC32 of the uncompressed bytes.
+     * @return A long with the CRC32.
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * Gets the number of uncompressed bytes.
+     * @return An int with the uncompressed length.
+     */
+    public int getLength() {
+        return length;
+    }
+}
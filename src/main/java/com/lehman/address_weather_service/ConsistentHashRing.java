@@ -0,0 +1,104 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring that picks the owner node of a key. Each node
+ * is placed on the ring at many virtual points so keys spread evenly,
+ * and adding or removing a node only moves the keys next to its
+ * points. The ring is kept in sorted primitive arrays and searched
+ * with binary search.
+ */
+public class ConsistentHashRing {
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * Constructor builds the ring.
+     * @param nodes is a List of node names.
+     * @param virtualNodes is an int with the number of points per node.
+     */
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("The hash ring needs at least one node.");
+        }
+        int count = nodes.size() * virtualNodes;
+        long[] packed = new long[count];
+        long[] hashes = new long[count];
+        int n = 0;
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[n] = hash(nodes.get(node) + "#" + v);
+                n++;
+            }
+        }
+
+        // Sort the points by hash, carrying the node index along.
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            this.points[i] = hashes[order[i]];
+            this.owners[i] = nodes.get(order[i] / virtualNodes);
+        }
+    }
+
+    /**
+     * Gets the node that owns the key, which is the node of the first
+     * point at or after the key's hash.
+     * @param key is a String with the key.
+     * @return A String with the owner node name.
+     */
+    public String getOwner(String key) {
+        int index = Arrays.binarySearch(this.points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return this.owners[index == this.points.length ? 0 : index];
+    }
+
+    /**
+     * Hashes the value with 64 bit FNV-1a followed by a final mix so
+     * that similar keys land far apart on the ring.
+     * @param value is a String to hash.
+     * @return A long with the hash.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
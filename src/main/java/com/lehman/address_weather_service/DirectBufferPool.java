@@ -0,0 +1,210 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct memory blocks for the off-heap forecast cache. Blocks
+ * are cut from large slabs in size classes a quarter of a power of two
+ * apart, and a block goes back to its free list as soon as the last
+ * reference to it is released, so direct memory is reused as entries
+ * are evicted instead of waiting on the garbage collector to free it.
+ * Slabs are kept for the life of the pool, so the direct memory in use
+ * is bounded by the most the cache has held at once. A block that is
+ * garbage collected without being released goes back to the pool then.
+ */
+public class DirectBufferPool {
+    private static final int MIN_BLOCK_BYTES = 1024;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    protected final int slabBytes;
+
+    // Free blocks by block size.
+    private final ConcurrentHashMap<Integer, Queue<ByteBuffer>> free = new ConcurrentHashMap<>();
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Constructor sets up the pool.
+     * @param slabBytes is an int with the size in bytes of the slabs
+     * blocks are cut from.
+     */
+    public DirectBufferPool(int slabBytes) {
+        this.slabBytes = slabBytes;
+    }
+
+    /**
+     * Copies the provided parts into a block from the pool, one after
+     * the other. The block starts with one reference.
+     * @param parts are the byte arrays to copy, null parts are skipped.
+     * @return A Block with the bytes.
+     */
+    public Block allocate(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part == null ? 0 : part.length;
+        }
+        int size = blockSize(length);
+        ByteBuffer buffer = this.free.computeIfAbsent(size, k -> new ConcurrentLinkedQueue<>()).poll();
+        if (buffer == null) {
+            buffer = this.allocateSlab(size);
+        }
+        buffer.clear();
+        for (byte[] part : parts) {
+            if (part != null) {
+                buffer.put(part);
+            }
+        }
+        return new Block(this, buffer, length);
+    }
+
+    /**
+     * Gets the direct memory the pool has taken for its slabs, in use
+     * or free.
+     * @return A long with the number of bytes.
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Gets the size of the block that holds the number of bytes.
+     * @param length is an int with the number of bytes.
+     * @return An int with the block size in bytes.
+     */
+    static int blockSize(int length) {
+        if (length <= MIN_BLOCK_BYTES) {
+            return MIN_BLOCK_BYTES;
+        }
+        int step = Integer.highestOneBit(length - 1) >>> 2;
+        return (length + step - 1) / step * step;
+    }
+
+    /**
+     * Cuts a new slab into blocks of the size, keeping one and adding
+     * the rest to the free list.
+     */
+    private ByteBuffer allocateSlab(int size) {
+        int count = Math.max(1, this.slabBytes / size);
+        ByteBuffer slab = ByteBuffer.allocateDirect(count * size);
+        this.reservedBytes.addAndGet((long) count * size);
+        Queue<ByteBuffer> blocks = this.free.get(size);
+        for (int i = 1; i < count; i++) {
+            blocks.add(slab.slice(i * size, size));
+        }
+        return slab.slice(0, size);
+    }
+
+    private void free(ByteBuffer buffer) {
+        this.free.get(buffer.capacity()).add(buffer);
+    }
+
+    /**
+     * Reference counted block of direct memory. Readers retain the
+     * block while they use it, and once the last reference is released
+     * it goes back to the pool and must not be read again.
+     */
+    public static final class Block {
+        private final DirectBufferPool pool;
+        private final ByteBuffer buffer;
+        private final ByteBuffer view;
+        private final int length;
+        private final AtomicInteger references;
+
+        private Block(DirectBufferPool pool, ByteBuffer buffer, int length) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.view = buffer.asReadOnlyBuffer();
+            this.length = length;
+            AtomicInteger references = new AtomicInteger(1);
+            this.references = references;
+            CLEANER.register(this, () -> {
+                if (references.getAndSet(0) > 0) {
+                    pool.free(buffer);
+                }
+            });
+        }
+
+        /**
+         * Adds a reference to the block if it hasn't been released.
+         * @return A boolean with true if retained and false if the
+         * block was already released.
+         */
+        public boolean retain() {
+            while (true) {
+                int count = this.references.get();
+                if (count <= 0) {
+                    return false;
+                }
+                if (this.references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Drops a reference to the block, returning it to the pool when
+         * it was the last one.
+         */
+        public void release() {
+            int count = this.references.decrementAndGet();
+            if (count == 0) {
+                this.pool.free(this.buffer);
+            } else if (count < 0) {
+                throw new IllegalStateException("Block released more times than it was retained.");
+            }
+        }
+
+        /**
+         * Gets a read only view of part of the block. The caller must
+         * hold a reference while it reads the view.
+         * @param offset is an int with the offset of the part.
+         * @param length is an int with the length of the part.
+         * @return A ByteBuffer positioned on the part.
+         */
+        public ByteBuffer slice(int offset, int length) {
+            return this.view.slice(offset, length);
+        }
+
+        /**
+         * Gets the number of bytes copied into the block.
+         * @return An int with the length.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the size of the block, which is the direct memory it
+         * takes up.
+         * @return An int with the capacity in bytes.
+         */
+        public int getCapacity() {
+            return buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * Second level forecast cache consulted when a forecast isn't in the
+ * local cache, before loading it from the NWS.
+ */
+public interface ForecastCacheTier {
+    /**
+     * Tier that never has a forecast, so every miss is loaded locally.
+     */
+    ForecastCacheTier NONE = (point, address) -> null;
+
+    /**
+     * Gets the forecast for the grid cell from the tier.
+     * @param point is the GridPoint of the forecast.
+     * @param address is the Address the forecast was requested for.
+     * @return A CachedForecast or null if the tier doesn't have it and
+     * it should be loaded locally.
+     */
+    CachedForecast get(GridPoint point, Address address);
+
+    /**
+     * Adds a forecast that was loaded locally to the tier.
+     * @param key is a String with the grid cell cache key.
+     * @param entry is the CachedForecast that was loaded.
+     */
+    default void put(String key, CachedForecast entry) { }
+}
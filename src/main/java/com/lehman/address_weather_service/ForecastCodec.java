@@ -0,0 +1,103 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Binary encoding of a forecast cache entry and its key, shared by the
+ * persistent store records and the peer cache responses. The
+ * pre-compressed copy isn't encoded since it is rebuilt on load.
+ */
+public final class ForecastCodec {
+    private ForecastCodec() { }
+
+    /**
+     * Encodes the cache entry and its key.
+     * @param key is a String with the cache key.
+     * @param entry is the CachedForecast to encode.
+     * @return A byte array with the encoded entry.
+     * @throws IOException
+     */
+    public static byte[] encode(String key, CachedForecast entry) throws IOException {
+        byte[] forecast = entry.getForecastBytes();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(forecast.length + 256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeUTF(key);
+        out.writeLong(entry.getWrittenAt());
+        out.writeLong(entry.getExpiresAt());
+        out.writeUTF(nullToEmpty(entry.getStreet()));
+        out.writeUTF(nullToEmpty(entry.getCity()));
+        out.writeUTF(nullToEmpty(entry.getState()));
+        out.writeUTF(nullToEmpty(entry.getZipcode()));
+        out.writeInt(forecast.length);
+        out.write(forecast);
+
+        // NWS validators, added after the original fields so entries
+        // without them can still be read.
+        NwsForecast upstream = entry.getUpstream();
+        out.writeBoolean(upstream != null);
+        if (upstream != null) {
+            out.writeUTF(upstream.getForecastUrl());
+            out.writeUTF(nullToEmpty(upstream.getEtag()));
+            out.writeUTF(nullToEmpty(upstream.getLastModified()));
+            out.writeLong(upstream.getExpires());
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decodes a cache entry and its key.
+     * @param bytes is a byte array with the encoded entry.
+     * @return A Map.Entry of the key to the CachedForecast.
+     * @throws IOException
+     */
+    public static Map.Entry<String, CachedForecast> decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String key = in.readUTF();
+        long writtenAt = in.readLong();
+        long expiresAt = in.readLong();
+        String street = in.readUTF();
+        String city = in.readUTF();
+        String state = in.readUTF();
+        String zipcode = in.readUTF();
+        byte[] forecast = in.readNBytes(in.readInt());
+        NwsForecast upstream = null;
+        if (in.available() > 0 && in.readBoolean()) {
+            upstream = new NwsForecast(null, in.readUTF(), emptyToNull(in.readUTF()), emptyToNull(in.readUTF()),
+                in.readLong(), false);
+        }
+        return Map.entry(key, new CachedForecast(forecast, null, writtenAt, expiresAt, street, city, state, zipcode, upstream));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
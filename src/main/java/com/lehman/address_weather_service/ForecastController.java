@@ -0,0 +1,316 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ForecastController serves the forecast endpoint. Requests are handled
+ * on the servlet thread, or in async mode on a virtual thread with a
+ * request deadline, and each one is written to the access log.
+ */
+@RestController
+public class ForecastController {
+    private static Logger logger = LogManager.getLogger(ForecastController.class);
+
+    // One record per forecast request, logged at info level.
+    private static Logger accessLogger = LogManager.getLogger("com.lehman.address_weather_service.access");
+
+    // Millis past the request deadline before an async request is timed
+    // out by the servlet container instead.
+    private static final long DEADLINE_GRACE_MILLIS = 5000;
+
+    protected final ForecastService forecastService;
+
+    @Value( "${weatherservice.asyncEnabled}" )
+    protected boolean asyncEnabled;
+
+    @Value( "${weatherservice.requestDeadlineMillis}" )
+    protected long requestDeadlineMillis;
+
+    // Runs forecast requests off the servlet threads in async mode.
+    protected ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Answers async requests at their deadline. Timers are cancelled
+    // and dropped from its queue as soon as their request is answered.
+    protected ScheduledThreadPoolExecutor deadlineScheduler = createDeadlineScheduler();
+
+    /**
+     * Constructor takes the forecast service the endpoint is served by.
+     * @param forecastService is the ForecastService to get forecasts from.
+     */
+    public ForecastController(ForecastService forecastService) {
+        this.forecastService = forecastService;
+    }
+
+    /**
+     * Stops the request executor and the deadline scheduler.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.requestExecutor.shutdownNow();
+        this.deadlineScheduler.shutdownNow();
+    }
+
+    /**
+     * The forecast function/endpoint takes the address as input and
+     * writes the JSON formatted results to the response. The cached
+     * forecast bytes are written straight to the output stream, gzip
+     * encoded if the client accepts it. When fields are provided only
+     * those fields of the forecast are returned. The time spent in each
+     * stage is returned in the Server-Timing header.
+     * <p>
+     * In async mode the request is handed off to a virtual thread and
+     * the servlet thread is released right away, so the number of
+     * requests waiting on upstream calls isn't bounded by the servlet
+     * thread pool. Each request uses a single virtual thread, which
+     * loads and writes the forecast. A request that doesn't have its
+     * forecast by the request deadline gets a 504, and its load carries
+     * on to fill the cache.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param fields is a String with the comma separated forecast field
+     * paths to return, or null for the whole forecast.
+     * @return A DeferredResult that is set once the request is handled
+     * in async mode, or null if it has already been handled.
+     * @throws IOException
+     */
+    @GetMapping("/forecast")
+    public DeferredResult<Void> forecast(
+        HttpServletRequest request,
+        HttpServletResponse response,
+        @RequestParam(value = "street") String street,
+        @RequestParam(value = "city") String city,
+        @RequestParam(value = "state") String state,
+        @RequestParam(value = "zipcode") String zipcode,
+        @RequestParam(value = "fields", required = false) String fields
+    ) throws IOException {
+        ForecastProjection projection = parseFields(fields);
+        if (!this.asyncEnabled) {
+            this.handleForecast(request, response, street, city, state, zipcode, projection, null);
+            return null;
+        }
+
+        // The result's own timeout only backs up the request deadline,
+        // which the request's thread schedules when it starts.
+        DeferredResult<Void> result = new DeferredResult<>(this.requestDeadlineMillis + DEADLINE_GRACE_MILLIS);
+        this.requestExecutor.execute(() -> {
+            try {
+                this.handleForecast(request, response, street, city, state, zipcode, projection, result);
+                result.setResult(null);
+            } catch (Throwable t) {
+                result.setErrorResult(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Gets the forecast for the address and writes it to the response,
+     * recording the request's metrics, timing and access log. In async
+     * mode the request is answered with a 504 at the deadline instead,
+     * and once that happens nothing more is written or recorded for it
+     * here.
+     * @param request is the HttpServletRequest.
+     * @param response is the HttpServletResponse.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param projection is the ForecastProjection to apply or null.
+     * @param deferred is the DeferredResult of the request in async mode,
+     * or null for no deadline.
+     * @throws IOException
+     */
+    protected void handleForecast(HttpServletRequest request, HttpServletResponse response, String street, String city,
+            String state, String zipcode, ForecastProjection projection, DeferredResult<Void> deferred) throws IOException {
+        long start = System.nanoTime();
+        RequestTiming timing = RequestTiming.start();
+        ForecastResult result = null;
+        RuntimeException failure = null;
+        this.forecastService.getMetrics().requestStarted();
+        ScheduledFuture<?> deadline = deferred == null ? null : this.deadlineScheduler.schedule(
+            () -> this.expireForecast(request, response, timing, start, deferred), this.requestDeadlineMillis, TimeUnit.MILLISECONDS);
+        try {
+            // An off-heap entry evicted or replaced between the lookup and
+            // the write has given back its memory, so look it up again.
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    result = this.forecastService.getForecast(street, city, state, zipcode);
+                } catch (JsonProcessingException e) {
+                    logger.error("JsonProcessingException: {}", e.getMessage());
+                    throw new RuntimeException(e);
+                }
+                if (!timing.respond()) {
+                    logger.debug("Forecast loaded after the request deadline.");
+                    return;
+                }
+
+                response.setHeader(RequestTiming.SERVER_TIMING, timing.toServerTiming());
+                long writeStart = System.nanoTime();
+                try {
+                    if (result != null) {
+                        CachedForecast entry = projection == null ? result.getEntry() : this.forecastService.project(result.getEntry(), projection);
+                        ForecastResponseWriter.write(request, response, entry, result.isCached(), result.isStale(), System.currentTimeMillis());
+                    } else {
+                        ForecastResponseWriter.writeNotFound(response);
+                    }
+                } catch (ReleasedForecastException e) {
+                    if (attempt > 0) {
+                        throw e;
+                    }
+                    logger.debug("Forecast released before it was written, looking it up again.");
+                    continue;
+                }
+                this.forecastService.getMetrics().record(ForecastMetrics.Stage.WRITE, System.nanoTime() - writeStart);
+                break;
+            }
+        } catch (RuntimeException e) {
+            if (!timing.respond()) {
+                logger.debug("Forecast failed after the request deadline: {}", e.getMessage());
+                return;
+            }
+            failure = e;
+            if (!response.isCommitted()) {
+                response.setHeader(RequestTiming.SERVER_TIMING, timing.toServerTiming());
+            }
+            throw e;
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            timing.finish();
+            if (timing.respond()) {
+                this.forecastService.getMetrics().requestFinished();
+                this.forecastService.getMetrics().record(ForecastMetrics.Stage.REQUEST, System.nanoTime() - start);
+                this.logAccess(request, response, result, failure, timing);
+            }
+        }
+    }
+
+    /**
+     * Answers a forecast request in async mode with a 504 at its
+     * deadline, unless the request's thread has already started to
+     * respond. The load isn't interrupted, since other requests may
+     * have joined it, so it still caches the forecast when it finishes.
+     * @param request is the HttpServletRequest.
+     * @param response is the HttpServletResponse.
+     * @param timing is the RequestTiming of the request.
+     * @param start is a long with the nano time the request started at.
+     * @param result is the DeferredResult of the request.
+     */
+    protected void expireForecast(HttpServletRequest request, HttpServletResponse response, RequestTiming timing,
+            long start, DeferredResult<Void> result) {
+        if (!timing.expire()) {
+            return;
+        }
+        ResponseStatusException failure = new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+            "The forecast was not loaded within " + this.requestDeadlineMillis + " millis.");
+        response.setHeader(RequestTiming.SERVER_TIMING, timing.toServerTiming());
+        this.forecastService.getMetrics().requestFinished();
+        this.forecastService.getMetrics().record(ForecastMetrics.Stage.REQUEST, System.nanoTime() - start);
+        this.logAccess(request, response, null, failure, timing);
+        result.setErrorResult(failure);
+    }
+
+    /**
+     * Creates the scheduler of the async request deadlines, whose
+     * cancelled timers are removed right away instead of being held
+     * until they would have run.
+     * @return A ScheduledThreadPoolExecutor object.
+     */
+    protected static ScheduledThreadPoolExecutor createDeadlineScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "forecast-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Logs the access record of a forecast request as key=value pairs,
+     * with where the forecast came from and the time spent in each
+     * stage. Nothing is built unless the access logger is enabled.
+     * @param request is the HttpServletRequest.
+     * @param response is the HttpServletResponse.
+     * @param result is the ForecastResult or null if there was none.
+     * @param failure is the RuntimeException the request failed with or null.
+     * @param timing is the RequestTiming of the request.
+     */
+    protected void logAccess(HttpServletRequest request, HttpServletResponse response, ForecastResult result,
+            RuntimeException failure, RequestTiming timing) {
+        if (!accessLogger.isInfoEnabled()) {
+            return;
+        }
+        int status = response.getStatus();
+        if (failure instanceof UpstreamUnavailableException) {
+            status = HttpStatus.SERVICE_UNAVAILABLE.value();
+        } else if (failure instanceof ResponseStatusException e) {
+            status = e.getStatusCode().value();
+        } else if (failure != null) {
+            status = HttpStatus.INTERNAL_SERVER_ERROR.value();
+        }
+        String source = result == null ? "none" : result.isStale() ? "stale" : result.isCached() ? "hit" : "miss";
+        accessLogger.info("method={} path={} status={} cache={} error={} {}", request.getMethod(), request.getRequestURI(),
+            status, source, failure == null ? "-" : failure.getClass().getSimpleName(), timing.toLogFields());
+    }
+
+    /**
+     * Parses the fields request parameter.
+     * @param fields is a String with the comma separated forecast field
+     * paths or null.
+     * @return A ForecastProjection object or null for the whole forecast.
+     * @throws ResponseStatusException with a bad request status if a
+     * field is unknown.
+     */
+    protected static ForecastProjection parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        try {
+            return ForecastProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
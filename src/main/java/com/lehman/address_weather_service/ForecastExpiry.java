@@ -0,0 +1,68 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caffeine Expiry for the forecast cache. Each entry is evicted once
+ * it is past its own expiration time plus the stale window, so the
+ * time an entry lives is driven by the entry rather than by a fixed
+ * duration from when it was put in the cache.
+ */
+public class ForecastExpiry implements Expiry<String, CachedForecast> {
+    protected final long staleMillis;
+
+    /**
+     * Constructor takes the stale window.
+     * @param staleMillis is a long with the millis past expiration an
+     * entry is kept to be served as stale.
+     */
+    public ForecastExpiry(long staleMillis) {
+        this.staleMillis = staleMillis;
+    }
+
+    @Override
+    public long expireAfterCreate(String key, CachedForecast value, long currentTime) {
+        return this.remainingNanos(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, CachedForecast value, long currentTime, long currentDuration) {
+        return this.remainingNanos(value);
+    }
+
+    @Override
+    public long expireAfterRead(String key, CachedForecast value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * Gets the nanos remaining until the entry should be evicted.
+     * @param value is the CachedForecast entry.
+     * @return A long with the remaining nanos.
+     */
+    private long remainingNanos(CachedForecast value) {
+        long remaining = value.getExpiresAt() + this.staleMillis - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+    }
+}
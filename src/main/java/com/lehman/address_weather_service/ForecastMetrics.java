@@ -0,0 +1,269 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Records the latency of each stage of the forecast pipeline, the
+ * upstream errors and the in-flight request counts. Stage latencies
+ * are published as histograms along with p50 and p99 so they can be
+ * aggregated by Prometheus. Without a registry from Spring the meters
+ * are registered with an empty composite registry, which records
+ * nothing.
+ */
+public class ForecastMetrics {
+    public static final String STAGE_TIMER = "forecast.stage";
+    public static final String UPSTREAM_ERRORS = "forecast.upstream.errors";
+    public static final String REQUESTS_IN_FLIGHT = "forecast.requests.inflight";
+
+    /**
+     * The pipeline stages that are timed.
+     */
+    public enum Stage {
+        REQUEST("request", null, null),
+        CACHE("cache", null, "cache"),
+        GEOCODE("geocode", "census", "geocode"),
+        NWS_POINTS("nws.points", "nws", "points"),
+        NWS_FORECAST("nws.forecast", "nws", "forecast"),
+        WRITE("write", null, null);
+
+        private final String tag;
+        private final String upstream;
+        private final String serverTiming;
+
+        Stage(String tag, String upstream, String serverTiming) {
+            this.tag = tag;
+            this.upstream = upstream;
+            this.serverTiming = serverTiming;
+        }
+
+        /**
+         * Gets the name of the stage in the Server-Timing header.
+         * @return A String with the name or null if it isn't reported.
+         */
+        public String getServerTiming() {
+            return serverTiming;
+        }
+    }
+
+    /**
+     * Timed function that may throw.
+     * @param <V> is the result type.
+     * @param <E> is the exception type the function may throw.
+     */
+    @FunctionalInterface
+    public interface Timed<V, E extends Exception> {
+        V call() throws E;
+    }
+
+    protected final MeterRegistry registry;
+
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    /**
+     * Default constructor creates metrics that record nothing.
+     */
+    public ForecastMetrics() {
+        this(new CompositeMeterRegistry());
+    }
+
+    /**
+     * Constructor registers the stage timers and request gauge with
+     * the provided registry.
+     * @param registry is the MeterRegistry to register with.
+     */
+    public ForecastMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            this.timers.put(stage, Timer.builder(STAGE_TIMER)
+                .description("Latency of each stage of the forecast pipeline")
+                .tag("stage", stage.tag)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+        }
+        Gauge.builder(REQUESTS_IN_FLIGHT, this.requestsInFlight, AtomicInteger::get)
+            .description("Forecast requests currently being handled")
+            .register(registry);
+    }
+
+    /**
+     * Runs the function and records its latency for the stage, also
+     * for the request being handled on this thread if any. If the
+     * stage calls an upstream service its failures are counted by
+     * status.
+     * @param stage is the Stage being timed.
+     * @param timed is the Timed function to run.
+     * @return The value the function returned.
+     * @throws E if the function failed.
+     */
+    public <V, E extends Exception> V time(Stage stage, Timed<V, E> timed) throws E {
+        long start = System.nanoTime();
+        try {
+            return timed.call();
+        } catch (RestClientResponseException e) {
+            this.upstreamError(stage, String.valueOf(e.getStatusCode().value()));
+            throw e;
+        } catch (ResourceAccessException e) {
+            this.upstreamError(stage, "io");
+            throw e;
+        } catch (Exception e) {
+            if (e instanceof JsonProcessingException) {
+                this.upstreamError(stage, "parse");
+            }
+            throw e;
+        } finally {
+            this.record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the latency of a stage that has already run, also for
+     * the request being handled on this thread if any.
+     * @param stage is the Stage that ran.
+     * @param nanos is a long with the stage duration in nanoseconds.
+     */
+    public void record(Stage stage, long nanos) {
+        this.timers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+        RequestTiming.record(stage, nanos);
+    }
+
+    /**
+     * Marks the start of a forecast request.
+     */
+    public void requestStarted() {
+        this.requestsInFlight.incrementAndGet();
+    }
+
+    /**
+     * Marks the end of a forecast request.
+     */
+    public void requestFinished() {
+        this.requestsInFlight.decrementAndGet();
+    }
+
+    /**
+     * Registers the hit, miss, eviction and load stats of a cache. The
+     * cache must be built with recordStats.
+     * @param cache is the Caffeine Cache to monitor.
+     * @param name is a String with the cache name tag.
+     */
+    public void monitorCache(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(this.registry, cache, name);
+    }
+
+    /**
+     * Registers a gauge that reports the supplied value.
+     * @param name is a String with the gauge name.
+     * @param description is a String with the gauge description.
+     * @param value is a Supplier of the current value.
+     */
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(this.registry);
+    }
+
+    /**
+     * Registers a counter that reports the supplied count.
+     * @param name is a String with the counter name.
+     * @param description is a String with the counter description.
+     * @param count is a Supplier of the current count.
+     */
+    public void counter(String name, String description, Supplier<Number> count) {
+        FunctionCounter.builder(name, count, c -> c.get().doubleValue()).description(description).register(this.registry);
+    }
+
+    /**
+     * Registers a gauge for an upstream service that reports the
+     * supplied value.
+     * @param name is a String with the gauge name.
+     * @param description is a String with the gauge description.
+     * @param upstream is a String with the upstream tag.
+     * @param value is a Supplier of the current value.
+     */
+    public void upstreamGauge(String name, String description, String upstream, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).tag("upstream", upstream).register(this.registry);
+    }
+
+    /**
+     * Registers a counter for an upstream service that reports the
+     * supplied count.
+     * @param name is a String with the counter name.
+     * @param description is a String with the counter description.
+     * @param upstream is a String with the upstream tag.
+     * @param count is a Supplier of the current count.
+     */
+    public void upstreamCounter(String name, String description, String upstream, Supplier<Number> count) {
+        FunctionCounter.builder(name, count, c -> c.get().doubleValue())
+            .description(description)
+            .tag("upstream", upstream)
+            .register(this.registry);
+    }
+
+    /**
+     * Registers a timer for an upstream service.
+     * @param name is a String with the timer name.
+     * @param description is a String with the timer description.
+     * @param upstream is a String with the upstream tag.
+     * @return The registered Timer.
+     */
+    public Timer upstreamTimer(String name, String description, String upstream) {
+        return Timer.builder(name)
+            .description(description)
+            .tag("upstream", upstream)
+            .publishPercentiles(0.5, 0.99)
+            .register(this.registry);
+    }
+
+    /**
+     * Counts an upstream failure for the stage.
+     * @param stage is the Stage that failed.
+     * @param status is a String with the HTTP status or failure kind.
+     */
+    private void upstreamError(Stage stage, String status) {
+        if (stage.upstream == null) {
+            return;
+        }
+        Counter.builder(UPSTREAM_ERRORS)
+            .description("Failed upstream requests by status")
+            .tag("upstream", stage.upstream)
+            .tag("stage", stage.tag)
+            .tag("status", status)
+            .register(this.registry)
+            .increment();
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ForecastPrefetcher reloads the most requested grid cells of the
+ * ForecastService in the background before they expire, if enabled.
+ */
+@Component
+public class ForecastPrefetcher {
+    private static Logger logger = LogManager.getLogger(ForecastPrefetcher.class);
+
+    protected final ForecastService forecastService;
+
+    @Value( "${weatherservice.prefetchEnabled}" )
+    protected boolean prefetchEnabled;
+
+    @Value( "${weatherservice.prefetchHotKeys}" )
+    protected int prefetchHotKeys;
+
+    @Value( "${weatherservice.prefetchIntervalSeconds}" )
+    protected long prefetchIntervalSeconds;
+
+    @Value( "${weatherservice.prefetchLeadSeconds}" )
+    protected long prefetchLeadSeconds;
+
+    @Value( "${weatherservice.prefetchMaxPerInterval}" )
+    protected int prefetchMaxPerInterval;
+
+    protected ScheduledExecutorService prefetchExecutor;
+
+    /**
+     * Constructor takes the forecast service whose grid cells are prefetched.
+     * @param forecastService is the ForecastService to prefetch forecasts of.
+     */
+    public ForecastPrefetcher(ForecastService forecastService) {
+        this.forecastService = forecastService;
+    }
+
+    /**
+     * Starts tracking the most requested grid cells and prefetching
+     * them before they expire, if enabled.
+     */
+    @PostConstruct
+    public void initPrefetch() {
+        if (!this.prefetchEnabled) {
+            return;
+        }
+
+        logger.info("Initializing hot grid cell prefetching. (hotKeys=" + this.prefetchHotKeys + " intervalSeconds="
+            + this.prefetchIntervalSeconds + " leadSeconds=" + this.prefetchLeadSeconds + " maxPerInterval="
+            + this.prefetchMaxPerInterval + ")");
+        this.forecastService.trackHotKeys(this.prefetchHotKeys);
+        this.prefetchExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "forecast-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.prefetchExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                this.prefetchHotKeys();
+            } catch (RuntimeException e) {
+                logger.error("Prefetching hot grid cells failed: {}", e.getMessage());
+            }
+        }, this.prefetchIntervalSeconds, this.prefetchIntervalSeconds, TimeUnit.SECONDS);
+        this.forecastService.getMetrics().gauge("forecast.prefetch.hit.ratio",
+            "Share of prefetched forecasts that were requested before expiring", this.forecastService::getPrefetchHitRate);
+    }
+
+    /**
+     * Stops prefetching.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (this.prefetchExecutor != null) {
+            this.prefetchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reloads the hottest grid cells that are about to expire, or have
+     * expired but are still within the stale window, in the background.
+     * At most the max per interval are reloaded each run, hottest first,
+     * which bounds the upstream calls prefetching makes. This keeps the
+     * hot cells fresh even when they aren't requested during their
+     * refresh-ahead window.
+     * @return An int with the number of grid cells reloaded.
+     */
+    protected int prefetchHotKeys() {
+        long now = System.currentTimeMillis();
+        long leadMillis = TimeUnit.SECONDS.toMillis(this.prefetchLeadSeconds);
+        int reloaded = 0;
+        for (HotKeyTracker.HotKey hot : this.forecastService.hotKeys.getHotKeys()) {
+            if (reloaded >= this.prefetchMaxPerInterval) {
+                break;
+            }
+            String key = hot.getKey();
+            CachedForecast entry = this.forecastService.cache.getIfPresent(key);
+            if (entry == null || entry.getExpiresAt() - now > leadMillis || this.forecastService.refreshes.containsKey(key)) {
+                continue;
+            }
+            logger.debug("Prefetching hot grid cell {}.", key);
+            this.forecastService.prefetch(key, entry);
+            reloaded++;
+        }
+        return reloaded;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Projects the NWS forecast document down to a requested set of
+ * fields. Fields are dotted paths into the document, such as
+ * properties.periods.temperature, and arrays are passed through so a
+ * path applies to each of their elements. A path selects everything
+ * below it. Only the fields of the NWS forecast document are accepted.
+ * The projection is streamed from the parser to the generator without
+ * building a JSON tree.
+ */
+public final class ForecastProjection {
+    // Known fields of the NWS forecast document.
+    private static final Node SCHEMA = schema(
+        "@context", "type", "geometry.type", "geometry.coordinates",
+        "properties.units", "properties.forecastGenerator", "properties.generatedAt", "properties.updateTime",
+        "properties.validTimes", "properties.elevation.unitCode", "properties.elevation.value",
+        "properties.periods.number", "properties.periods.name", "properties.periods.startTime",
+        "properties.periods.endTime", "properties.periods.isDaytime", "properties.periods.temperature",
+        "properties.periods.temperatureUnit", "properties.periods.temperatureTrend",
+        "properties.periods.probabilityOfPrecipitation.unitCode", "properties.periods.probabilityOfPrecipitation.value",
+        "properties.periods.dewpoint.unitCode", "properties.periods.dewpoint.value",
+        "properties.periods.relativeHumidity.unitCode", "properties.periods.relativeHumidity.value",
+        "properties.periods.windSpeed", "properties.periods.windDirection", "properties.periods.icon",
+        "properties.periods.shortForecast", "properties.periods.detailedForecast"
+    );
+
+    /**
+     * A level of a field path tree. A node without children selects
+     * everything below it.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new TreeMap<>();
+    }
+
+    private final Node root;
+    private final String key;
+
+    private ForecastProjection(Node root) {
+        this.root = root;
+        List<String> paths = new ArrayList<>();
+        collect(root, "", paths);
+        this.key = String.join(",", paths);
+    }
+
+    /**
+     * Parses the comma separated list of fields.
+     * @param fields is a String with the comma separated field paths.
+     * @return A ForecastProjection object.
+     * @throws IllegalArgumentException if no fields or an unknown
+     * field was requested.
+     */
+    public static ForecastProjection parse(String fields) {
+        Node root = new Node();
+        boolean any = false;
+        for (String field : fields.split(",")) {
+            String path = field.trim();
+            if (path.isEmpty()) {
+                continue;
+            }
+            String[] names = path.split("\\.", -1);
+            Node known = SCHEMA;
+            for (String name : names) {
+                known = known.children.get(name);
+                if (known == null) {
+                    throw new IllegalArgumentException("Unknown field '" + path + "'.");
+                }
+            }
+            add(root, names);
+            any = true;
+        }
+        if (!any) {
+            throw new IllegalArgumentException("No fields were requested.");
+        }
+        return new ForecastProjection(root);
+    }
+
+    /**
+     * Gets the canonical form of the requested fields, which is the
+     * same for every spelling of the same projection.
+     * @return A String with the sorted field paths.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Projects the forecast down to the requested fields.
+     * @param forecast is a byte array with the UTF-8 forecast JSON.
+     * @return A byte array with the projected UTF-8 JSON.
+     * @throws IOException if the forecast isn't valid JSON.
+     */
+    public byte[] project(byte[] forecast) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, forecast.length / 4));
+        try (JsonParser parser = JsonSupport.MAPPER.createParser(forecast);
+             JsonGenerator generator = JsonSupport.MAPPER.createGenerator(out)) {
+            if (parser.nextToken() != null) {
+                copy(parser, generator, this.root);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Copies the selected fields of the current value.
+     * @param parser is the JsonParser positioned on the value.
+     * @param generator is the JsonGenerator to write to.
+     * @param node is the Node with the fields selected in the value.
+     * @throws IOException
+     */
+    private static void copy(JsonParser parser, JsonGenerator generator, Node node) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                Node child = node.children.get(name);
+                parser.nextToken();
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (child.children.isEmpty()) {
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                } else {
+                    generator.writeFieldName(name);
+                    copy(parser, generator, child);
+                }
+            }
+            generator.writeEndObject();
+        } else if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                copy(parser, generator, node);
+            }
+            generator.writeEndArray();
+        } else {
+            // A value, such as null, where fields inside it were requested.
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Adds a path to the tree. A path that is already covered by a
+     * shorter one is dropped, and a path replaces any longer ones below
+     * it.
+     */
+    private static void add(Node root, String[] names) {
+        Node node = root;
+        for (int i = 0; i < names.length; i++) {
+            Node child = node.children.get(names[i]);
+            if (child != null && child.children.isEmpty()) {
+                return;
+            }
+            if (child == null) {
+                child = new Node();
+                node.children.put(names[i], child);
+            }
+            if (i == names.length - 1) {
+                child.children.clear();
+            }
+            node = child;
+        }
+    }
+
+    private static void collect(Node node, String prefix, List<String> paths) {
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            String path = prefix + child.getKey();
+            if (child.getValue().children.isEmpty()) {
+                paths.add(path);
+            } else {
+                collect(child.getValue(), path + ".", paths);
+            }
+        }
+    }
+
+    private static Node schema(String... paths) {
+        Node root = new Node();
+        for (String path : paths) {
+            Node node = root;
+            for (String name : path.split("\\.")) {
+                node = node.children.computeIfAbsent(name, k -> new Node());
+            }
+        }
+        return root;
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes forecast responses straight to the servlet output stream from
+ * the pre-encoded cache entry bytes. The response is the envelope
+ * prefix, the forecast payload and a small suffix with the cached,
+ * stale and age values. When the client accepts gzip and the entry
+ * has a pre-compressed copy, the compressed prefix and payload are
+ * written as is and only the suffix is added per request. Entries
+ * kept off the heap are written through reused chunk buffers.
+ */
+public final class ForecastResponseWriter {
+    private static final byte[] PREFIX = "{ \"forecast\": ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_FOUND = "{ \"success\": false, \"message\": \"Forecast not found for the provided address.\" }"
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] UNAVAILABLE = "{ \"success\": false, \"message\": \"The forecast service is busy, try again later.\" }"
+        .getBytes(StandardCharsets.UTF_8);
+
+    // Gzip member header: magic, deflate, no flags, no mtime, no extra flags, unknown OS.
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    // Chunk buffers for copying direct memory to the output stream,
+    // which copies them into its own buffer before write returns.
+    private static final int CHUNK_BYTES = 8192;
+    private static final ArrayBlockingQueue<byte[]> CHUNKS = new ArrayBlockingQueue<>(256);
+
+    private ForecastResponseWriter() { }
+
+    /**
+     * Compresses the envelope prefix and forecast payload into raw
+     * deflate blocks that end on a byte boundary without a final block.
+     * @param forecast is a byte array with the UTF-8 forecast payload.
+     * @return A CompressedEnvelope object.
+     */
+    public static CompressedEnvelope compress(byte[] forecast) {
+        CRC32 crc = new CRC32();
+        crc.update(PREFIX);
+        crc.update(forecast);
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(forecast.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            deflater.setInput(PREFIX);
+            deflate(deflater, buffer, out, Deflater.NO_FLUSH);
+            deflater.setInput(forecast);
+            deflate(deflater, buffer, out, Deflater.SYNC_FLUSH);
+            return new CompressedEnvelope(out.toByteArray(), crc.getValue(), PREFIX.length + forecast.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the forecast response for the provided entry.
+     * @param request is the HttpServletRequest, used to check the
+     * accepted encodings.
+     * @param response is the HttpServletResponse to write to.
+     * @param entry is the CachedForecast to write.
+     * @param cached is a boolean with true for cache hit and false for not.
+     * @param stale is a boolean with true if the entry is past expiration.
+     * @param now is a long with the current epoch millis.
+     * @throws IOException
+     * @throws ReleasedForecastException if the entry was released
+     * before any of the body was written.
+     */
+    public static void write(HttpServletRequest request, HttpServletResponse response, CachedForecast entry,
+                             boolean cached, boolean stale, long now) throws IOException {
+        // Stale entries have already expired, so clients shouldn't keep them.
+        response.setHeader(HttpHeaders.ETAG, entry.getEtag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=" + (stale ? 0 : entry.getRemainingSeconds(now)));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (matchesEtag(request, entry.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] suffix = suffix(cached, stale, TimeUnit.MILLISECONDS.toSeconds(entry.getAgeMillis(now)));
+        response.setContentType(CONTENT_TYPE);
+
+        if (!entry.retain()) {
+            throw new ReleasedForecastException("The forecast for " + entry.getZipcode() + " was released.");
+        }
+        try {
+            if (entry.hasCompressed() && acceptsGzip(request)) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                response.setContentLength(GZIP_HEADER.length + entry.getDeflatedLength() + 5 + suffix.length + 8);
+                OutputStream out = response.getOutputStream();
+                out.write(GZIP_HEADER);
+                entry.writeDeflated(out);
+                writeFinalStoredBlock(out, suffix);
+                CRC32 crc = new CRC32();
+                crc.update(suffix);
+                writeIntLE(out, (int) crc32Combine(entry.getCompressedCrc(), crc.getValue(), suffix.length));
+                writeIntLE(out, entry.getCompressedLength() + suffix.length);
+                out.flush();
+            } else {
+                response.setContentLength(PREFIX.length + entry.getForecastLength() + suffix.length);
+                OutputStream out = response.getOutputStream();
+                out.write(PREFIX);
+                entry.writeForecast(out);
+                out.write(suffix);
+                out.flush();
+            }
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer through a reused chunk
+     * buffer, without copying the whole buffer to the heap.
+     * @param out is the OutputStream to write to.
+     * @param buffer is the ByteBuffer to write, which is consumed.
+     * @throws IOException
+     */
+    public static void write(OutputStream out, ByteBuffer buffer) throws IOException {
+        byte[] chunk = CHUNKS.poll();
+        if (chunk == null) {
+            chunk = new byte[CHUNK_BYTES];
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                int count = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+        } finally {
+            CHUNKS.offer(chunk);
+        }
+    }
+
+    /**
+     * Writes the forecast not found response.
+     * @param response is the HttpServletResponse to write to.
+     * @throws IOException
+     */
+    public static void writeNotFound(HttpServletResponse response) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(NOT_FOUND.length);
+        response.getOutputStream().write(NOT_FOUND);
+    }
+
+    /**
+     * Writes the service unavailable response with when to retry.
+     * @param response is the HttpServletResponse.
+     * @param retryAfterSeconds is a long with the seconds to retry after.
+     * @throws IOException
+     */
+    public static void writeUnavailable(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(UNAVAILABLE.length);
+        response.getOutputStream().write(UNAVAILABLE);
+    }
+
+    /**
+     * Checks if the request accepts a gzip encoded response.
+     * @param request is the HttpServletRequest.
+     * @return A boolean with true if gzip is accepted.
+     */
+    public static boolean acceptsGzip(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (accept == null) {
+            return false;
+        }
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the request's If-None-Match header matches the ETag,
+     * using the weak comparison that If-None-Match calls for.
+     * @param request is the HttpServletRequest.
+     * @param etag is a String with the current ETag.
+     * @return A boolean with true if the client's copy is current.
+     */
+    public static boolean matchesEtag(HttpServletRequest request, String etag) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || stripWeak(trimmed).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Builds the envelope suffix bytes.
+     * @param cached is a boolean with true for cache hit and false for not.
+     * @param stale is a boolean with true if the entry is past expiration.
+     * @param ageSeconds is a long with the entry age in seconds.
+     * @return A byte array with the suffix.
+     */
+    private static byte[] suffix(boolean cached, boolean stale, long ageSeconds) {
+        String suffix = ", \"cached\": " + cached + ", \"stale\": " + stale + ", \"age\": " + ageSeconds + " }";
+        return suffix.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void deflate(Deflater deflater, byte[] buffer, ByteArrayOutputStream out, int flush) {
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, flush);
+            out.write(buffer, 0, count);
+        } while (count == buffer.length || (flush == Deflater.NO_FLUSH && !deflater.needsInput()));
+    }
+
+    /**
+     * Writes the bytes as a final stored (uncompressed) deflate block.
+     */
+    private static void writeFinalStoredBlock(OutputStream out, byte[] data) throws IOException {
+        int length = data.length;
+        out.write(1);
+        out.write(length & 0xff);
+        out.write((length >>> 8) & 0xff);
+        out.write(~length & 0xff);
+        out.write((~length >>> 8) & 0xff);
+        out.write(data);
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Combines two CRC32 values into the CRC32 of the concatenated
+     * data, the same as zlib's crc32_combine.
+     * @param crc1 is a long with the CRC32 of the first part.
+     * @param crc2 is a long with the CRC32 of the second part.
+     * @param length2 is a long with the length of the second part.
+     * @return A long with the combined CRC32.
+     */
+    static long crc32Combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // Operator for one zero bit in odd.
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        // Apply length2 zeros to crc1.
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        int i = 0;
+        while (vector != 0) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+            vector >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * The result of a forecast lookup, which is the cache entry along with
+ * whether it came from the cache and whether it is past expiration.
+ */
+public class ForecastResult {
+    protected final CachedForecast entry;
+    protected final boolean cached;
+    protected final boolean stale;
+
+    /**
+     * Constructor sets the result values.
+     * @param entry is the CachedForecast with the forecast.
+     * @param cached is a boolean with true for cache hit and false for not.
+     * @param stale is a boolean with true if the entry is past expiration.
+     */
+    public ForecastResult(CachedForecast entry, boolean cached, boolean stale) {
+        this.entry = entry;
+        this.cached = cached;
+        this.stale = stale;
+    }
+
+    /**
+     * Gets the forecast cache entry.
+     * @return A CachedForecast object.
+     */
+    public CachedForecast getEntry() {
+        return entry;
+    }
+
+    /**
+     * Gets the cached flag.
+     * @return A boolean with true for cache hit and false for not.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Gets the stale flag.
+     * @return A boolean with true if the entry is past expiration.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
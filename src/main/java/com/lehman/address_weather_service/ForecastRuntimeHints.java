@@ -0,0 +1,61 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Registers the reflection hints a GraalVM native image needs beyond
+ * what Spring AOT finds on its own. Caffeine picks the generated cache
+ * and node classes for a builder's settings by name and creates them
+ * through method handles, so the classes for the settings the
+ * application uses are listed here and need updating when a cache is
+ * built with different settings. The Jackson bound request types are
+ * registered for data binding as well.
+ */
+public class ForecastRuntimeHints implements RuntimeHintsRegistrar {
+    // Caffeine classes for the forecast cache (removal listener,
+    // expireAfter, limited by entries or weight), the negative cache
+    // (expireAfter) and the other caches (expireAfterWrite), all with
+    // maximum size and stats.
+    static final String[] CAFFEINE_CLASSES = {
+        "com.github.benmanes.caffeine.cache.SSLSMSA",
+        "com.github.benmanes.caffeine.cache.SSLSMWA",
+        "com.github.benmanes.caffeine.cache.SSSMSA",
+        "com.github.benmanes.caffeine.cache.SSSMSW",
+        "com.github.benmanes.caffeine.cache.SSSMWW",
+        "com.github.benmanes.caffeine.cache.PSWMS",
+        "com.github.benmanes.caffeine.cache.PSWMW"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String name : CAFFEINE_CLASSES) {
+            hints.reflection().registerTypeIfPresent(classLoader, name,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.DECLARED_FIELDS);
+        }
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), Address.class);
+        hints.reflection().registerType(LocalGeocoder.Precision.class, MemberCategory.PUBLIC_FIELDS);
+    }
+}
@@ -0,0 +1,1054 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ForecastService gets the forecast for an address. The address is
+ * resolved to its NWS grid cell through the geocode and points caches,
+ * and the grid cell's forecast is served from the forecast cache, with
+ * misses loaded from the second level cache tier or the NWS, entries
+ * reloaded in the background as they expire and upstream misses and
+ * failures kept in the negative cache.
+ */
+@Component
+public class ForecastService {
+    private static Logger logger = LogManager.getLogger(ForecastService.class);
+
+    // Fraction (1/n) of the cache byte limit used by cached projections.
+    private static final int PROJECTION_BYTES_SHARE = 4;
+
+    @Autowired
+    protected CensusGovGeocodeClient censusGovGeocodeClient;
+
+    @Autowired
+    protected NwsGovClient nwsGovClient;
+
+    @Autowired(required = false)
+    protected ForecastMetrics metrics = new ForecastMetrics();
+
+    @Autowired(required = false)
+    protected ForecastCacheTier cacheTier = ForecastCacheTier.NONE;
+
+    @Value( "${weatherservice.persistentCacheEnabled}" )
+    protected boolean persistentCacheEnabled;
+
+    @Value( "${weatherservice.persistentCacheFile}" )
+    protected String persistentCacheFile;
+
+    @Value( "${weatherservice.persistentCacheCompactBytes}" )
+    protected long persistentCacheCompactBytes;
+
+    @Value( "${weatherservice.persistentCacheMaxQueued}" )
+    protected int persistentCacheMaxQueued = PersistentForecastStore.DEFAULT_MAX_QUEUED;
+
+    @Value( "${weatherservice.httpReadTimeoutMillis}" )
+    protected long httpReadTimeoutMillis;
+
+    @Value( "${weatherservice.cacheHonorUpstreamExpires}" )
+    protected boolean cacheHonorUpstreamExpires;
+
+    @Value( "${weatherservice.cacheMinExpiresSeconds}" )
+    protected long cacheMinExpiresSeconds;
+
+    @Value( "${weatherservice.cacheGzip}" )
+    protected boolean cacheGzip;
+
+    @Value( "${weatherservice.cacheOffHeap}" )
+    protected boolean cacheOffHeap;
+
+    @Value( "${weatherservice.localGeocoderEnabled}" )
+    protected boolean localGeocoderEnabled;
+
+    @Value( "${weatherservice.localGeocoderPrecision}" )
+    protected LocalGeocoder.Precision localGeocoderPrecision;
+
+    @Value( "${weatherservice.localGeocoderZctaFile}" )
+    protected String localGeocoderZctaFile;
+
+    @Value( "${weatherservice.localGeocoderAddressRangeFile}" )
+    protected String localGeocoderAddressRangeFile;
+
+    protected int cacheExpiresMinutes;
+    protected int cacheMaxNumberEntries;
+    protected long cacheMaxBytes;
+
+    protected int geocodeCacheExpiresMinutes;
+    protected int geocodeCacheMaxNumberEntries;
+
+    protected int pointsCacheExpiresMinutes;
+    protected int pointsCacheMaxNumberEntries;
+
+    protected double cacheRefreshAheadFraction;
+    protected int cacheStaleMinutes;
+    protected long cacheStaleWaitMillis;
+
+    protected int negativeCacheNotFoundSeconds;
+    protected int negativeCacheErrorSeconds;
+    protected int negativeCacheMaxNumberEntries;
+
+    // Forecasts by NWS grid cell.
+    protected Cache<String, CachedForecast> cache;
+
+    // Long lived cache of normalized address to coordinates.
+    protected Cache<String, Coordinates> geocodeCache;
+
+    // Long lived cache of rounded coordinates to NWS grid cell.
+    protected Cache<String, GridPoint> pointsCache;
+
+    // Cache of forecast projections by forecast ETag and fields.
+    protected Cache<String, CachedForecast> projectionCache;
+
+    // Short lived cache of upstream lookups that found nothing or failed.
+    protected Cache<String, NegativeResult> negativeCache;
+
+    // Coalesces concurrent cache misses for the same grid cell.
+    protected SingleFlight<String, CachedForecast> forecastLoads = new SingleFlight<>();
+
+    // Coalesces concurrent points requests for the same coordinates.
+    protected SingleFlight<String, GridPoint> pointLoads = new SingleFlight<>();
+
+    // Background reloads in progress by grid cell.
+    protected ConcurrentHashMap<String, CompletableFuture<CachedForecast>> refreshes = new ConcurrentHashMap<>();
+    protected ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Optional on-disk tier under the forecast cache.
+    protected PersistentForecastStore persistentStore;
+
+    // Optional offline geocoder in front of the Census Bureau.
+    protected LocalGeocoder localGeocoder;
+
+    // Most requested grid cells and the prefetches made for them, when
+    // the ForecastPrefetcher is enabled.
+    protected HotKeyTracker hotKeys;
+    protected Set<String> prefetched = ConcurrentHashMap.newKeySet();
+    protected LongAdder prefetchCount = new LongAdder();
+    protected LongAdder prefetchHitCount = new LongAdder();
+
+    /**
+     * Constructor sets up the caches.
+     * @param cacheExpiresMinutes is an int with the number of
+     * minutes to keep the cached results.
+     * @param cacheMaxNumberEntries is an int with the max
+     * number of entries to keep in the cache.
+     * @param cacheMaxBytes is a long with the max number of bytes of
+     * forecasts to keep in the cache, or 0 to limit the cache by the
+     * number of entries instead.
+     * @param geocodeCacheExpiresMinutes is an int with the number of
+     * minutes to keep geocoded coordinates.
+     * @param geocodeCacheMaxNumberEntries is an int with the max
+     * number of entries to keep in the geocode cache.
+     * @param pointsCacheExpiresMinutes is an int with the number of
+     * minutes to keep the grid cell of a point.
+     * @param pointsCacheMaxNumberEntries is an int with the max
+     * number of entries to keep in the points cache.
+     * @param cacheRefreshAheadFraction is a double with the fraction of
+     * the cache duration after which a hit triggers a background reload,
+     * or 0 to disable refresh-ahead.
+     * @param cacheStaleMinutes is an int with the number of minutes
+     * past expiration an entry may still be served as stale.
+     * @param cacheStaleWaitMillis is a long with the number of millis
+     * to wait for a reload before serving a stale entry.
+     * @param negativeCacheNotFoundSeconds is an int with the number of
+     * seconds to remember that an upstream lookup found nothing.
+     * @param negativeCacheErrorSeconds is an int with the number of
+     * seconds to remember that an upstream lookup failed.
+     * @param negativeCacheMaxNumberEntries is an int with the max
+     * number of entries to keep in the negative cache.
+     */
+    public ForecastService(
+            @Value("${weatherservice.cacheExpiresMinutes}") int cacheExpiresMinutes,
+            @Value("${weatherservice.cacheMaxNumberEntries}") int cacheMaxNumberEntries,
+            @Value("${weatherservice.cacheMaxBytes}") long cacheMaxBytes,
+            @Value("${weatherservice.geocodeCacheExpiresMinutes}") int geocodeCacheExpiresMinutes,
+            @Value("${weatherservice.geocodeCacheMaxNumberEntries}") int geocodeCacheMaxNumberEntries,
+            @Value("${weatherservice.pointsCacheExpiresMinutes}") int pointsCacheExpiresMinutes,
+            @Value("${weatherservice.pointsCacheMaxNumberEntries}") int pointsCacheMaxNumberEntries,
+            @Value("${weatherservice.cacheRefreshAheadFraction}") double cacheRefreshAheadFraction,
+            @Value("${weatherservice.cacheStaleMinutes}") int cacheStaleMinutes,
+            @Value("${weatherservice.cacheStaleWaitMillis}") long cacheStaleWaitMillis,
+            @Value("${weatherservice.negativeCacheNotFoundSeconds}") int negativeCacheNotFoundSeconds,
+            @Value("${weatherservice.negativeCacheErrorSeconds}") int negativeCacheErrorSeconds,
+            @Value("${weatherservice.negativeCacheMaxNumberEntries}") int negativeCacheMaxNumberEntries
+    ) {
+        this.cacheExpiresMinutes = cacheExpiresMinutes;
+        this.cacheMaxNumberEntries = cacheMaxNumberEntries;
+        this.cacheMaxBytes = cacheMaxBytes;
+        this.geocodeCacheExpiresMinutes = geocodeCacheExpiresMinutes;
+        this.geocodeCacheMaxNumberEntries = geocodeCacheMaxNumberEntries;
+        this.pointsCacheExpiresMinutes = pointsCacheExpiresMinutes;
+        this.pointsCacheMaxNumberEntries = pointsCacheMaxNumberEntries;
+        this.cacheRefreshAheadFraction = cacheRefreshAheadFraction;
+        this.cacheStaleMinutes = cacheStaleMinutes;
+        this.cacheStaleWaitMillis = cacheStaleWaitMillis;
+        this.negativeCacheNotFoundSeconds = negativeCacheNotFoundSeconds;
+        this.negativeCacheErrorSeconds = negativeCacheErrorSeconds;
+        this.negativeCacheMaxNumberEntries = negativeCacheMaxNumberEntries;
+
+        logger.info("Initializing the cache. (expires=" + this.cacheExpiresMinutes + " maxEntries=" + this.cacheMaxNumberEntries
+            + " maxBytes=" + this.cacheMaxBytes + " refreshAhead=" + this.cacheRefreshAheadFraction + " staleMinutes=" + this.cacheStaleMinutes + ")");
+        // Create the cache. Entries are kept past their expiration for
+        // the stale window so they can still be served if a reload fails.
+        // Forecasts vary a lot in size, so a byte limit, when set, weighs
+        // each entry by its size instead of counting entries.
+        // Off-heap entries give their direct memory back to the pool once
+        // they are removed and any response writing them is done.
+        Caffeine<String, CachedForecast> builder = Caffeine.newBuilder()
+            .expireAfter(new ForecastExpiry(TimeUnit.MINUTES.toMillis(this.cacheStaleMinutes)))
+            .removalListener((String key, CachedForecast entry, RemovalCause cause) -> entry.release())
+            .recordStats();
+        if (this.cacheMaxBytes > 0) {
+            builder.maximumWeight(this.cacheMaxBytes - this.getProjectionMaxBytes())
+                .weigher((String key, CachedForecast entry) -> entry.getWeight());
+        } else {
+            builder.maximumSize(this.cacheMaxNumberEntries);
+        }
+        this.cache = builder.build();
+
+        logger.info("Initializing the geocode cache. (expires=" + this.geocodeCacheExpiresMinutes + " maxEntries=" + this.geocodeCacheMaxNumberEntries + ")");
+        this.geocodeCache = Caffeine.newBuilder()
+            .expireAfterWrite(this.geocodeCacheExpiresMinutes, TimeUnit.MINUTES)
+            .maximumSize(this.geocodeCacheMaxNumberEntries)
+            .recordStats()
+            .build();
+
+        logger.info("Initializing the points cache. (expires=" + this.pointsCacheExpiresMinutes + " maxEntries=" + this.pointsCacheMaxNumberEntries + ")");
+        this.pointsCache = Caffeine.newBuilder()
+            .expireAfterWrite(this.pointsCacheExpiresMinutes, TimeUnit.MINUTES)
+            .maximumSize(this.pointsCacheMaxNumberEntries)
+            .recordStats()
+            .build();
+
+        // Projections of the same forecast share its lifetime, and only
+        // the commonly requested field sets stay cached. They are always
+        // on the heap, and with a byte limit they get their share of it.
+        Caffeine<Object, Object> projectionBuilder = Caffeine.newBuilder()
+            .expireAfterWrite(this.cacheExpiresMinutes + this.cacheStaleMinutes, TimeUnit.MINUTES)
+            .recordStats();
+        if (this.cacheMaxBytes > 0) {
+            this.projectionCache = projectionBuilder.maximumWeight(this.getProjectionMaxBytes())
+                .weigher((String key, CachedForecast entry) -> entry.getWeight())
+                .build();
+        } else {
+            this.projectionCache = projectionBuilder.maximumSize(this.cacheMaxNumberEntries).build();
+        }
+
+        // Misses and failures are kept apart from the forecasts, with
+        // their own short lifetimes and limit, so a burst of bad
+        // addresses can't evict good forecasts.
+        logger.info("Initializing the negative cache. (notFoundSeconds=" + this.negativeCacheNotFoundSeconds
+            + " errorSeconds=" + this.negativeCacheErrorSeconds + " maxEntries=" + this.negativeCacheMaxNumberEntries + ")");
+        this.negativeCache = Caffeine.newBuilder()
+            .expireAfter(new NegativeExpiry())
+            .maximumSize(this.negativeCacheMaxNumberEntries)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Limits how long concurrent misses wait for the load they joined.
+     * A load's upstream requests each give up after the read timeout,
+     * so waiters give up after twice that instead of piling up behind a
+     * load that hangs.
+     */
+    @PostConstruct
+    public void initLoads() {
+        long waitMillis = 2 * this.httpReadTimeoutMillis;
+        this.forecastLoads = new SingleFlight<>(waitMillis);
+        this.pointLoads = new SingleFlight<>(waitMillis);
+    }
+
+    /**
+     * Registers the cache stats and in-flight load gauges.
+     */
+    @PostConstruct
+    public void initMetrics() {
+        this.metrics.monitorCache(this.cache, "forecast");
+        this.metrics.monitorCache(this.geocodeCache, "geocode");
+        this.metrics.monitorCache(this.pointsCache, "points");
+        this.metrics.monitorCache(this.projectionCache, "projection");
+        this.metrics.monitorCache(this.negativeCache, "negative");
+        this.metrics.gauge("forecast.cache.heap.bytes", "Approximate heap bytes of the cached forecasts",
+            () -> this.getCacheBytes(false));
+        this.metrics.gauge("forecast.cache.offheap.bytes", "Direct memory bytes of the cached forecasts",
+            () -> this.getCacheBytes(true));
+        this.metrics.gauge("forecast.cache.offheap.reserved.bytes", "Direct memory bytes reserved for off-heap forecasts",
+            OffHeapCachedForecast::getPoolReservedBytes);
+        this.metrics.gauge("forecast.loads.inflight", "Forecast cache misses currently loading",
+            () -> this.forecastLoads.getInFlightCount());
+        this.metrics.gauge("forecast.refreshes.inflight", "Background forecast reloads in progress",
+            this.refreshes::size);
+    }
+
+    /**
+     * Gets the share of the cache byte limit that the projections of
+     * the cached forecasts can use.
+     * @return A long with the max number of bytes of projections.
+     */
+    protected long getProjectionMaxBytes() {
+        return this.cacheMaxBytes / PROJECTION_BYTES_SHARE;
+    }
+
+    /**
+     * Adds up the bytes the forecast cache entries, and their cached
+     * projections, take up on or off the heap. This walks the caches, so
+     * it is meant for the metrics scrape rather than the request path.
+     * @param offHeap is a boolean with true for the direct memory bytes
+     * and false for the heap bytes.
+     * @return A long with the number of bytes.
+     */
+    protected long getCacheBytes(boolean offHeap) {
+        long bytes = 0;
+        for (CachedForecast entry : this.cache.asMap().values()) {
+            if (offHeap) {
+                bytes += entry.isOffHeap() ? entry.getPayloadBytes() : 0;
+            } else {
+                bytes += entry.isOffHeap() ? entry.getWeight() - entry.getPayloadBytes() : entry.getWeight();
+            }
+        }
+        if (!offHeap) {
+            for (CachedForecast projected : this.projectionCache.asMap().values()) {
+                bytes += projected.getWeight();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Opens the persistent forecast store if enabled and rehydrates
+     * the cache with the stored forecasts that can still be served.
+     * @throws IOException
+     */
+    @PostConstruct
+    public void initPersistentCache() throws IOException {
+        if (!this.persistentCacheEnabled) {
+            return;
+        }
+
+        Path file = Path.of(this.persistentCacheFile);
+        this.persistentStore = new PersistentForecastStore(file, this.persistentCacheCompactBytes, () -> Map.copyOf(this.cache.asMap()),
+            this.persistentCacheMaxQueued);
+        this.metrics.counter("forecast.store.dropped", "Persistent cache writes dropped because the write queue was full",
+            this.persistentStore::getDroppedCount);
+        long staleMillis = TimeUnit.MINUTES.toMillis(this.cacheStaleMinutes);
+        long now = System.currentTimeMillis();
+        int restored = 0;
+        for (Map.Entry<String, CachedForecast> entry : this.persistentStore.load().entrySet()) {
+            if (entry.getValue().getExpiresAt() + staleMillis > now) {
+                this.cache.put(entry.getKey(), this.toCacheEntry(entry.getValue()));
+                restored++;
+            }
+        }
+        this.persistentStore.open();
+        logger.info("Restored " + restored + " forecasts from " + file.toAbsolutePath() + ".");
+    }
+
+    /**
+     * Loads the offline geocoder datasets if enabled.
+     * @throws IOException
+     */
+    @PostConstruct
+    public void initLocalGeocoder() throws IOException {
+        if (!this.localGeocoderEnabled) {
+            return;
+        }
+
+        LocalGeocoder geocoder = new LocalGeocoder(this.localGeocoderPrecision);
+        if (!this.localGeocoderZctaFile.isBlank()) {
+            geocoder.loadZctaCentroids(Path.of(this.localGeocoderZctaFile));
+        }
+        if (!this.localGeocoderAddressRangeFile.isBlank()) {
+            geocoder.loadAddressRanges(Path.of(this.localGeocoderAddressRangeFile));
+        }
+        this.localGeocoder = geocoder;
+    }
+
+    /**
+     * Stops background work and flushes the persistent forecast store.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.refreshExecutor.shutdownNow();
+        if (this.persistentStore != null) {
+            this.persistentStore.close();
+        }
+    }
+
+    /**
+     * Gets the metrics the forecast requests are recorded in.
+     * @return A ForecastMetrics object.
+     */
+    public ForecastMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the projection of the cached forecast. Projections are cached
+     * by the forecast ETag and the canonical fields, so they are only
+     * computed once per forecast version and follow the forecast's
+     * times when it is revalidated.
+     * @param entry is the CachedForecast to project.
+     * @param projection is the ForecastProjection to apply.
+     * @return A CachedForecast with the projected forecast.
+     * @throws IOException if the forecast couldn't be parsed.
+     */
+    protected CachedForecast project(CachedForecast entry, ForecastProjection projection) throws IOException {
+        String key = entry.getEtag() + "|" + projection.getKey();
+        CachedForecast projected = this.projectionCache.getIfPresent(key);
+        if (projected == null) {
+            projected = entry.projected(projection.project(entry.getForecastBytes()));
+            if (this.cacheGzip) {
+                projected = projected.withCompressed();
+            }
+            this.projectionCache.put(key, projected);
+        } else if (projected.getWrittenAt() != entry.getWrittenAt() || projected.getExpiresAt() != entry.getExpiresAt()) {
+            projected = projected.revalidated(entry.getWrittenAt(), entry.getExpiresAt(), entry.getUpstream());
+            this.projectionCache.put(key, projected);
+        }
+        return projected;
+    }
+
+    /**
+     * Gets the forecast for the provided address. The address is
+     * resolved to its NWS grid cell, which is the forecast cache key.
+     * Fresh cache hits are returned as is, expired entries within the
+     * stale window are reloaded or served stale, and cache misses are
+     * loaded from the upstream services.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A ForecastResult object or null if the address could not
+     * be geocoded.
+     * @throws JsonProcessingException
+     */
+    protected ForecastResult getForecast(String street, String city, String state, String zipcode) throws JsonProcessingException {
+        GridPoint point = this.resolveGridPoint(street, city, state, zipcode);
+        if (point == null) {
+            return null;
+        }
+        return this.getForecast(point, street, city, state, zipcode, true);
+    }
+
+    /**
+     * Gets the forecast for the provided grid cell, which the address
+     * was resolved to.
+     * @param point is the GridPoint to get the forecast for.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param useTier is a boolean with true to ask the second level
+     * cache tier before loading a miss from the NWS.
+     * @return A ForecastResult object.
+     * @throws JsonProcessingException
+     */
+    protected ForecastResult getForecast(GridPoint point, String street, String city, String state, String zipcode, boolean useTier) throws JsonProcessingException {
+        String key = point.getKey();
+
+        logger.debug("Attempting to get grid cell {} from the cache.", key);
+        long lookupStart = System.nanoTime();
+        CachedForecast entry = this.cache.getIfPresent(key);
+        this.metrics.record(ForecastMetrics.Stage.CACHE, System.nanoTime() - lookupStart);
+        long now = System.currentTimeMillis();
+        if (entry != null && !entry.isExpired(now)) {
+            // Cached forecast found, return it from cache and reload it
+            // in the background if it is close to expiring.
+            logger.debug("Cache hit for grid cell {}.", key);
+            this.recordRequest(key, true);
+            if (this.shouldRefreshAhead(entry, now)) {
+                this.refresh(key, entry);
+            }
+            return new ForecastResult(entry, true, false);
+        } else if (entry != null) {
+            // Expired entry within the stale window, give the reload a
+            // bounded amount of time and otherwise serve the stale entry.
+            logger.debug("Stale cache hit for grid cell {}.", key);
+            this.recordRequest(key, false);
+            CompletableFuture<CachedForecast> refresh = this.refresh(key, entry);
+            this.forecastLoads.raise(key);
+            CachedForecast fresh = this.awaitRefresh(refresh);
+            if (fresh != null) {
+                return new ForecastResult(fresh, false, false);
+            }
+            return new ForecastResult(entry, true, true);
+        }
+
+        // Cache miss, load the forecast. Concurrent misses for the
+        // same grid cell share a single upstream load.
+        logger.debug("Cache miss for grid cell {}.", key);
+        this.recordRequest(key, false);
+        entry = this.forecastLoads.execute(key, JsonProcessingException.class, () -> this.loadForecast(point, street, city, state, zipcode, useTier));
+        return entry == null ? null : new ForecastResult(entry, false, false);
+    }
+
+    /**
+     * Gets the forecast for the provided address only if it can be
+     * served from the caches without any upstream request.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A ForecastResult object or null if it isn't cached and fresh.
+     */
+    protected ForecastResult getCachedForecast(String street, String city, String state, String zipcode) {
+        Coordinates coordinates = this.geocodeCache.getIfPresent(AddressNormalizer.normalize(street, city, state, zipcode));
+        if (coordinates == null && this.localGeocoder != null) {
+            coordinates = this.localGeocoder.geocode(street, city, state, zipcode);
+        }
+        GridPoint point = coordinates == null ? null : this.pointsCache.getIfPresent(pointsKey(coordinates));
+        if (point == null) {
+            return null;
+        }
+        CachedForecast entry = this.cache.getIfPresent(point.getKey());
+        long now = System.currentTimeMillis();
+        if (entry == null || entry.isExpired(now)) {
+            return null;
+        }
+        this.recordRequest(point.getKey(), true);
+        if (this.shouldRefreshAhead(entry, now)) {
+            this.refresh(point.getKey(), entry);
+        }
+        return new ForecastResult(entry, true, false);
+    }
+
+    /**
+     * Counts a request for the grid cell towards its popularity, and
+     * counts a prefetch hit if it was prefetched and served fresh.
+     * @param key is a String with the grid cell cache key.
+     * @param hit is a boolean with true if it was a fresh cache hit.
+     */
+    protected void recordRequest(String key, boolean hit) {
+        if (this.hotKeys == null) {
+            return;
+        }
+        this.hotKeys.record(key);
+        if (this.prefetched.remove(key) && hit) {
+            this.prefetchHitCount.increment();
+        }
+    }
+
+    /**
+     * Starts counting the requests of each grid cell towards its
+     * popularity, keeping the provided number of hottest cells.
+     * @param hotKeys is an int with the number of hot cells to keep.
+     */
+    protected void trackHotKeys(int hotKeys) {
+        this.hotKeys = new HotKeyTracker(hotKeys, this.cacheMaxNumberEntries);
+    }
+
+    /**
+     * Reloads the grid cell in the background ahead of its requests and
+     * counts it as prefetched until its next request.
+     * @param key is a String with the grid cell cache key.
+     * @param entry is the CachedForecast currently cached.
+     */
+    protected void prefetch(String key, CachedForecast entry) {
+        this.refresh(key, entry);
+        this.prefetched.add(key);
+        this.prefetchCount.increment();
+    }
+
+    /**
+     * Gets the share of prefetched forecasts that were served as a
+     * cache hit before the next prefetch.
+     * @return A double from 0 to 1.
+     */
+    public double getPrefetchHitRate() {
+        long prefetches = this.prefetchCount.sum();
+        return prefetches == 0 ? 0.0 : (double) this.prefetchHitCount.sum() / prefetches;
+    }
+
+    /**
+     * Loads the forecast for the grid cell unless another load has just
+     * cached a fresh one, from the second level cache tier if it has it
+     * and otherwise from the NWS. This is run by the single leader of a
+     * set of concurrent cache misses for the grid cell.
+     * @param point is the GridPoint to load the forecast for.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param useTier is a boolean with true to ask the second level
+     * cache tier first.
+     * @return A CachedForecast object or null if the NWS has no forecast
+     * for the grid cell.
+     * @throws JsonProcessingException
+     */
+    protected CachedForecast loadForecast(GridPoint point, String street, String city, String state, String zipcode, boolean useTier) throws JsonProcessingException {
+        // Another load may have completed between our cache lookup
+        // and becoming the leader, so check the cache again.
+        CachedForecast entry = this.cache.getIfPresent(point.getKey());
+        if (entry != null && !entry.isExpired(System.currentTimeMillis())) {
+            return entry;
+        }
+        if (useTier) {
+            entry = this.getFromTier(point, street, city, state, zipcode);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return this.withNegativeCache("forecast|" + point.getKey(), () -> this.fetchForecast(point, street, city, state, zipcode));
+    }
+
+    /**
+     * Gets a fresh forecast for the grid cell from the second level
+     * cache tier. It isn't added to the local cache, so each node only
+     * holds the grid cells it owns and the cluster's cache capacity
+     * grows with the number of nodes. Concurrent misses still share a
+     * single request to the owner.
+     * @param point is the GridPoint to get the forecast for.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A CachedForecast object or null if the tier doesn't have
+     * a fresh one.
+     */
+    protected CachedForecast getFromTier(GridPoint point, String street, String city, String state, String zipcode) {
+        CachedForecast entry = this.cacheTier.get(point, new Address(street, city, state, zipcode));
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the forecast for the grid cell from the NWS and adds it to
+     * the cache. The address is kept with the entry so it can be
+     * reloaded.
+     * @param point is the GridPoint to get the forecast for.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A CachedForecast object.
+     * @throws JsonProcessingException
+     * @throws InvalidForecastException if the NWS returned an unusable
+     * forecast.
+     */
+    protected CachedForecast fetchForecast(GridPoint point, String street, String city, String state, String zipcode) throws JsonProcessingException {
+        NwsForecast forecast = this.nwsGovClient.fetchForecast(point);
+        this.checkForecast(point.getKey(), forecast);
+
+        // Add to cache for the grid cell.
+        logger.debug("Adding {} to the cache.", point.getKey());
+        long now = System.currentTimeMillis();
+        CachedForecast entry = new CachedForecast(
+            forecast.getBody().getBytes(StandardCharsets.UTF_8), null, now, this.getExpiresAt(now, forecast.getExpires()),
+            street, city, state, zipcode, this.toValidators(forecast)
+        );
+        return this.putForecast(point.getKey(), entry);
+    }
+
+    /**
+     * Reloads the provided cache entry. If the entry has the NWS
+     * forecast URL and validators it is revalidated with a single
+     * conditional request, otherwise it is fetched again in full.
+     * @param key is a String with the grid cell cache key.
+     * @param entry is the CachedForecast to reload.
+     * @return The reloaded CachedForecast or null if the address could
+     * not be geocoded or the NWS no longer has a forecast for it.
+     * @throws JsonProcessingException
+     */
+    protected CachedForecast refreshForecast(String key, CachedForecast entry) throws JsonProcessingException {
+        NwsForecast upstream = entry.getUpstream();
+        if (upstream == null || upstream.getForecastUrl() == null) {
+            GridPoint point = this.resolveGridPoint(entry.getStreet(), entry.getCity(), entry.getState(), entry.getZipcode());
+            return point == null ? null : this.fetchForecast(point, entry.getStreet(), entry.getCity(), entry.getState(), entry.getZipcode());
+        }
+
+        // The owner of the grid cell may have already reloaded it.
+        CachedForecast shared = this.getFromTier(GridPoint.fromKey(key, upstream.getForecastUrl()),
+            entry.getStreet(), entry.getCity(), entry.getState(), entry.getZipcode());
+        if (shared != null) {
+            // Loaded while the owner was down, the owner has it again.
+            this.cache.invalidate(key);
+            return shared;
+        }
+
+        NwsForecast forecast = this.withNegativeCache("forecast|" + key, () -> this.nwsGovClient.revalidate(upstream));
+        if (forecast == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = this.getExpiresAt(now, forecast.getExpires());
+        if (forecast.isNotModified()) {
+            logger.debug("Forecast for grid cell {} not modified.", key);
+            return this.putForecast(key, entry.revalidated(now, expiresAt, this.toValidators(forecast)));
+        }
+        this.checkForecast(key, forecast);
+        return this.putForecast(key, new CachedForecast(
+            forecast.getBody().getBytes(StandardCharsets.UTF_8), null, now, expiresAt,
+            entry.getStreet(), entry.getCity(), entry.getState(), entry.getZipcode(), this.toValidators(forecast)
+        ));
+    }
+
+    /**
+     * Gets the expiration time for a forecast loaded now. This follows
+     * the NWS Expires header when enabled and present, but never less
+     * than the minimum, and otherwise uses the cache duration.
+     * @param now is a long with the current epoch millis.
+     * @param upstreamExpires is a long with the NWS Expires epoch millis
+     * or -1 if there wasn't one.
+     * @return A long with the epoch millis the forecast expires.
+     */
+    protected long getExpiresAt(long now, long upstreamExpires) {
+        if (this.cacheHonorUpstreamExpires && upstreamExpires > 0) {
+            return Math.max(upstreamExpires, now + TimeUnit.SECONDS.toMillis(this.cacheMinExpiresSeconds));
+        }
+        return now + TimeUnit.MINUTES.toMillis(this.cacheExpiresMinutes);
+    }
+
+    /**
+     * Gets the NWS forecast URL and validators to keep with a cache
+     * entry, without the forecast body.
+     * @param forecast is the NwsForecast.
+     * @return A NwsForecast without the body or null if there is no
+     * forecast URL.
+     */
+    protected NwsForecast toValidators(NwsForecast forecast) {
+        if (forecast.getForecastUrl() == null) {
+            return null;
+        }
+        return new NwsForecast(null, forecast.getForecastUrl(), forecast.getEtag(), forecast.getLastModified(), forecast.getExpires(), false);
+    }
+
+    /**
+     * Prepares a forecast to be kept in the cache, adding the
+     * pre-compressed copy and moving it off the heap if enabled.
+     * @param entry is the CachedForecast to prepare.
+     * @return The CachedForecast to put in the cache.
+     */
+    protected CachedForecast toCacheEntry(CachedForecast entry) {
+        if (this.cacheGzip && !entry.hasCompressed()) {
+            entry = entry.withCompressed();
+        }
+        return this.cacheOffHeap ? entry.offHeap() : entry;
+    }
+
+    /**
+     * Adds the forecast to the cache, with a pre-compressed copy if
+     * enabled, and queues it to be written to the persistent store if
+     * enabled.
+     * @param key is a String with the cache key.
+     * @param entry is the CachedForecast to add.
+     * @return The CachedForecast that was added to the cache.
+     */
+    protected CachedForecast putForecast(String key, CachedForecast entry) {
+        entry = this.toCacheEntry(entry);
+        this.cache.put(key, entry);
+        this.cacheTier.put(key, entry);
+        if (this.persistentStore != null) {
+            this.persistentStore.append(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Checks if a fresh cache hit is old enough to be reloaded ahead
+     * of its expiration.
+     * @param entry is the CachedForecast that was hit.
+     * @param now is a long with the current epoch millis.
+     * @return A boolean with true if the entry should be reloaded.
+     */
+    protected boolean shouldRefreshAhead(CachedForecast entry, long now) {
+        if (this.cacheRefreshAheadFraction <= 0) {
+            return false;
+        }
+        long ttl = entry.getExpiresAt() - entry.getWrittenAt();
+        return entry.getAgeMillis(now) >= (long) (ttl * this.cacheRefreshAheadFraction);
+    }
+
+    /**
+     * Starts a background reload of the provided entry unless one is
+     * already running for its grid cell. The reload shares the single
+     * flight with cache misses, so it never duplicates their work, and
+     * runs at background priority until a caller that waits for it
+     * raises it.
+     * @param key is a String with the grid cell cache key.
+     * @param entry is the CachedForecast to reload.
+     * @return A CompletableFuture with the reloaded entry.
+     */
+    protected CompletableFuture<CachedForecast> refresh(String key, CachedForecast entry) {
+        CompletableFuture<CachedForecast> future = new CompletableFuture<>();
+        CompletableFuture<CachedForecast> running = this.refreshes.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+
+        // The load is registered with the single flight before this
+        // returns, so a caller waiting for it can find and raise it.
+        logger.debug("Refreshing grid cell {} in the background.", key);
+        UpstreamScheduler.withPriority(UpstreamScheduler.Priority.BACKGROUND,
+            () -> this.forecastLoads.submit(key, () -> this.refreshForecast(key, entry), this.refreshExecutor))
+            .whenComplete((result, ex) -> {
+                this.refreshes.remove(key, future);
+                if (ex != null) {
+                    logger.warn("Background refresh failed for grid cell {}: {}", key, ex.getMessage());
+                    future.completeExceptionally(ex);
+                } else {
+                    future.complete(result);
+                }
+            });
+        return future;
+    }
+
+    /**
+     * Waits up to the stale wait time for a reload to finish.
+     * @param future is the CompletableFuture of the reload.
+     * @return The reloaded CachedForecast or null if the reload failed,
+     * found nothing or did not finish in time.
+     */
+    protected CachedForecast awaitRefresh(CompletableFuture<CachedForecast> future) {
+        try {
+            return future.get(this.cacheStaleWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the provided address to the NWS grid cell it falls in.
+     * The points lookup is cached by the rounded coordinates used in
+     * the points request, so every address that rounds to the same
+     * point shares it.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A GridPoint or null if the address could not be geocoded
+     * or has no NWS forecast.
+     * @throws JsonProcessingException
+     */
+    protected GridPoint resolveGridPoint(String street, String city, String state, String zipcode) throws JsonProcessingException {
+        Coordinates coordinates = this.geocode(street, city, state, zipcode);
+        if (coordinates == null) {
+            return null;
+        }
+
+        String pointsKey = pointsKey(coordinates);
+        GridPoint point = this.pointsCache.getIfPresent(pointsKey);
+        if (point != null) {
+            return point;
+        }
+        return this.pointLoads.execute(pointsKey, JsonProcessingException.class, () -> {
+            GridPoint loaded = this.pointsCache.getIfPresent(pointsKey);
+            if (loaded == null) {
+                loaded = this.withNegativeCache("points|" + pointsKey, () -> this.nwsGovClient.getGridPoint(coordinates));
+                if (loaded != null) {
+                    this.pointsCache.put(pointsKey, loaded);
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Gets the coordinates for the provided address, first from the
+     * geocode cache, then from the local geocoder if enabled and
+     * otherwise from the Census Bureau.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A Coordinates object or null if the address could not
+     * be geocoded.
+     * @throws JsonProcessingException
+     */
+    protected Coordinates geocode(String street, String city, String state, String zipcode) throws JsonProcessingException {
+        String addressKey = AddressNormalizer.normalize(street, city, state, zipcode);
+        Coordinates coordinates = this.geocodeCache.getIfPresent(addressKey);
+        if (coordinates != null) {
+            logger.debug("Geocode cache hit for address: '{}, {}, {} {}'", street, city, state, zipcode);
+            return coordinates;
+        }
+
+        // Resolve the address offline if there's a confident match.
+        if (this.localGeocoder != null) {
+            coordinates = this.localGeocoder.geocode(street, city, state, zipcode);
+            if (coordinates != null) {
+                logger.debug("Local geocode {} for address: '{}, {}, {} {}'", coordinates, street, city, state, zipcode);
+                return coordinates;
+            }
+        }
+
+        // Attempt to get the geocoded coordinates from the Census Bureau.
+        coordinates = this.withNegativeCache("geocode|" + addressKey,
+            () -> this.censusGovGeocodeClient.geocode(street, city, state, zipcode));
+        if (coordinates == null) {
+            logger.warn("No coordinates found for address: '{}, {}, {} {}'", street, city, state, zipcode);
+            return null;
+        }
+        logger.debug("Found coordinates {} for address: '{}, {}, {} {}'", coordinates, street, city, state, zipcode);
+        this.geocodeCache.put(addressKey, coordinates);
+        return coordinates;
+    }
+
+    /**
+     * Makes an upstream lookup unless the same lookup recently found
+     * nothing or failed. A lookup that finds nothing, or that the
+     * upstream rejects with a client error, is remembered as not found
+     * and answered with null. A server error or an unusable forecast is
+     * remembered as an error, and repeats fail fast with a 503 until it
+     * expires. Throttling and rejections by the upstream guard aren't
+     * remembered since the guard and scheduler already handle them.
+     * @param key is a String with the negative cache key of the lookup.
+     * @param lookup is the upstream lookup to make.
+     * @return The result of the lookup or null if there is none.
+     * @throws E if the lookup failed.
+     * @throws UpstreamUnavailableException if the lookup recently failed.
+     */
+    protected <V, E extends Exception> V withNegativeCache(String key, ForecastMetrics.Timed<V, E> lookup) throws E {
+        NegativeResult negative = this.negativeCache.getIfPresent(key);
+        if (negative != null) {
+            logger.debug("Negative cache hit for {}.", key);
+            if (negative.getKind() == NegativeResult.Kind.NOT_FOUND) {
+                return null;
+            }
+            throw new UpstreamUnavailableException(negative.getMessage(), negative.getRemainingSeconds(System.currentTimeMillis()));
+        }
+
+        try {
+            V value = lookup.call();
+            if (value == null) {
+                this.putNegative(key, NegativeResult.Kind.NOT_FOUND, "Nothing found for " + key + ".");
+            }
+            return value;
+        } catch (HttpClientErrorException e) {
+            int status = e.getStatusCode().value();
+            if (status == HttpStatus.TOO_MANY_REQUESTS.value() || status == HttpStatus.FORBIDDEN.value()) {
+                throw e;
+            }
+            logger.warn("Upstream returned {} for {}.", status, key);
+            this.putNegative(key, NegativeResult.Kind.NOT_FOUND, e.getMessage());
+            return null;
+        } catch (HttpServerErrorException | InvalidForecastException e) {
+            this.putNegative(key, NegativeResult.Kind.UPSTREAM_ERROR, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a lookup result to the negative cache for the number of
+     * seconds configured for its kind.
+     * @param key is a String with the negative cache key of the lookup.
+     * @param kind is the NegativeResult.Kind of the result.
+     * @param message is a String with what the lookup returned.
+     */
+    protected void putNegative(String key, NegativeResult.Kind kind, String message) {
+        int seconds = kind == NegativeResult.Kind.NOT_FOUND ? this.negativeCacheNotFoundSeconds : this.negativeCacheErrorSeconds;
+        if (seconds <= 0) {
+            return;
+        }
+        this.negativeCache.put(key, new NegativeResult(kind, message, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds)));
+    }
+
+    /**
+     * Checks that the NWS returned a usable forecast for the grid cell
+     * before it is cached.
+     * @param key is a String with the grid cell cache key.
+     * @param forecast is the NwsForecast that was returned.
+     * @throws InvalidForecastException if the forecast has no periods.
+     */
+    protected void checkForecast(String key, NwsForecast forecast) {
+        if (!NwsGovClient.isValidForecast(forecast.getBody())) {
+            throw new InvalidForecastException("The NWS returned an invalid forecast for grid cell " + key + ".");
+        }
+    }
+
+    /**
+     * Gets the number of forecast requests that were coalesced onto
+     * another request's in-flight upstream load.
+     * @return A long with the number of coalesced requests.
+     */
+    public long getCoalescedRequestCount() {
+        return this.forecastLoads.getCoalescedCount();
+    }
+
+    /**
+     * Gets the number of upstream forecast loads that were run.
+     * @return A long with the number of upstream loads.
+     */
+    public long getForecastLoadCount() {
+        return this.forecastLoads.getLoadCount();
+    }
+
+    /**
+     * Checks that the URL is on the NWS host the client is configured
+     * with.
+     * @param url is a String with the URL to check.
+     * @return A boolean with true if the URL is on the NWS host.
+     */
+    protected boolean isNwsUrl(String url) {
+        try {
+            UriComponents nws = UriComponentsBuilder.fromUriString(this.nwsGovClient.url).build();
+            UriComponents target = UriComponentsBuilder.fromUriString(url).build();
+            return nws.getHost() != null && nws.getHost().equalsIgnoreCase(target.getHost())
+                && Objects.equals(nws.getScheme(), target.getScheme()) && nws.getPort() == target.getPort();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the points cache key for the coordinates, which is the
+     * rounded latitude and longitude used in the points request.
+     * @param coordinates is the Coordinates to get the key for.
+     * @return A String with the points cache key.
+     */
+    protected static String pointsKey(Coordinates coordinates) {
+        return NwsGovClient.formatCoordinate(coordinates.getLatitude()) + "," + NwsGovClient.formatCoordinate(coordinates.getLongitude());
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch that estimates how often each key has been seen in
+ * a fixed amount of memory. Each key increments one counter in each of
+ * four rows and its estimate is the smallest of those counters, which
+ * can only overcount. To favor recent popularity every counter is
+ * halved once the sample size of increments has been reached. The
+ * counters are updated without locking, so under concurrent updates
+ * the estimates are approximate, which is all they need to be.
+ */
+public class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final AtomicIntegerArray table;
+    private final int widthBits;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * Constructor sizes the sketch for the expected number of distinct
+     * keys.
+     * @param expectedKeys is an int with the expected number of keys.
+     */
+    public FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(16, expectedKeys - 1) << 1);
+        this.widthBits = Integer.numberOfTrailingZeros(width);
+        this.table = new AtomicIntegerArray(DEPTH * width);
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Counts an occurrence of the key.
+     * @param key is a String with the key.
+     */
+    public void increment(String key) {
+        long hash = spread(key);
+        for (int row = 0; row < DEPTH; row++) {
+            this.table.incrementAndGet(this.index(hash, row));
+        }
+        if (this.additions.incrementAndGet() == this.sampleSize) {
+            this.age();
+        }
+    }
+
+    /**
+     * Gets the estimated number of occurrences of the key.
+     * @param key is a String with the key.
+     * @return An int with the estimate.
+     */
+    public int frequency(String key) {
+        long hash = spread(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, this.table.get(this.index(hash, row)));
+        }
+        return min;
+    }
+
+    /**
+     * Halves every counter so that old popularity fades.
+     */
+    private void age() {
+        for (int i = 0; i < this.table.length(); i++) {
+            this.table.getAndUpdate(i, count -> count >>> 1);
+        }
+        this.additions.set(this.sampleSize / 2);
+    }
+
+    private int index(long hash, int row) {
+        int column = (int) ((hash * SEEDS[row]) >>> (64 - this.widthBits));
+        return (row << this.widthBits) + column;
+    }
+
+    private static long spread(String key) {
+        long hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) * 0xFF51AFD7ED558CCDL + 1;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * NWS forecast grid cell that a point falls in, from the points
+ * response. Every address in the cell shares the same forecast.
+ */
+public class GridPoint {
+    protected final String gridId;
+    protected final int gridX;
+    protected final int gridY;
+    protected final String forecastUrl;
+
+    /**
+     * Constructor sets the grid cell values.
+     * @param gridId is a String with the NWS office grid id or null.
+     * @param gridX is an int with the grid x coordinate.
+     * @param gridY is an int with the grid y coordinate.
+     * @param forecastUrl is a String with the forecast URL of the cell.
+     */
+    public GridPoint(String gridId, int gridX, int gridY, String forecastUrl) {
+        this.gridId = gridId;
+        this.gridX = gridX;
+        this.gridY = gridY;
+        this.forecastUrl = forecastUrl;
+    }
+
+    /**
+     * Creates the grid cell from its cache key and forecast URL.
+     * @param key is a String with the cache key from getKey.
+     * @param forecastUrl is a String with the forecast URL of the cell.
+     * @return A GridPoint with the same cache key.
+     */
+    public static GridPoint fromKey(String key, String forecastUrl) {
+        int slash = key.lastIndexOf('/');
+        int comma = key.lastIndexOf(',');
+        if (!key.equals(forecastUrl) && slash > 0 && comma > slash) {
+            try {
+                return new GridPoint(key.substring(0, slash), Integer.parseInt(key.substring(slash + 1, comma)),
+                    Integer.parseInt(key.substring(comma + 1)), forecastUrl);
+            } catch (NumberFormatException e) {
+                // Not a grid key, fall through.
+            }
+        }
+        return new GridPoint(null, 0, 0, forecastUrl);
+    }
+
+    /**
+     * Creates the grid cell from its NWS forecast URL, which has the
+     * form .../gridpoints/STO/53,82/forecast.
+     * @param forecastUrl is a String with the forecast URL of the cell.
+     * @return A GridPoint whose cache key is derived from the URL, or
+     * is the URL if it isn't a grid forecast URL.
+     */
+    public static GridPoint fromForecastUrl(String forecastUrl) {
+        String path = forecastUrl;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String[] parts = path.split("/");
+        int n = parts.length;
+        if (n >= 4 && parts[n - 1].equals("forecast") && parts[n - 4].equals("gridpoints")) {
+            String[] xy = parts[n - 2].split(",");
+            if (!parts[n - 3].isEmpty() && xy.length == 2) {
+                try {
+                    return new GridPoint(parts[n - 3], Integer.parseInt(xy[0]), Integer.parseInt(xy[1]), forecastUrl);
+                } catch (NumberFormatException e) {
+                    // Not a grid forecast URL, fall through.
+                }
+            }
+        }
+        return new GridPoint(null, 0, 0, forecastUrl);
+    }
+
+    /**
+     * Gets the NWS office grid id.
+     * @return A String with the grid id or null if there isn't one.
+     */
+    public String getGridId() {
+        return gridId;
+    }
+
+    /**
+     * Gets the grid x coordinate.
+     * @return An int with the grid x coordinate.
+     */
+    public int getGridX() {
+        return gridX;
+    }
+
+    /**
+     * Gets the grid y coordinate.
+     * @return An int with the grid y coordinate.
+     */
+    public int getGridY() {
+        return gridY;
+    }
+
+    /**
+     * Gets the forecast URL of the cell.
+     * @return A String with the forecast URL.
+     */
+    public String getForecastUrl() {
+        return forecastUrl;
+    }
+
+    /**
+     * Gets the forecast cache key of the cell, like STO/53,82. If the
+     * points response had no grid id the forecast URL is used instead.
+     * @return A String with the cache key.
+     */
+    public String getKey() {
+        if (this.gridId == null) {
+            return this.forecastUrl;
+        }
+        return this.gridId + "/" + this.gridX + "," + this.gridY;
+    }
+
+    /**
+     * Creates a String representation of the grid cell.
+     * @return A String with the grid cell.
+     */
+    @Override
+    public String toString() {
+        return this.getKey();
+    }
+}
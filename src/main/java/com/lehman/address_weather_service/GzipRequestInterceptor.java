@@ -0,0 +1,105 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * RestClient interceptor that asks upstream services for gzip encoded
+ * responses and transparently decompresses them.
+ */
+public class GzipRequestInterceptor implements ClientHttpRequestInterceptor {
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (!request.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+        ClientHttpResponse response = execution.execute(request, body);
+        String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && encoding.trim().equalsIgnoreCase("gzip")) {
+            return new GzipClientHttpResponse(response);
+        }
+        return response;
+    }
+
+    /**
+     * Response wrapper that decompresses the body and drops the
+     * encoding and length headers that no longer apply to it.
+     */
+    private static class GzipClientHttpResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private final HttpHeaders headers;
+        private InputStream body;
+
+        GzipClientHttpResponse(ClientHttpResponse delegate) {
+            this.delegate = delegate;
+            this.headers = new HttpHeaders();
+            this.headers.putAll(delegate.getHeaders());
+            this.headers.remove(HttpHeaders.CONTENT_ENCODING);
+            this.headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return this.delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return this.delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (this.body == null) {
+                // Bodiless responses such as 304s have nothing to decompress.
+                PushbackInputStream raw = new PushbackInputStream(this.delegate.getBody(), 1);
+                int first = raw.read();
+                if (first == -1) {
+                    this.body = InputStream.nullInputStream();
+                } else {
+                    raw.unread(first);
+                    this.body = new GZIPInputStream(raw);
+                }
+            }
+            return this.body;
+        }
+
+        @Override
+        public void close() {
+            this.delegate.close();
+        }
+    }
+}
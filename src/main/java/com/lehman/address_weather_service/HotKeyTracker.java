@@ -0,0 +1,125 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the most requested cache keys. Every request is counted in a
+ * frequency sketch, and keys that are at least as popular as the
+ * current hot set are kept as candidates. The hot set is recomputed
+ * from the candidates on demand, which also trims the candidates back
+ * to a few times the hot set size.
+ */
+public class HotKeyTracker {
+    private static final int CANDIDATES_PER_HOT_KEY = 4;
+
+    /**
+     * A hot key and its estimated recent request count.
+     */
+    public static class HotKey {
+        protected final String key;
+        protected final int frequency;
+
+        public HotKey(String key, int frequency) {
+            this.key = key;
+            this.frequency = frequency;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+    }
+
+    protected final int hotKeys;
+
+    private final FrequencySketch sketch;
+    private final Map<String, Boolean> candidates = new ConcurrentHashMap<>();
+    private volatile int admitFrequency;
+
+    /**
+     * Constructor sets up the tracker.
+     * @param hotKeys is an int with the size of the hot set.
+     * @param expectedKeys is an int with the expected number of
+     * distinct keys, used to size the sketch.
+     */
+    public HotKeyTracker(int hotKeys, int expectedKeys) {
+        this.hotKeys = hotKeys;
+        this.sketch = new FrequencySketch(expectedKeys);
+    }
+
+    /**
+     * Counts a request for the key.
+     * @param key is a String with the cache key.
+     */
+    public void record(String key) {
+        this.sketch.increment(key);
+        if (this.candidates.containsKey(key)) {
+            return;
+        }
+        int capacity = this.hotKeys * CANDIDATES_PER_HOT_KEY;
+        if (this.candidates.size() < capacity || this.sketch.frequency(key) >= this.admitFrequency) {
+            this.candidates.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Gets the estimated recent request count of the key.
+     * @param key is a String with the cache key.
+     * @return An int with the estimate.
+     */
+    public int frequency(String key) {
+        return this.sketch.frequency(key);
+    }
+
+    /**
+     * Computes the hot set, most requested first, and trims the
+     * candidates.
+     * @return A List of HotKey objects.
+     */
+    public List<HotKey> getHotKeys() {
+        List<HotKey> ranked = new ArrayList<>(this.candidates.size());
+        for (String key : this.candidates.keySet()) {
+            int frequency = this.sketch.frequency(key);
+            if (frequency > 0) {
+                ranked.add(new HotKey(key, frequency));
+            } else {
+                this.candidates.remove(key);
+            }
+        }
+        ranked.sort(Comparator.comparingInt(HotKey::getFrequency).reversed());
+
+        int capacity = this.hotKeys * CANDIDATES_PER_HOT_KEY;
+        for (int i = capacity; i < ranked.size(); i++) {
+            this.candidates.remove(ranked.get(i).getKey());
+        }
+        List<HotKey> hot = ranked.subList(0, Math.min(this.hotKeys, ranked.size()));
+        this.admitFrequency = hot.size() < this.hotKeys ? 0 : hot.get(hot.size() - 1).getFrequency();
+        return new ArrayList<>(hot);
+    }
+}
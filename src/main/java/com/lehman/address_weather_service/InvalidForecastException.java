@@ -0,0 +1,36 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+/**
+ * Thrown when the NWS answers a forecast request successfully but the
+ * body isn't a usable forecast, such as an empty document or one
+ * without any forecast periods. It is never put in the forecast cache.
+ */
+public class InvalidForecastException extends RuntimeException {
+    /**
+     * Constructor sets the message.
+     * @param message is a String with what was wrong with the forecast.
+     */
+    public InvalidForecastException(String message) {
+        super(message);
+    }
+}
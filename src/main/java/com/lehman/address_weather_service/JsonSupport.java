@@ -0,0 +1,55 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Shared Jackson objects. ObjectMapper and ObjectReader are thread-safe
+ * once configured, so a single instance is used for all parsing rather
+ * than creating a new mapper for every response.
+ */
+public final class JsonSupport {
+    /**
+     * Shared ObjectMapper.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Shared ObjectReader for reading JSON trees.
+     */
+    public static final ObjectReader READER = MAPPER.reader();
+
+    private JsonSupport() { }
+
+    /**
+     * Encodes the provided value as a JSON string literal.
+     * @param value is the String to encode, which may be null.
+     * @return A String with the JSON literal.
+     */
+    public static String toJsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        return "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(value)) + "\"";
+    }
+}
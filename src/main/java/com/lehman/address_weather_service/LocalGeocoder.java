@@ -0,0 +1,373 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Offline geocoder that resolves addresses from Census datasets loaded
+ * into memory, so most lookups don't need a Census Bureau request.
+ * Zipcodes are resolved to the ZCTA centroids from the Census
+ * gazetteer file, and street addresses are interpolated along address
+ * ranges extracted from the TIGER address features. The index is kept
+ * in sorted primitive arrays and searched with binary search.
+ *
+ * The precision mode chooses what counts as a confident match. In ZIP
+ * mode the zipcode centroid is returned, and in ADDRESS mode only an
+ * address range match is returned. Anything else returns null so the
+ * caller falls back to the Census Bureau.
+ */
+public class LocalGeocoder {
+    private static Logger logger = LogManager.getLogger(LocalGeocoder.class);
+
+    /**
+     * The precision of the coordinates the geocoder returns.
+     */
+    public enum Precision {
+        ZIP,
+        ADDRESS
+    }
+
+    protected final Precision precision;
+
+    // ZCTA centroids sorted by zipcode.
+    private int[] zips = new int[0];
+    private double[] zipLatitudes = new double[0];
+    private double[] zipLongitudes = new double[0];
+
+    // Address ranges sorted by zipcode, street and from house number.
+    private int[] rangeZips = new int[0];
+    private String[] rangeStreets = new String[0];
+    private int[] rangeFrom = new int[0];
+    private int[] rangeTo = new int[0];
+    private double[] rangeFromLatitudes = new double[0];
+    private double[] rangeFromLongitudes = new double[0];
+    private double[] rangeToLatitudes = new double[0];
+    private double[] rangeToLongitudes = new double[0];
+
+    /**
+     * Constructor sets the precision mode.
+     * @param precision is the Precision of the coordinates to return.
+     */
+    public LocalGeocoder(Precision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Loads the ZCTA centroids from a Census gazetteer file, which is
+     * tab separated with a header row that has the GEOID, INTPTLAT and
+     * INTPTLONG columns.
+     * @param file is the Path of the gazetteer file.
+     * @throws IOException
+     */
+    public void loadZctaCentroids(Path file) throws IOException {
+        int count = 0;
+        int skipped = 0;
+        int[] zips = new int[40000];
+        double[] latitudes = new double[zips.length];
+        double[] longitudes = new double[zips.length];
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String[] header = splitTrimmed(reader.readLine(), '\t');
+            int geoid = indexOf(header, "GEOID", file);
+            int lat = indexOf(header, "INTPTLAT", file);
+            int lon = indexOf(header, "INTPTLONG", file);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] cols = splitTrimmed(line, '\t');
+                try {
+                    if (count == zips.length) {
+                        zips = Arrays.copyOf(zips, count * 2);
+                        latitudes = Arrays.copyOf(latitudes, count * 2);
+                        longitudes = Arrays.copyOf(longitudes, count * 2);
+                    }
+                    zips[count] = Integer.parseInt(cols[geoid]);
+                    latitudes[count] = Double.parseDouble(cols[lat]);
+                    longitudes[count] = Double.parseDouble(cols[lon]);
+                    count++;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    skipped++;
+                }
+            }
+        }
+
+        // Sort by zipcode, packing the zipcode and row into one long so
+        // the sort stays on primitives.
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) zips[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        this.zips = new int[count];
+        this.zipLatitudes = new double[count];
+        this.zipLongitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            int row = (int) order[i];
+            this.zips[i] = zips[row];
+            this.zipLatitudes[i] = latitudes[row];
+            this.zipLongitudes[i] = longitudes[row];
+        }
+        logger.info("Loaded " + count + " zipcode centroids from " + file + " (skipped " + skipped + " lines).");
+    }
+
+    /**
+     * Loads address ranges from a comma separated file with a header
+     * row and the columns zip, street, from, to, fromLat, fromLon,
+     * toLat and toLon, where from and to are the house numbers at each
+     * end of the range.
+     * @param file is the Path of the address range file.
+     * @throws IOException
+     */
+    public void loadAddressRanges(Path file) throws IOException {
+        int count = 0;
+        int skipped = 0;
+        int[] zips = new int[1024];
+        String[] streets = new String[zips.length];
+        int[] from = new int[zips.length];
+        int[] to = new int[zips.length];
+        double[] coords = new double[zips.length * 4];
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String[] header = splitTrimmed(reader.readLine(), ',');
+            int[] columns = new int[] {
+                indexOf(header, "zip", file), indexOf(header, "street", file),
+                indexOf(header, "from", file), indexOf(header, "to", file),
+                indexOf(header, "fromLat", file), indexOf(header, "fromLon", file),
+                indexOf(header, "toLat", file), indexOf(header, "toLon", file)
+            };
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] cols = splitTrimmed(line, ',');
+                try {
+                    if (count == zips.length) {
+                        zips = Arrays.copyOf(zips, count * 2);
+                        streets = Arrays.copyOf(streets, count * 2);
+                        from = Arrays.copyOf(from, count * 2);
+                        to = Arrays.copyOf(to, count * 2);
+                        coords = Arrays.copyOf(coords, count * 8);
+                    }
+                    zips[count] = Integer.parseInt(cols[columns[0]]);
+                    streets[count] = AddressNormalizer.normalizeStreet(cols[columns[1]]).intern();
+                    from[count] = Integer.parseInt(cols[columns[2]]);
+                    to[count] = Integer.parseInt(cols[columns[3]]);
+                    for (int c = 0; c < 4; c++) {
+                        coords[count * 4 + c] = Double.parseDouble(cols[columns[4 + c]]);
+                    }
+                    count++;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    skipped++;
+                }
+            }
+        }
+
+        final int[] sortZips = zips;
+        final String[] sortStreets = streets;
+        final int[] sortFrom = from;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> sortZips[i])
+            .thenComparing(i -> sortStreets[i])
+            .thenComparingInt(i -> sortFrom[i]));
+
+        this.rangeZips = new int[count];
+        this.rangeStreets = new String[count];
+        this.rangeFrom = new int[count];
+        this.rangeTo = new int[count];
+        this.rangeFromLatitudes = new double[count];
+        this.rangeFromLongitudes = new double[count];
+        this.rangeToLatitudes = new double[count];
+        this.rangeToLongitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            int row = order[i];
+            this.rangeZips[i] = zips[row];
+            this.rangeStreets[i] = streets[row];
+            this.rangeFrom[i] = from[row];
+            this.rangeTo[i] = to[row];
+            this.rangeFromLatitudes[i] = coords[row * 4];
+            this.rangeFromLongitudes[i] = coords[row * 4 + 1];
+            this.rangeToLatitudes[i] = coords[row * 4 + 2];
+            this.rangeToLongitudes[i] = coords[row * 4 + 3];
+        }
+        logger.info("Loaded " + count + " address ranges from " + file + " (skipped " + skipped + " lines).");
+    }
+
+    /**
+     * Geocodes the address at the configured precision.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @return A Coordinates object or null if there isn't a confident
+     * match and the Census Bureau should be asked instead.
+     */
+    public Coordinates geocode(String street, String city, String state, String zipcode) {
+        int zip = parseZipcode(zipcode);
+        if (zip < 0) {
+            return null;
+        }
+        if (this.precision == Precision.ADDRESS) {
+            return this.findAddress(street, zip);
+        }
+        return this.findZipcode(zip);
+    }
+
+    /**
+     * Gets the number of zipcode centroids loaded.
+     * @return An int with the number of zipcodes.
+     */
+    public int getZipcodeCount() {
+        return this.zips.length;
+    }
+
+    /**
+     * Gets the number of address ranges loaded.
+     * @return An int with the number of address ranges.
+     */
+    public int getAddressRangeCount() {
+        return this.rangeZips.length;
+    }
+
+    /**
+     * Finds the centroid of the zipcode.
+     * @param zip is an int with the 5 digit zipcode.
+     * @return A Coordinates object or null if not found.
+     */
+    private Coordinates findZipcode(int zip) {
+        int index = Arrays.binarySearch(this.zips, zip);
+        if (index < 0) {
+            return null;
+        }
+        Coordinates coordinates = new Coordinates();
+        coordinates.set(this.zipLatitudes[index], this.zipLongitudes[index]);
+        return coordinates;
+    }
+
+    /**
+     * Finds the address range holding the house number on the street
+     * and interpolates its position along the range.
+     * @param street is a String with the street address line 1.
+     * @param zip is an int with the 5 digit zipcode.
+     * @return A Coordinates object or null if not found.
+     */
+    private Coordinates findAddress(String street, int zip) {
+        String normalized = AddressNormalizer.normalizeStreet(street);
+        int space = normalized.indexOf(' ');
+        if (space <= 0) {
+            return null;
+        }
+        int house;
+        try {
+            house = Integer.parseInt(normalized.substring(0, space));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String name = normalized.substring(space + 1);
+
+        for (int i = this.lowerBound(zip, name); i < this.rangeZips.length
+                && this.rangeZips[i] == zip && this.rangeStreets[i].equals(name); i++) {
+            int from = this.rangeFrom[i];
+            int to = this.rangeTo[i];
+            if (house >= Math.min(from, to) && house <= Math.max(from, to)) {
+                double t = from == to ? 0.0 : (double) (house - from) / (to - from);
+                Coordinates coordinates = new Coordinates();
+                coordinates.set(
+                    this.rangeFromLatitudes[i] + t * (this.rangeToLatitudes[i] - this.rangeFromLatitudes[i]),
+                    this.rangeFromLongitudes[i] + t * (this.rangeToLongitudes[i] - this.rangeFromLongitudes[i])
+                );
+                return coordinates;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first address range at or after the zipcode and street.
+     * @param zip is an int with the 5 digit zipcode.
+     * @param street is a String with the normalized street name.
+     * @return An int with the index of the first range.
+     */
+    private int lowerBound(int zip, String street) {
+        int low = 0;
+        int high = this.rangeZips.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = this.rangeZips[mid] != zip ? Integer.compare(this.rangeZips[mid], zip)
+                : this.rangeStreets[mid].compareTo(street);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int parseZipcode(String zipcode) {
+        String zip = AddressNormalizer.normalizeZipcode(zipcode);
+        if (zip.length() != 5) {
+            return -1;
+        }
+        for (int i = 0; i < zip.length(); i++) {
+            if (zip.charAt(i) < '0' || zip.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(zip);
+    }
+
+    private static String[] splitTrimmed(String line, char separator) {
+        if (line == null) {
+            return new String[0];
+        }
+        String[] cols = line.split(String.valueOf(separator), -1);
+        for (int i = 0; i < cols.length; i++) {
+            cols[i] = cols[i].trim();
+        }
+        return cols;
+    }
+
+    private static int indexOf(String[] header, String column, Path file) throws IOException {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new IOException("Missing column " + column + " in " + file);
+    }
+}
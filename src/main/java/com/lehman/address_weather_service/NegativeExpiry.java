@@ -0,0 +1,57 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caffeine Expiry for the negative cache. Each entry is evicted at its
+ * own expiration time, since not found results are kept longer than
+ * upstream errors.
+ */
+public class NegativeExpiry implements Expiry<String, NegativeResult> {
+    @Override
+    public long expireAfterCreate(String key, NegativeResult value, long currentTime) {
+        return this.remainingNanos(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, NegativeResult value, long currentTime, long currentDuration) {
+        return this.remainingNanos(value);
+    }
+
+    @Override
+    public long expireAfterRead(String key, NegativeResult value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * Gets the nanos remaining until the entry should be evicted.
+     * @param value is the NegativeResult entry.
+     * @return A long with the remaining nanos.
+     */
+    private long remainingNanos(NegativeResult value) {
+        long remaining = value.getExpiresAt() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+/**
+ * Immutable negative cache entry. Records that an upstream lookup
+ * found nothing or failed, so that repeating it can be answered
+ * without another upstream request until the entry expires.
+ */
+public class NegativeResult {
+    /**
+     * What the upstream lookup returned.
+     */
+    public enum Kind {
+        // The upstream answered that there is no result, such as an
+        // address without a geocode match.
+        NOT_FOUND,
+        // The upstream failed or returned an unusable result.
+        UPSTREAM_ERROR
+    }
+
+    protected final Kind kind;
+    protected final String message;
+    protected final long expiresAt;
+
+    /**
+     * Constructor sets the entry values.
+     * @param kind is the Kind of result.
+     * @param message is a String with what the lookup returned.
+     * @param expiresAt is a long with the epoch millis the entry expires.
+     */
+    public NegativeResult(Kind kind, String message, long expiresAt) {
+        this.kind = kind;
+        this.message = message;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Gets the kind of result.
+     * @return A Kind.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets what the lookup returned.
+     * @return A String with the message.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the time the entry expires.
+     * @return A long with the epoch millis the entry expires.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Gets the number of whole seconds until the entry expires,
+     * rounded up.
+     * @param now is a long with the current epoch millis.
+     * @return A long with the remaining seconds, 0 if expired.
+     */
+    public long getRemainingSeconds(long now) {
+        return Math.max(0, (this.expiresAt - now + 999) / 1000);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * The forecast document returned by the NWS along with the caching
+ * headers it was sent with, so that it can later be revalidated with
+ * a conditional request instead of being downloaded again.
+ */
+public class NwsForecast {
+    protected final String body;
+    protected final String forecastUrl;
+    protected final String etag;
+    protected final String lastModified;
+    protected final long expires;
+    protected final boolean notModified;
+
+    /**
+     * Constructor sets the forecast values.
+     * @param body is a String with the forecast JSON.
+     * @param forecastUrl is a String with the URL the forecast was
+     * fetched from, or null if there isn't one.
+     * @param etag is a String with the NWS ETag header or null.
+     * @param lastModified is a String with the NWS Last-Modified header or null.
+     * @param expires is a long with the epoch millis of the NWS Expires
+     * header or -1 if there wasn't one.
+     * @param notModified is a boolean with true if the NWS answered a
+     * conditional request with 304 Not Modified.
+     */
+    public NwsForecast(String body, String forecastUrl, String etag, String lastModified, long expires, boolean notModified) {
+        this.body = body;
+        this.forecastUrl = forecastUrl;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expires = expires;
+        this.notModified = notModified;
+    }
+
+    /**
+     * Gets the forecast JSON.
+     * @return A String with the forecast JSON, or null if the forecast
+     * was not modified.
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the URL the forecast was fetched from.
+     * @return A String with the forecast URL or null.
+     */
+    public String getForecastUrl() {
+        return forecastUrl;
+    }
+
+    /**
+     * Gets the NWS ETag header.
+     * @return A String with the ETag or null.
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Gets the NWS Last-Modified header.
+     * @return A String with the Last-Modified value or null.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gets the NWS Expires header.
+     * @return A long with the epoch millis or -1 if there wasn't one.
+     */
+    public long getExpires() {
+        return expires;
+    }
+
+    /**
+     * Gets whether the forecast was not modified since the validators
+     * that were sent.
+     * @return A boolean with true for 304 Not Modified.
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+}
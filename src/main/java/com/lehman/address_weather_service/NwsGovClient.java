@@ -19,12 +19,21 @@
 
 package com.lehman.address_weather_service;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * National Weather Service web client handles forecast requests.
@@ -32,7 +41,19 @@ import java.text.DecimalFormat;
 public class NwsGovClient {
     protected String url;
 
-    private final RestClient client = RestClient.create();
+    private final RestClient client;
+
+    // Parse responses with the streaming parser instead of a JSON tree.
+    protected boolean streamingParse = true;
+
+    protected ForecastMetrics metrics = new ForecastMetrics();
+
+    protected UpstreamGuard guard = UpstreamGuard.unguarded("nws");
+
+    protected UpstreamScheduler scheduler = new UpstreamScheduler(0, 0);
+
+    // Host the scheduler rate limits the requests by.
+    protected final String host;
 
     /**
      * Default constructor initializes the client with the provided
@@ -40,7 +61,19 @@ public class NwsGovClient {
      * @param url is a String with the NWS service URL.
      */
     public NwsGovClient(String url) {
+        this(RestClient.create(), url);
+    }
+
+    /**
+     * Constructor initializes the client with the shared RestClient
+     * and the provided service URL.
+     * @param client is the RestClient to make requests with.
+     * @param url is a String with the NWS service URL.
+     */
+    public NwsGovClient(RestClient client, String url) {
+        this.client = client;
         this.url = url;
+        this.host = UpstreamScheduler.hostOf(url);
     }
 
     /**
@@ -52,41 +85,285 @@ public class NwsGovClient {
      * @throws JsonProcessingException
      */
     public String getForecast(Coordinates coordinates) throws JsonProcessingException {
-        String ret = "{}";
+        return this.fetchForecast(coordinates).getBody();
+    }
+
+    /**
+     * Gets the forecast for the provided set of coordinates from
+     * the National Weather Service along with the NWS caching headers.
+     * @param coordinates is a Coordinates object with the place to get
+     * the forecast for.
+     * @return A NwsForecast object with the forecast JSON result.
+     * @throws JsonProcessingException
+     */
+    public NwsForecast fetchForecast(Coordinates coordinates) throws JsonProcessingException {
+        NwsForecast ret = new NwsForecast("{}", null, null, null, -1, false);
+
+        // Make the first request to get the grid cell the coordinates
+        // fall in and its forecast URL.
+        GridPoint point = this.getGridPoint(coordinates);
+
+        // Make the request to get the actual forecast.
+        if (point != null) {
+            ret = this.fetchForecast(point);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets the forecast for the provided grid cell from the National
+     * Weather Service along with the NWS caching headers.
+     * @param point is the GridPoint to get the forecast for.
+     * @return A NwsForecast object with the forecast JSON result.
+     */
+    public NwsForecast fetchForecast(GridPoint point) {
+        return this.getForcastUrl(point.getForecastUrl(), null);
+    }
+
+    /**
+     * Makes the points request for the coordinates and returns the
+     * grid cell they fall in.
+     * @param coordinates is a Coordinates object with the place to get
+     * the grid cell for.
+     * @return A GridPoint or null if the response has no forecast URL.
+     * @throws JsonProcessingException
+     */
+    public GridPoint getGridPoint(Coordinates coordinates) throws JsonProcessingException {
+        return this.metrics.time(ForecastMetrics.Stage.NWS_POINTS, () -> this.scheduler.call(this.host,
+            () -> this.guard.call(() -> this.requestGridPoint(coordinates))));
+    }
+
+    /**
+     * Makes the points request and parses the grid cell from it.
+     * @param coordinates is a Coordinates object with the place to get
+     * the grid cell for.
+     * @return A GridPoint or null if the response has no forecast URL.
+     * @throws JsonProcessingException
+     */
+    private GridPoint requestGridPoint(Coordinates coordinates) throws JsonProcessingException {
+        String latitude = formatCoordinate(coordinates.getLatitude());
+        String longitude = formatCoordinate(coordinates.getLongitude());
+        if (this.streamingParse) {
+            try {
+                return this.client.get()
+                    .uri(this.url, latitude, longitude)
+                    .exchange((request, response) -> {
+                        UpstreamResponses.checkStatus(response);
+                        return UpstreamResponses.parseAndDrain(response, this::getGridPointFromPointsStream);
+                    });
+            } catch (ResourceAccessException e) {
+                throw UpstreamResponses.unwrapParseFailure(e);
+            }
+        }
 
-        DecimalFormat df = new DecimalFormat("###.###");
-        // Make the first request to get the general forecast information.
         String json = this.client.get()
-            .uri(this.url, df.format(coordinates.getLatitude()), df.format(coordinates.getLongitude()))
+            .uri(this.url, latitude, longitude)
             .retrieve()
             .body(String.class);
+        return this.getGridPointFromPointsJson(json);
+    }
 
-        // Parse the JSON result.
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode root = objectMapper.readTree(json);
-
-        // Look for the forecast URL and then make the
-        // request to get the actual forecast.
+    /**
+     * Parses the provided NWS points JSON String and returns the grid
+     * cell or null if there is no forecast URL.
+     * @param json is a String with the NWS points response.
+     * @return A GridPoint or null if not found.
+     * @throws JsonProcessingException
+     */
+    public GridPoint getGridPointFromPointsJson(String json) throws JsonProcessingException {
+        JsonNode root = JsonSupport.READER.readTree(json);
         JsonNode properties = root.get("properties");
-        if (properties != null && properties.has("forecast")) {
-            String forecastUrl = properties.get("forecast").asText();
-            ret = this.getForcastUrl(forecastUrl);
+        if (properties == null || !properties.has("forecast") || !properties.get("forecast").isTextual()) {
+            return null;
         }
+        JsonNode gridId = properties.get("gridId");
+        return new GridPoint(
+            gridId != null && gridId.isTextual() ? gridId.asText() : null,
+            properties.path("gridX").asInt(),
+            properties.path("gridY").asInt(),
+            properties.get("forecast").asText()
+        );
+    }
 
-        return ret;
+    /**
+     * Reads the NWS points response from the provided stream and
+     * returns the grid cell or null if there is no forecast URL.
+     * Reading stops as soon as the grid id, x, y and forecast URL have
+     * been found.
+     * @param in is an InputStream with the NWS points response.
+     * @return A GridPoint or null if not found.
+     * @throws IOException
+     */
+    public GridPoint getGridPointFromPointsStream(InputStream in) throws IOException {
+        try (JsonParser parser = JsonSupport.MAPPER.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || !StreamingJson.findField(parser, "properties")) {
+                return null;
+            }
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            String gridId = null;
+            int gridX = 0;
+            int gridY = 0;
+            String forecastUrl = null;
+            int found = 0;
+            while (found < 4 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "gridId" -> {
+                        gridId = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                        found++;
+                    }
+                    case "gridX" -> {
+                        gridX = parser.getValueAsInt();
+                        found++;
+                    }
+                    case "gridY" -> {
+                        gridY = parser.getValueAsInt();
+                        found++;
+                    }
+                    case "forecast" -> {
+                        forecastUrl = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                        found++;
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            return forecastUrl == null ? null : new GridPoint(gridId, gridX, gridY, forecastUrl);
+        }
+    }
+
+    /**
+     * Sets whether responses are parsed with the streaming parser or
+     * read into a JSON tree.
+     * @param streamingParse is a boolean with true to use the streaming parser.
+     */
+    public void setStreamingParse(boolean streamingParse) {
+        this.streamingParse = streamingParse;
+    }
+
+    /**
+     * Sets the metrics the NWS request latencies and failures are
+     * recorded to.
+     * @param metrics is the ForecastMetrics to record to.
+     */
+    public void setMetrics(ForecastMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the guard the NWS requests go through.
+     * @param guard is the UpstreamGuard to use.
+     */
+    public void setGuard(UpstreamGuard guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * Sets the scheduler that rate limits the requests.
+     * @param scheduler is the UpstreamScheduler to use.
+     */
+    public void setScheduler(UpstreamScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Revalidates a previously fetched forecast with a conditional
+     * request to its forecast URL. If the NWS answers 304 Not Modified
+     * the result has no body and the caller keeps its copy.
+     * @param previous is the previously fetched NwsForecast.
+     * @return A NwsForecast object with the new forecast or the not
+     * modified result.
+     */
+    public NwsForecast revalidate(NwsForecast previous) {
+        return this.getForcastUrl(previous.getForecastUrl(), previous);
+    }
+
+    /**
+     * Formats a coordinate value with at most 3 decimal places as the
+     * NWS points API expects. This matches DecimalFormat("###.###") but
+     * is thread-safe.
+     * @param value is a double with the coordinate value.
+     * @return A String with the formatted value.
+     */
+    public static String formatCoordinate(double value) {
+        BigDecimal rounded = new BigDecimal(value).setScale(3, RoundingMode.HALF_EVEN).stripTrailingZeros();
+        if (rounded.signum() == 0) {
+            return "0";
+        }
+        return rounded.scale() < 0 ? rounded.setScale(0).toPlainString() : rounded.toPlainString();
+    }
+
+    /**
+     * Checks that a forecast body is a usable forecast, which is a JSON
+     * object with at least one forecast period. The NWS sometimes
+     * answers 200 with an empty or partial document, which must not be
+     * cached. Only the start of the periods array is parsed.
+     * @param body is a String with the forecast JSON.
+     * @return A boolean with true if the forecast has periods.
+     */
+    public static boolean isValidForecast(String body) {
+        if (body == null || body.isBlank()) {
+            return false;
+        }
+        try (JsonParser parser = JsonSupport.MAPPER.createParser(body)) {
+            return parser.nextToken() == JsonToken.START_OBJECT
+                && StreamingJson.findField(parser, "properties")
+                && parser.currentToken() == JsonToken.START_OBJECT
+                && StreamingJson.findField(parser, "periods")
+                && parser.currentToken() == JsonToken.START_ARRAY
+                && parser.nextToken() == JsonToken.START_OBJECT;
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     /**
      * Function used to make the actual request to get the
-     * forecast with the provided URL.
+     * forecast with the provided URL. When a previous result is
+     * provided its validators are sent as a conditional request.
      * @param forecastUrl is a String with the forecast URL.
-     * @return A String with the forecast results JSON string.
+     * @param previous is the previous NwsForecast or null.
+     * @return A NwsForecast object with the forecast results.
      */
-    private String getForcastUrl(String forecastUrl) {
-        String json = this.client.get()
+    private NwsForecast getForcastUrl(String forecastUrl, NwsForecast previous) {
+        return this.metrics.time(ForecastMetrics.Stage.NWS_FORECAST, () -> this.scheduler.call(this.host,
+            () -> this.guard.call(() -> this.requestForecast(forecastUrl, previous))));
+    }
+
+    /**
+     * Makes the forecast request, conditional if a previous result is
+     * provided.
+     * @param forecastUrl is a String with the forecast URL.
+     * @param previous is the previous NwsForecast or null.
+     * @return A NwsForecast object with the forecast results.
+     */
+    private NwsForecast requestForecast(String forecastUrl, NwsForecast previous) {
+        ResponseEntity<String> response = this.client.get()
             .uri(forecastUrl)
+            .headers(headers -> {
+                if (previous != null && previous.getEtag() != null) {
+                    headers.set(HttpHeaders.IF_NONE_MATCH, previous.getEtag());
+                }
+                if (previous != null && previous.getLastModified() != null) {
+                    headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.getLastModified());
+                }
+            })
             .retrieve()
-            .body(String.class);
-        return json;
+            .toEntity(String.class);
+
+        HttpHeaders headers = response.getHeaders();
+        boolean notModified = response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value();
+        String etag = headers.getETag();
+        String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (notModified && previous != null) {
+            // A 304 may leave out validators that haven't changed.
+            etag = etag != null ? etag : previous.getEtag();
+            lastModified = lastModified != null ? lastModified : previous.getLastModified();
+        }
+        return new NwsForecast(notModified ? null : response.getBody(), forecastUrl, etag, lastModified, headers.getExpires(), notModified);
     }
 }
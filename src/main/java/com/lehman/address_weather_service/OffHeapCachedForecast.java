@@ -0,0 +1,228 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Forecast cache entry that keeps the forecast and its compressed copy
+ * in a block of pooled direct memory, so that only the small index
+ * values of the entry are on the heap. Responses are written straight
+ * from the direct memory. The cache holds a reference to the block and
+ * releases it when the entry is removed, and readers retain it while
+ * they read, so an evicted entry that is still being written out stays
+ * valid and the block goes back to the pool once it is done.
+ */
+public class OffHeapCachedForecast extends CachedForecast {
+    // Blocks are cut from 1 MiB slabs shared by every off-heap entry.
+    private static final DirectBufferPool POOL = new DirectBufferPool(1 << 20);
+
+    protected final DirectBufferPool.Block block;
+    protected final int forecastLength;
+    protected final int deflatedLength;
+    protected final long crc;
+    protected final int length;
+
+    /**
+     * Constructor copies the forecast of the provided entry off the heap.
+     * @param entry is the CachedForecast to copy.
+     */
+    public OffHeapCachedForecast(CachedForecast entry) {
+        this(entry, entry.getForecastBytes(), entry.getCompressed());
+    }
+
+    private OffHeapCachedForecast(CachedForecast entry, byte[] forecast, CompressedEnvelope compressed) {
+        this(POOL.allocate(forecast, compressed == null ? null : compressed.getDeflated()), forecast.length,
+            compressed == null ? -1 : compressed.getDeflated().length, compressed == null ? 0 : compressed.getCrc(),
+            compressed == null ? 0 : compressed.getLength(), entry.getEtag(), entry.getWrittenAt(), entry.getExpiresAt(),
+            entry.getStreet(), entry.getCity(), entry.getState(), entry.getZipcode(), entry.getUpstream());
+    }
+
+    /**
+     * Constructor sets the entry values with the forecast already in
+     * a block of direct memory, taking over a reference to the block.
+     * @param block is the DirectBufferPool.Block with the forecast
+     * followed by the deflate blocks of the compressed copy.
+     * @param forecastLength is an int with the length of the forecast.
+     * @param deflatedLength is an int with the length of the deflate
+     * blocks or -1 if there isn't a compressed copy.
+     * @param crc is a long with the CRC32 of the compressed copy.
+     * @param length is an int with the uncompressed length of the
+     * compressed copy.
+     * @param etag is a String with the ETag of the forecast.
+     * @param writtenAt is a long with the epoch millis the forecast was loaded.
+     * @param expiresAt is a long with the epoch millis the forecast expires.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @param upstream is a NwsForecast with the NWS validators or null.
+     */
+    private OffHeapCachedForecast(DirectBufferPool.Block block, int forecastLength, int deflatedLength, long crc, int length,
+                                  String etag, long writtenAt, long expiresAt, String street, String city, String state,
+                                  String zipcode, NwsForecast upstream) {
+        super(null, null, etag, writtenAt, expiresAt, street, city, state, zipcode, upstream);
+        this.block = block;
+        this.forecastLength = forecastLength;
+        this.deflatedLength = deflatedLength;
+        this.crc = crc;
+        this.length = length;
+    }
+
+    /**
+     * Gets the direct memory taken by the pool the entries are kept in.
+     * @return A long with the number of bytes.
+     */
+    public static long getPoolReservedBytes() {
+        return POOL.getReservedBytes();
+    }
+
+    /**
+     * Gets a heap copy of the UTF-8 encoded forecast JSON.
+     * @return A byte array with the forecast JSON.
+     * @throws ReleasedForecastException if the entry was released.
+     */
+    @Override
+    public byte[] getForecastBytes() {
+        return this.copy(0, this.forecastLength);
+    }
+
+    /**
+     * Gets a heap copy of the pre-compressed forecast response.
+     * @return A CompressedEnvelope or null if there isn't one.
+     * @throws ReleasedForecastException if the entry was released.
+     */
+    @Override
+    public CompressedEnvelope getCompressed() {
+        if (this.deflatedLength < 0) {
+            return null;
+        }
+        return new CompressedEnvelope(this.copy(this.forecastLength, this.deflatedLength), this.crc, this.length);
+    }
+
+    @Override
+    public boolean retain() {
+        return this.block.retain();
+    }
+
+    @Override
+    public void release() {
+        this.block.release();
+    }
+
+    @Override
+    public int getForecastLength() {
+        return this.forecastLength;
+    }
+
+    @Override
+    public void writeForecast(OutputStream out) throws IOException {
+        ForecastResponseWriter.write(out, this.block.slice(0, this.forecastLength));
+    }
+
+    @Override
+    public boolean hasCompressed() {
+        return this.deflatedLength >= 0;
+    }
+
+    @Override
+    public int getDeflatedLength() {
+        return this.deflatedLength;
+    }
+
+    @Override
+    public long getCompressedCrc() {
+        return this.crc;
+    }
+
+    @Override
+    public int getCompressedLength() {
+        return this.length;
+    }
+
+    @Override
+    public void writeDeflated(OutputStream out) throws IOException {
+        ForecastResponseWriter.write(out, this.block.slice(this.forecastLength, this.deflatedLength));
+    }
+
+    /**
+     * Creates a copy of this entry with the pre-compressed copy of the
+     * forecast response, also kept off the heap.
+     * @return A new OffHeapCachedForecast with the compressed copy.
+     */
+    @Override
+    public CachedForecast withCompressed() {
+        return super.withCompressed().offHeap();
+    }
+
+    /**
+     * Creates a copy of this entry that was revalidated at the provided
+     * time, sharing the direct memory of this entry.
+     * @param writtenAt is a long with the epoch millis the forecast was revalidated.
+     * @param expiresAt is a long with the epoch millis the forecast now expires.
+     * @param upstream is a NwsForecast with the current NWS validators.
+     * @return A new OffHeapCachedForecast with the new times.
+     * @throws ReleasedForecastException if the entry was released.
+     */
+    @Override
+    public CachedForecast revalidated(long writtenAt, long expiresAt, NwsForecast upstream) {
+        if (!this.block.retain()) {
+            throw new ReleasedForecastException("The forecast for " + this.zipcode + " was released.");
+        }
+        return new OffHeapCachedForecast(this.block, this.forecastLength, this.deflatedLength, this.crc, this.length,
+            this.etag, writtenAt, expiresAt, this.street, this.city, this.state, this.zipcode, upstream);
+    }
+
+    @Override
+    public CachedForecast offHeap() {
+        return this;
+    }
+
+    @Override
+    public boolean isOffHeap() {
+        return true;
+    }
+
+    @Override
+    public int getPayloadBytes() {
+        return this.block.getCapacity();
+    }
+
+    /**
+     * Copies part of the block to the heap.
+     * @param offset is an int with the offset of the part.
+     * @param length is an int with the length of the part.
+     * @return A byte array with the part.
+     */
+    private byte[] copy(int offset, int length) {
+        if (!this.block.retain()) {
+            throw new ReleasedForecastException("The forecast for " + this.zipcode + " was released.");
+        }
+        try {
+            byte[] bytes = new byte[length];
+            this.block.slice(offset, length).get(bytes);
+            return bytes;
+        } finally {
+            this.block.release();
+        }
+    }
+}
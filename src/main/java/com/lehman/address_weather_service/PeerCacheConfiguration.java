@@ -0,0 +1,75 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Configures the second level forecast cache tier. When the peer
+ * cache is enabled forecasts are shared across the configured peers,
+ * otherwise every node loads its own.
+ */
+@Configuration
+public class PeerCacheConfiguration {
+    /**
+     * Creates the forecast cache tier bean.
+     * @param enabled is a boolean with true to enable the peer cache.
+     * @param self is a String with the base URL of this node.
+     * @param peers is a String with the comma separated base URLs of every node.
+     * @param timeoutMillis is a long with the peer request timeout in millis.
+     * @param virtualNodes is an int with the number of ring points per node.
+     * @param failureBackoffMillis is a long with the millis to skip a failed peer.
+     * @param secret is a String with the secret shared by every node.
+     * @return A ForecastCacheTier object.
+     */
+    @Bean
+    public ForecastCacheTier forecastCacheTier(
+        @Value("${weatherservice.peerCacheEnabled}") boolean enabled,
+        @Value("${weatherservice.peerCacheSelf}") String self,
+        @Value("${weatherservice.peerCachePeers}") String peers,
+        @Value("${weatherservice.peerCacheTimeoutMillis}") long timeoutMillis,
+        @Value("${weatherservice.peerCacheVirtualNodes}") int virtualNodes,
+        @Value("${weatherservice.peerCacheFailureBackoffMillis}") long failureBackoffMillis,
+        @Value("${weatherservice.peerCacheSecret}") String secret
+    ) {
+        if (!enabled) {
+            return ForecastCacheTier.NONE;
+        }
+
+        // Peers are plain HTTP on the local network, so skip the HTTP/2
+        // upgrade the upstream client would attempt.
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(timeoutMillis))
+            .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMillis));
+        RestClient client = RestClient.builder().requestFactory(requestFactory).build();
+        return new PeerForecastCache(client, self, Arrays.asList(peers.split(",")), virtualNodes, failureBackoffMillis, secret);
+    }
+}
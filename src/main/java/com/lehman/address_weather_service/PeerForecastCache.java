@@ -0,0 +1,177 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Peer to peer forecast cache tier. Each grid cell has an owner node
+ * picked by consistent hashing over the peer list, and other nodes get
+ * the forecast from the owner over HTTP instead of loading it from the
+ * NWS themselves, so the cluster loads each forecast once and its
+ * cache capacity grows with the number of nodes. If the owner fails
+ * it is skipped for a short back off and forecasts are loaded locally.
+ * Forecasts from the owner aren't kept in the local cache. Peer
+ * requests carry a shared secret so that only the other nodes can use
+ * the peer endpoint. The secret is sent as is, so peers reached over
+ * plain HTTP must be on a private network.
+ */
+public class PeerForecastCache implements ForecastCacheTier {
+    private static Logger logger = LogManager.getLogger(PeerForecastCache.class);
+
+    public static final String PEER_PATH = "/internal/cache/forecast";
+    public static final String SECRET_HEADER = "X-Peer-Secret";
+
+    protected final String self;
+    protected final ConsistentHashRing ring;
+    protected final long failureBackoffMillis;
+
+    private final RestClient client;
+    private final byte[] secret;
+
+    // Peers that recently failed, with the time to try them again.
+    private final ConcurrentHashMap<String, Long> downUntil = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor sets up the peer ring.
+     * @param client is the RestClient to make peer requests with.
+     * @param self is a String with the base URL of this node.
+     * @param peers is a List of the base URLs of every node, which this
+     * node is added to if it isn't in it.
+     * @param virtualNodes is an int with the number of ring points per node.
+     * @param failureBackoffMillis is a long with the millis to skip a
+     * peer after it fails.
+     * @param secret is a String with the secret shared by every node.
+     */
+    public PeerForecastCache(RestClient client, String self, List<String> peers, int virtualNodes, long failureBackoffMillis,
+                             String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("A peer cache secret is required.");
+        }
+        this.client = client;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.self = normalizeUrl(self);
+        List<String> nodes = new ArrayList<>();
+        for (String peer : peers) {
+            String node = normalizeUrl(peer);
+            if (!node.isEmpty() && !nodes.contains(node)) {
+                nodes.add(node);
+            }
+        }
+        if (!nodes.contains(this.self)) {
+            nodes.add(this.self);
+        }
+        this.ring = new ConsistentHashRing(nodes, virtualNodes);
+        this.failureBackoffMillis = failureBackoffMillis;
+        logger.info("Initializing the peer forecast cache. (self=" + this.self + " peers=" + nodes + ")");
+        List<String> plain = nodes.stream().filter(node -> !node.startsWith("https://")).toList();
+        if (!plain.isEmpty()) {
+            logger.warn("The peer secret is sent in clear text to " + plain + ", they must only be reachable on a private network.");
+        }
+    }
+
+    /**
+     * Gets the forecast from the owner of the grid cell.
+     * @param point is the GridPoint of the forecast.
+     * @param address is the Address the forecast was requested for.
+     * @return A CachedForecast or null if this node is the owner or the
+     * owner failed.
+     */
+    @Override
+    public CachedForecast get(GridPoint point, Address address) {
+        String owner = this.getOwner(point.getKey());
+        if (owner.equals(this.self)) {
+            return null;
+        }
+        Long retryAt = this.downUntil.get(owner);
+        if (retryAt != null) {
+            if (System.currentTimeMillis() < retryAt) {
+                return null;
+            }
+            this.downUntil.remove(owner, retryAt);
+        }
+
+        try {
+            byte[] body = this.client.get()
+                .uri(owner + PEER_PATH + "?key={key}&forecastUrl={forecastUrl}&street={street}&city={city}&state={state}&zipcode={zipcode}",
+                    point.getKey(), point.getForecastUrl(), address.getStreet(), address.getCity(), address.getState(), address.getZipcode())
+                .header(SECRET_HEADER, new String(this.secret, StandardCharsets.UTF_8))
+                .retrieve()
+                .body(byte[].class);
+            if (body == null || body.length == 0) {
+                return null;
+            }
+            logger.debug("Got grid cell {} from peer {}.", point.getKey(), owner);
+            return ForecastCodec.decode(body).getValue();
+        } catch (HttpClientErrorException.NotFound e) {
+            return null;
+        } catch (RestClientException | IOException e) {
+            logger.warn("Peer {} failed, loading locally for {} millis: {}", owner, this.failureBackoffMillis, e.getMessage());
+            this.downUntil.put(owner, System.currentTimeMillis() + this.failureBackoffMillis);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the owner node of the key.
+     * @param key is a String with the grid cell cache key.
+     * @return A String with the base URL of the owner.
+     */
+    public String getOwner(String key) {
+        return this.ring.getOwner(key);
+    }
+
+    /**
+     * Checks if this node owns the key.
+     * @param key is a String with the grid cell cache key.
+     * @return A boolean with true if this node is the owner.
+     */
+    public boolean isOwner(String key) {
+        return this.getOwner(key).equals(this.self);
+    }
+
+    /**
+     * Checks the secret a peer request was made with.
+     * @param secret is a String with the secret header value or null.
+     * @return A boolean with true if it is the shared secret.
+     */
+    public boolean isPeer(String secret) {
+        return secret != null && MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String normalizeUrl(String url) {
+        String trimmed = url.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * PeerForecastController serves the peer cache endpoint, which the other
+ * nodes of the PeerForecastCache call to get the forecasts of the grid
+ * cells this node owns.
+ */
+@RestController
+public class PeerForecastController {
+    protected final ForecastService forecastService;
+
+    /**
+     * Constructor takes the forecast service the owned cells are loaded by.
+     * @param forecastService is the ForecastService to get forecasts from.
+     */
+    public PeerForecastController(ForecastService forecastService) {
+        this.forecastService = forecastService;
+    }
+
+    /**
+     * The peer cache endpoint returns the encoded forecast for a grid
+     * cell this node owns to the other nodes, loading it if needed. It
+     * never asks another peer, so nodes with different peer lists can't
+     * send a request around in a loop. Only requests with the shared
+     * peer secret are answered, and the cache key has to be the one of
+     * the forecast URL so a forecast can't be cached under another cell.
+     * @param secret is a String with the peer secret header or null.
+     * @param key is a String with the grid cell cache key.
+     * @param forecastUrl is a String with the forecast URL of the cell.
+     * @param street is a String with the street address line 1.
+     * @param city is a String with the city name.
+     * @param state is a String with the 2 letter state abbreviation.
+     * @param zipcode is a String with the zipcode.
+     * @throws IOException
+     */
+    @GetMapping(PeerForecastCache.PEER_PATH)
+    public void peerForecast(
+        HttpServletResponse response,
+        @RequestHeader(value = PeerForecastCache.SECRET_HEADER, required = false) String secret,
+        @RequestParam(value = "key") String key,
+        @RequestParam(value = "forecastUrl") String forecastUrl,
+        @RequestParam(value = "street") String street,
+        @RequestParam(value = "city") String city,
+        @RequestParam(value = "state") String state,
+        @RequestParam(value = "zipcode") String zipcode
+    ) throws IOException {
+        // Only load NWS forecast URLs of owned cells for the configured peers.
+        if (!(this.forecastService.cacheTier instanceof PeerForecastCache peers) || !peers.isPeer(secret)
+                || !this.forecastService.isNwsUrl(forecastUrl) || !peers.isOwner(key)) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        GridPoint point = GridPoint.fromForecastUrl(forecastUrl);
+        if (!point.getKey().equals(key)) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+
+        ForecastResult result = this.forecastService.getForecast(point, street, city, state, zipcode, false);
+        if (result == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        byte[] body;
+        try {
+            body = ForecastCodec.encode(key, result.getEntry());
+        } catch (ReleasedForecastException e) {
+            // Evicted while encoding, so the peer loads it itself.
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        response.setContentType("application/octet-stream");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file store that backs the in-memory forecast cache so
+ * it can be rehydrated after a restart. Every write appends a record
+ * with the forecast and its timestamps; the latest record for a key
+ * wins when the file is read back. Writes run on a single background
+ * thread, and once the file grows past the compaction size it is
+ * rewritten from a snapshot of the live cache entries. The write queue
+ * is bounded, so when the disk can't keep up new writes are dropped
+ * and counted instead of holding on to their entries.
+ */
+public class PersistentForecastStore {
+    private static Logger logger = LogManager.getLogger(PersistentForecastStore.class);
+
+    // Record header, used to find the start of a valid record.
+    private static final int RECORD_MAGIC = 0x46435354;
+
+    // Default number of writes that can wait for the writer thread.
+    public static final int DEFAULT_MAX_QUEUED = 10_000;
+
+    protected final Path file;
+    protected final long compactBytes;
+    protected final Supplier<Map<String, CachedForecast>> snapshot;
+
+    private final ThreadPoolExecutor writer;
+    private final LongAdder dropped = new LongAdder();
+
+    private DataOutputStream out;
+    private long size;
+    private long compactThreshold;
+
+    /**
+     * Constructor sets up the store.
+     * @param file is the Path of the store file.
+     * @param compactBytes is a long with the file size in bytes that
+     * triggers a compaction.
+     * @param snapshot is a Supplier of the live cache entries that is
+     * used to rewrite the file on compaction.
+     */
+    public PersistentForecastStore(Path file, long compactBytes, Supplier<Map<String, CachedForecast>> snapshot) {
+        this(file, compactBytes, snapshot, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Constructor sets up the store.
+     * @param file is the Path of the store file.
+     * @param compactBytes is a long with the file size in bytes that
+     * triggers a compaction.
+     * @param snapshot is a Supplier of the live cache entries that is
+     * used to rewrite the file on compaction.
+     * @param maxQueued is an int with the number of writes that can wait
+     * for the writer before new ones are dropped.
+     */
+    public PersistentForecastStore(Path file, long compactBytes, Supplier<Map<String, CachedForecast>> snapshot, int maxQueued) {
+        this.file = file;
+        this.compactBytes = compactBytes;
+        this.snapshot = snapshot;
+        this.compactThreshold = compactBytes;
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxQueued), r -> {
+            Thread thread = new Thread(r, "forecast-store-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the store file and returns the latest entry for each key.
+     * Reading stops at the first truncated or corrupt record, which
+     * is what a crash in the middle of an append leaves behind.
+     * @return A Map of key to CachedForecast.
+     * @throws IOException
+     */
+    public Map<String, CachedForecast> load() throws IOException {
+        Map<String, CachedForecast> entries = new HashMap<>();
+        if (!Files.exists(this.file)) {
+            return entries;
+        }
+
+        long remaining = Files.size(this.file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (magic != RECORD_MAGIC) {
+                    logger.warn("Corrupt record found in " + this.file + ", ignoring the rest of the file.");
+                    break;
+                }
+                try {
+                    int length = in.readInt();
+                    long checksum = in.readLong();
+                    remaining -= 16;
+                    // A torn or corrupt length can't be trusted for
+                    // reading, let alone for sizing the buffer.
+                    if (length < 0 || length > remaining) {
+                        logger.warn("Truncated record found in " + this.file + ", ignoring the rest of the file.");
+                        break;
+                    }
+                    remaining -= length;
+                    byte[] record = in.readNBytes(length);
+                    if (record.length != length || checksum(record) != checksum) {
+                        logger.warn("Truncated record found in " + this.file + ", ignoring the rest of the file.");
+                        break;
+                    }
+                    readRecord(record, entries);
+                } catch (EOFException e) {
+                    logger.warn("Truncated record found in " + this.file + ", ignoring the rest of the file.");
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Opens the store file for appending. Must be called after load.
+     * @throws IOException
+     */
+    public void open() throws IOException {
+        Path parent = this.file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = openAppend(this.file);
+        this.size = Files.size(this.file);
+    }
+
+    /**
+     * Queues an entry to be appended to the store. This never blocks
+     * the calling thread on file IO. The entry is retained until it is
+     * written, and skipped if it was already released. If the queue is
+     * full or the store is closed the write is dropped.
+     * @param key is a String with the cache key.
+     * @param entry is the CachedForecast to store.
+     */
+    public void append(String key, CachedForecast entry) {
+        if (!entry.retain()) {
+            return;
+        }
+        try {
+            this.writer.execute(() -> this.write(key, entry));
+        } catch (RejectedExecutionException e) {
+            entry.release();
+            this.dropped.increment();
+            logger.debug("Dropped forecast store write for " + key + ", the write queue is full or closed.");
+        }
+    }
+
+    /**
+     * Gets the number of writes dropped because the queue was full or
+     * the store was closed.
+     * @return A long with the number of dropped writes.
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Appends a retained entry and releases it. Runs on the writer thread.
+     * @param key is a String with the cache key.
+     * @param entry is the CachedForecast to store.
+     */
+    private void write(String key, CachedForecast entry) {
+        try {
+            if (this.out == null) {
+                this.out = openAppend(this.file);
+            }
+            this.size += this.writeRecord(this.out, key, entry);
+            this.out.flush();
+            if (this.size >= this.compactThreshold) {
+                this.compact();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to append to forecast store: " + e.getMessage());
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Rewrites the store file with only the live cache entries. Runs
+     * on the writer thread. The current file is kept open for appends
+     * until the rewritten file has replaced it, so a failed compaction
+     * leaves the store appending to the old file.
+     * @throws IOException
+     */
+    protected void compact() throws IOException {
+        long before = this.size;
+        Path tmp = this.file.resolveSibling(this.file.getFileName() + ".compact");
+        long compactedSize = 0;
+        boolean moved = false;
+        try {
+            try (DataOutputStream compacted = openWrite(tmp)) {
+                for (Map.Entry<String, CachedForecast> entry : this.snapshot.get().entrySet()) {
+                    // Entries released since the snapshot have left the cache.
+                    if (!entry.getValue().retain()) {
+                        continue;
+                    }
+                    try {
+                        compactedSize += this.writeRecord(compacted, entry.getKey(), entry.getValue());
+                    } finally {
+                        entry.getValue().release();
+                    }
+                }
+            }
+            this.out.close();
+            this.out = null;
+            Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+            this.size = compactedSize;
+        } finally {
+            // If the live entries alone are near the compaction size, or
+            // compacting failed, wait for the file to double before
+            // compacting again.
+            this.compactThreshold = Math.max(this.compactBytes, this.size * 2);
+            if (this.out == null) {
+                this.out = openAppend(this.file);
+            }
+            if (!moved) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        logger.info("Compacted forecast store from " + before + " to " + this.size + " bytes.");
+    }
+
+    /**
+     * Waits for queued writes to finish and closes the file.
+     */
+    public void close() {
+        this.writer.shutdown();
+        try {
+            if (!this.writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for forecast store writes to finish.");
+            }
+            if (this.out != null) {
+                this.out.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Failed to close forecast store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a single framed record.
+     * @param out is the DataOutputStream to write to.
+     * @param key is a String with the cache key.
+     * @param entry is the CachedForecast to write.
+     * @return A long with the number of bytes written.
+     * @throws IOException
+     */
+    private long writeRecord(DataOutputStream out, String key, CachedForecast entry) throws IOException {
+        byte[] bytes = ForecastCodec.encode(key, entry);
+        out.writeInt(RECORD_MAGIC);
+        out.writeInt(bytes.length);
+        out.writeLong(checksum(bytes));
+        out.write(bytes);
+        return 16 + bytes.length;
+    }
+
+    /**
+     * Reads the fields of a record into the entries map.
+     * @param bytes is a byte array with the record.
+     * @param entries is the Map to put the entry in.
+     * @throws IOException
+     */
+    private static void readRecord(byte[] bytes, Map<String, CachedForecast> entries) throws IOException {
+        Map.Entry<String, CachedForecast> entry = ForecastCodec.decode(bytes);
+        entries.put(entry.getKey(), entry.getValue());
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static DataOutputStream openAppend(Path path) throws IOException {
+        OutputStream os = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new DataOutputStream(new BufferedOutputStream(os));
+    }
+
+    private static DataOutputStream openWrite(Path path) throws IOException {
+        OutputStream os = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new DataOutputStream(new BufferedOutputStream(os));
+    }
+}
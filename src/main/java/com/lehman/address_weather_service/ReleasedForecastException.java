@@ -0,0 +1,37 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+/**
+ * Thrown when an off-heap forecast is read after the cache released
+ * its direct memory, which happens when the entry was evicted or
+ * replaced between the lookup and the read. Looking the forecast up
+ * again gets the current entry.
+ */
+public class ReleasedForecastException extends IllegalStateException {
+    /**
+     * Constructor sets the message.
+     * @param message is a String with the forecast that was released.
+     */
+    public ReleasedForecastException(String message) {
+        super(message);
+    }
+}
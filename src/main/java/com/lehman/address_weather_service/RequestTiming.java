@@ -0,0 +1,187 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+/**
+ * Time spent in each stage of the forecast pipeline for a single
+ * request, reported to clients in the Server-Timing header and in the
+ * access log. The timing of the request being handled is kept for its
+ * thread, so stages timed by ForecastMetrics on that thread add to it
+ * without it being passed down. Work done for the request on other
+ * threads, such as a load it joined, only shows up in the total.
+ * <p>
+ * A request with a deadline is answered either by its own thread,
+ * which claims the response with respond(), or at the deadline, which
+ * claims it with expire(). Once the request expires, stages its thread
+ * still records are dropped, so the timing can be reported from the
+ * thread that answers the deadline.
+ */
+public final class RequestTiming {
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+    private static final ForecastMetrics.Stage[] STAGES = ForecastMetrics.Stage.values();
+
+    private final long start = System.nanoTime();
+    private final long[] nanos = new long[STAGES.length];
+    private final boolean[] timed = new boolean[STAGES.length];
+    private boolean responding;
+    private boolean expired;
+
+    private RequestTiming() { }
+
+    /**
+     * Starts timing a request on this thread.
+     * @return A RequestTiming object, which must be finished.
+     */
+    public static RequestTiming start() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * Adds the latency of a stage to the request being handled on this
+     * thread, if any.
+     * @param stage is the Stage that ran.
+     * @param nanos is a long with the stage duration in nanoseconds.
+     */
+    public static void record(ForecastMetrics.Stage stage, long nanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.add(stage, nanos);
+        }
+    }
+
+    /**
+     * Adds the latency of a stage unless the request has expired.
+     * @param stage is the Stage that ran.
+     * @param nanos is a long with the stage duration in nanoseconds.
+     */
+    private synchronized void add(ForecastMetrics.Stage stage, long nanos) {
+        if (!this.expired) {
+            this.nanos[stage.ordinal()] += nanos;
+            this.timed[stage.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Claims the response for the request's own thread.
+     * @return A boolean with true unless the request has expired.
+     */
+    public synchronized boolean respond() {
+        this.responding = !this.expired;
+        return this.responding;
+    }
+
+    /**
+     * Expires the request at its deadline, which stops recording its
+     * stages.
+     * @return A boolean with true unless the request's own thread has
+     * already claimed the response.
+     */
+    public synchronized boolean expire() {
+        this.expired = !this.responding;
+        return this.expired;
+    }
+
+    /**
+     * Continues timing the request on this thread, for work done for
+     * the request away from the thread that started it. Must be
+     * finished on this thread.
+     */
+    public void resume() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Stops timing the request on this thread.
+     */
+    public void finish() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Gets the time spent in a stage.
+     * @param stage is the Stage.
+     * @return A long with the nanoseconds spent in the stage.
+     */
+    public synchronized long getNanos(ForecastMetrics.Stage stage) {
+        return this.nanos[stage.ordinal()];
+    }
+
+    /**
+     * Gets the time since the request was started.
+     * @return A long with the elapsed nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.start;
+    }
+
+    /**
+     * Builds the Server-Timing header value with the stages the request
+     * went through and the total time so far, in milliseconds.
+     * @return A String such as "cache;dur=0.01, geocode;dur=85.20, total;dur=90.41".
+     */
+    public String toServerTiming() {
+        return this.format(";dur=", ", ");
+    }
+
+    /**
+     * Builds the stage times of the access log record, in milliseconds.
+     * @return A String such as "cacheMs=0.01 geocodeMs=85.20 totalMs=90.41".
+     */
+    public String toLogFields() {
+        return this.format("Ms=", " ");
+    }
+
+    /**
+     * Lists the stages the request went through and the total time so
+     * far, in milliseconds.
+     * @param unit is a String between each name and its time.
+     * @param separator is a String between the stages.
+     * @return A String with the stage times.
+     */
+    private synchronized String format(String unit, String separator) {
+        StringBuilder sb = new StringBuilder(96);
+        for (ForecastMetrics.Stage stage : STAGES) {
+            if (this.timed[stage.ordinal()] && stage.getServerTiming() != null) {
+                appendMillis(sb.append(stage.getServerTiming()).append(unit), this.nanos[stage.ordinal()]).append(separator);
+            }
+        }
+        return appendMillis(sb.append("total").append(unit), this.getElapsedNanos()).toString();
+    }
+
+    /**
+     * Appends nanoseconds as milliseconds with 2 decimal places.
+     */
+    private static StringBuilder appendMillis(StringBuilder sb, long nanos) {
+        long hundredths = (nanos + 5_000) / 10_000;
+        sb.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SingleFlight coalesces concurrent loads for the same key so that
+ * only one caller (the leader) runs the loader while every other
+ * caller for that key waits for and shares the leader's result. If
+ * the loader fails, the same exception is thrown to every waiter, and
+ * a waiter that has waited longer than the wait limit gives up with an
+ * UpstreamUnavailableException while the load carries on.
+ * A caller that joins a load raises the load's upstream priority to
+ * its own, so an interactive request never waits behind a background
+ * load it has joined.
+ * @param <K> is the key type.
+ * @param <V> is the loaded value type.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    protected final long waitMillis;
+
+    /**
+     * Constructor with waiters that wait for as long as the load takes.
+     */
+    public SingleFlight() {
+        this(0);
+    }
+
+    /**
+     * Constructor sets the wait limit.
+     * @param waitMillis is a long with the max millis a waiter waits for
+     * the leader's load, or 0 to wait for as long as it takes.
+     */
+    public SingleFlight(long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Loader function that produces the value for a key.
+     * @param <V> is the loaded value type.
+     * @param <E> is the exception type the loader may throw.
+     */
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load() throws E;
+    }
+
+    /**
+     * An in-flight load with its result and upstream priority.
+     * @param <V> is the loaded value type.
+     */
+    private static final class Flight<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final UpstreamScheduler.LoadPriority priority;
+
+        private Flight(UpstreamScheduler.LoadPriority priority) {
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Runs the provided loader for the key unless a load for the same
+     * key is already in flight, in which case it waits for that load
+     * and returns its result instead.
+     * @param key is the key to load.
+     * @param loader is the Loader to run if this caller is the leader.
+     * @return The loaded value, which may be null.
+     * @throws Exception if the loader (either ours or the leader's) failed.
+     */
+    public V execute(K key, Loader<V, ? extends Exception> loader) throws Exception {
+        return this.execute(key, Exception.class, loader);
+    }
+
+    /**
+     * Runs the provided loader for the key unless a load for the same
+     * key is already in flight, in which case it waits for that load
+     * and returns its result instead. A checked exception of the
+     * leader's load that isn't of the provided type is thrown to the
+     * waiters wrapped in a CompletionException.
+     * @param key is the key to load.
+     * @param exceptionType is the Class of the checked exception the
+     * loaders of the key throw.
+     * @param loader is the Loader to run if this caller is the leader.
+     * @return The loaded value, which may be null.
+     * @throws E if the loader (either ours or the leader's) failed.
+     * @throws UpstreamUnavailableException if the leader's load took
+     * longer than the wait limit.
+     */
+    public <E extends Exception> V execute(K key, Class<E> exceptionType, Loader<V, ? extends E> loader) throws E {
+        Flight<V> flight = new Flight<>(UpstreamScheduler.currentPriority());
+        Flight<V> existing = this.join(key, flight);
+        if (existing != null) {
+            return this.await(key, existing.future, exceptionType);
+        }
+        return this.run(key, flight, loader);
+    }
+
+    /**
+     * Starts the provided loader for the key on the executor unless a
+     * load for the same key is already in flight, in which case it
+     * returns that load's result instead. The load is in flight as soon
+     * as this returns, so callers can find and raise it before it runs.
+     * @param key is the key to load.
+     * @param loader is the Loader to run if this caller is the leader.
+     * @param executor is the Executor to run the loader on.
+     * @return A CompletableFuture with the loaded value.
+     */
+    public CompletableFuture<V> submit(K key, Loader<V, ? extends Exception> loader, Executor executor) {
+        Flight<V> flight = new Flight<>(UpstreamScheduler.currentPriority());
+        Flight<V> existing = this.join(key, flight);
+        if (existing != null) {
+            return existing.future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    UpstreamScheduler.withPriority(flight.priority, () -> this.run(key, flight, loader));
+                } catch (Exception e) {
+                    // Already completed the flight's future.
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.inFlight.remove(key, flight);
+            flight.future.completeExceptionally(e);
+        }
+        return flight.future;
+    }
+
+    /**
+     * Raises the upstream priority of the key's in-flight load, if
+     * any, to the priority of the current thread.
+     * @param key is the key of the load.
+     */
+    public void raise(K key) {
+        Flight<V> flight = this.inFlight.get(key);
+        if (flight != null) {
+            flight.priority.raise(UpstreamScheduler.currentPriority().get());
+        }
+    }
+
+    /**
+     * Registers the flight for the key, or joins and raises the one
+     * already in flight.
+     * @param key is the key to load.
+     * @param flight is the Flight to register.
+     * @return The Flight already in flight, or null if ours was registered.
+     */
+    private Flight<V> join(K key, Flight<V> flight) {
+        Flight<V> existing = this.inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            this.coalescedCount.increment();
+            existing.priority.raise(flight.priority.get());
+        }
+        return existing;
+    }
+
+    /**
+     * Runs the leader's loader and completes the flight with its result.
+     * @param key is the key to load.
+     * @param flight is the leader's Flight.
+     * @param loader is the Loader to run.
+     * @return The loaded value, which may be null.
+     * @throws E if the loader failed.
+     */
+    private <E extends Exception> V run(K key, Flight<V> flight, Loader<V, E> loader) throws E {
+        this.loadCount.increment();
+        try {
+            V value = loader.load();
+            flight.future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            flight.future.completeExceptionally(t);
+            throw t;
+        } finally {
+            this.inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Waits up to the wait limit for the leader's future and rethrows
+     * its failure as is if it is unchecked or of the provided type.
+     * @param key is the key of the load.
+     * @param future is the leader's CompletableFuture.
+     * @param exceptionType is the Class of the checked exception to
+     * rethrow as is.
+     * @return The leader's value.
+     * @throws E with the leader's exception.
+     * @throws UpstreamUnavailableException if the wait limit passed.
+     */
+    private <E extends Exception> V await(K key, CompletableFuture<V> future, Class<E> exceptionType) throws E {
+        try {
+            return this.waitMillis > 0 ? future.get(this.waitMillis, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            throw new UpstreamUnavailableException("Timed out waiting for the load of " + key + ".",
+                TimeUnit.MILLISECONDS.toSeconds(this.waitMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamUnavailableException("Interrupted waiting for the load of " + key + ".");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            } else if (cause instanceof Error err) {
+                throw err;
+            } else if (exceptionType.isInstance(cause)) {
+                throw exceptionType.cast(cause);
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Gets the number of loads that actually ran a loader.
+     * @return A long with the number of leader loads.
+     */
+    public long getLoadCount() {
+        return this.loadCount.sum();
+    }
+
+    /**
+     * Gets the number of callers that were coalesced onto another
+     * caller's in-flight load.
+     * @return A long with the number of coalesced callers.
+     */
+    public long getCoalescedCount() {
+        return this.coalescedCount.sum();
+    }
+
+    /**
+     * Gets the number of keys that currently have a load in flight.
+     * @return An int with the number of in-flight keys.
+     */
+    public int getInFlightCount() {
+        return this.inFlight.size();
+    }
+}
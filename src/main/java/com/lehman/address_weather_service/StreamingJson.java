@@ -0,0 +1,55 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Helpers for pulling single values out of upstream responses with
+ * the Jackson streaming parser without building a JSON tree.
+ */
+public final class StreamingJson {
+    private StreamingJson() { }
+
+    /**
+     * Advances the parser, which must be positioned on a START_OBJECT,
+     * to the value of the named field of that object, skipping over
+     * every other field's value.
+     * @param parser is the JsonParser positioned on a START_OBJECT.
+     * @param name is a String with the field name.
+     * @return A boolean with true if the parser is now positioned on
+     * the field's value and false if the object has no such field.
+     * @throws IOException
+     */
+    public static boolean findField(JsonParser parser, String name) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Configures the shared HTTP client used for all upstream requests
+ * and the Census Bureau and NWS client beans that use it. The JDK
+ * HttpClient keeps connections alive in its own pool and negotiates
+ * HTTP/2 where the upstream supports it, so connection setup and TLS
+ * handshakes are only paid once per upstream host. Both clients
+ * record their latency and failures to the shared forecast metrics,
+ * and each upstream gets its own circuit breaker, concurrency limit
+ * and hedging. Requests to both go through the shared scheduler that
+ * rate limits them per host.
+ */
+@Configuration
+public class UpstreamClientConfiguration {
+    private static Logger logger = LogManager.getLogger(UpstreamClientConfiguration.class);
+
+    static final String KEEP_ALIVE_FLAG = "jdk.httpclient.keepalive.timeout";
+    static final String POOL_SIZE_FLAG = "jdk.httpclient.connectionPoolSize";
+
+    @Value("${weatherservice.upstreamCircuitBreakerEnabled}")
+    protected boolean circuitBreakerEnabled;
+
+    @Value("${weatherservice.upstreamCircuitWindowSize}")
+    protected int circuitWindowSize;
+
+    @Value("${weatherservice.upstreamCircuitMinimumCalls}")
+    protected int circuitMinimumCalls;
+
+    @Value("${weatherservice.upstreamCircuitFailureRate}")
+    protected double circuitFailureRate;
+
+    @Value("${weatherservice.upstreamCircuitOpenMillis}")
+    protected long circuitOpenMillis;
+
+    @Value("${weatherservice.upstreamConcurrencyLimitEnabled}")
+    protected boolean concurrencyLimitEnabled;
+
+    @Value("${weatherservice.upstreamConcurrencyInitialLimit}")
+    protected int concurrencyInitialLimit;
+
+    @Value("${weatherservice.upstreamConcurrencyMinLimit}")
+    protected int concurrencyMinLimit;
+
+    @Value("${weatherservice.upstreamConcurrencyMaxLimit}")
+    protected int concurrencyMaxLimit;
+
+    @Value("${weatherservice.upstreamConcurrencyLatencyMillis}")
+    protected long concurrencyLatencyMillis;
+
+    @Value("${weatherservice.upstreamConcurrencyBackoffRatio}")
+    protected double concurrencyBackoffRatio;
+
+    @Value("${weatherservice.upstreamHedgeEnabled}")
+    protected boolean hedgeEnabled;
+
+    @Value("${weatherservice.upstreamHedgeMinDelayMillis}")
+    protected long hedgeMinDelayMillis;
+
+    /**
+     * Creates the shared JDK HttpClient. The JDK connection pool reads
+     * its idle timeout and size from the jdk.httpclient.keepalive.timeout
+     * and jdk.httpclient.connectionPoolSize JVM flags, which apply to
+     * every client in the JVM, so they are passed on the command line.
+     * The configured values are checked against the flags at startup.
+     * @param connectTimeoutMillis is a long with the connect timeout in millis.
+     * @param keepAliveSeconds is a long with the seconds an idle connection is kept open.
+     * @param connectionPoolSize is an int with the maximum pooled connections per host, 0 for no limit.
+     * @param httpVersion is a String with HTTP_2 or HTTP_1_1.
+     * @return A HttpClient object.
+     */
+    @Bean
+    public HttpClient upstreamHttpClient(
+        @Value("${weatherservice.httpConnectTimeoutMillis}") long connectTimeoutMillis,
+        @Value("${weatherservice.httpKeepAliveSeconds}") long keepAliveSeconds,
+        @Value("${weatherservice.httpConnectionPoolSize}") int connectionPoolSize,
+        @Value("${weatherservice.httpVersion}") String httpVersion
+    ) {
+        checkJvmFlag(KEEP_ALIVE_FLAG, keepAliveSeconds);
+        checkJvmFlag(POOL_SIZE_FLAG, connectionPoolSize);
+        logger.info("Initializing the upstream HTTP client. (version=" + httpVersion + " connectTimeoutMillis="
+            + connectTimeoutMillis + " keepAliveSeconds=" + keepAliveSeconds + " connectionPoolSize=" + connectionPoolSize + ")");
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.valueOf(httpVersion))
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Checks that a JDK HttpClient JVM flag has the configured value,
+     * and warns with the flag to pass if it doesn't.
+     * @param flag is a String with the system property name.
+     * @param expected is a long with the configured value.
+     * @return A boolean with true if the flag has the configured value.
+     */
+    static boolean checkJvmFlag(String flag, long expected) {
+        String actual = System.getProperty(flag);
+        if (actual != null && actual.trim().equals(String.valueOf(expected))) {
+            return true;
+        }
+        logger.warn("The JVM flag " + flag + " is " + (actual == null ? "not set" : "'" + actual + "'")
+            + " but " + expected + " is configured. Start the JVM with -D" + flag + "=" + expected + ".");
+        return false;
+    }
+
+    /**
+     * Creates the shared RestClient on top of the shared HttpClient.
+     * @param upstreamHttpClient is the shared HttpClient.
+     * @param readTimeoutMillis is a long with the read timeout in millis.
+     * @return A RestClient object.
+     */
+    @Bean
+    public RestClient upstreamRestClient(
+        HttpClient upstreamHttpClient,
+        @Value("${weatherservice.httpReadTimeoutMillis}") long readTimeoutMillis
+    ) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(upstreamHttpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMillis));
+        return RestClient.builder()
+            .requestFactory(requestFactory)
+            .requestInterceptor(new GzipRequestInterceptor())
+            .build();
+    }
+
+    /**
+     * Creates the forecast metrics on the Spring meter registry.
+     * @param meterRegistry is the MeterRegistry to register with.
+     * @return A ForecastMetrics object.
+     */
+    @Bean
+    public ForecastMetrics forecastMetrics(MeterRegistry meterRegistry) {
+        return new ForecastMetrics(meterRegistry);
+    }
+
+    /**
+     * Creates the scheduler that rate limits the requests to each
+     * upstream host.
+     * @param forecastMetrics is the ForecastMetrics to register with.
+     * @param geocodeUrl is a String with the geocode URL.
+     * @param nwsUrl is a String with the NWS points URL.
+     * @param queueSize is an int with the max requests waiting per host.
+     * @param queueMaxWaitMillis is a long with the max millis a request waits.
+     * @param censusRate is a double with the Census Bureau requests per second.
+     * @param censusBurst is an int with the Census Bureau burst size.
+     * @param nwsRate is a double with the NWS requests per second.
+     * @param nwsBurst is an int with the NWS burst size.
+     * @return An UpstreamScheduler object.
+     */
+    @Bean
+    public UpstreamScheduler upstreamScheduler(
+        ForecastMetrics forecastMetrics,
+        @Value("${weatherservice.geocodeUrl}") String geocodeUrl,
+        @Value("${weatherservice.nwsUrl}") String nwsUrl,
+        @Value("${weatherservice.upstreamQueueSize}") int queueSize,
+        @Value("${weatherservice.upstreamQueueMaxWaitMillis}") long queueMaxWaitMillis,
+        @Value("${weatherservice.censusRatePerSecond}") double censusRate,
+        @Value("${weatherservice.censusRateBurst}") int censusBurst,
+        @Value("${weatherservice.nwsRatePerSecond}") double nwsRate,
+        @Value("${weatherservice.nwsRateBurst}") int nwsBurst
+    ) {
+        logger.info("Initializing the upstream scheduler. (queueSize=" + queueSize + " queueMaxWaitMillis=" + queueMaxWaitMillis
+            + " censusRatePerSecond=" + censusRate + " nwsRatePerSecond=" + nwsRate + ")");
+        UpstreamScheduler scheduler = new UpstreamScheduler(queueSize, queueMaxWaitMillis);
+        scheduler.setRate(UpstreamScheduler.hostOf(geocodeUrl), censusRate, censusBurst);
+        scheduler.setRate(UpstreamScheduler.hostOf(nwsUrl), nwsRate, nwsBurst);
+        scheduler.bindTo(forecastMetrics);
+        return scheduler;
+    }
+
+    /**
+     * Creates the Census Bureau client bean.
+     * @param upstreamRestClient is the shared RestClient.
+     * @param url is a String with the geocode URL.
+     * @param streamingParse is a boolean with true to use the streaming parser.
+     * @param forecastMetrics is the ForecastMetrics to record to.
+     * @param upstreamScheduler is the UpstreamScheduler to rate limit with.
+     * @return A CensusGovGeocodeClient object.
+     */
+    @Bean
+    public CensusGovGeocodeClient censusGovGeocodeClient(
+        RestClient upstreamRestClient,
+        ForecastMetrics forecastMetrics,
+        UpstreamScheduler upstreamScheduler,
+        @Value("${weatherservice.geocodeUrl}") String url,
+        @Value("${weatherservice.streamingJsonParse}") boolean streamingParse
+    ) {
+        CensusGovGeocodeClient client = new CensusGovGeocodeClient(upstreamRestClient, url);
+        client.setStreamingParse(streamingParse);
+        client.setMetrics(forecastMetrics);
+        client.setGuard(this.createGuard("census", forecastMetrics, upstreamScheduler, UpstreamScheduler.hostOf(url)));
+        client.setScheduler(upstreamScheduler);
+        return client;
+    }
+
+    /**
+     * Creates the NWS client bean.
+     * @param upstreamRestClient is the shared RestClient.
+     * @param url is a String with the NWS points URL.
+     * @param streamingParse is a boolean with true to use the streaming parser.
+     * @param forecastMetrics is the ForecastMetrics to record to.
+     * @param upstreamScheduler is the UpstreamScheduler to rate limit with.
+     * @return A NwsGovClient object.
+     */
+    @Bean
+    public NwsGovClient nwsGovClient(
+        RestClient upstreamRestClient,
+        ForecastMetrics forecastMetrics,
+        UpstreamScheduler upstreamScheduler,
+        @Value("${weatherservice.nwsUrl}") String url,
+        @Value("${weatherservice.streamingJsonParse}") boolean streamingParse
+    ) {
+        NwsGovClient client = new NwsGovClient(upstreamRestClient, url);
+        client.setStreamingParse(streamingParse);
+        client.setMetrics(forecastMetrics);
+        client.setGuard(this.createGuard("nws", forecastMetrics, upstreamScheduler, UpstreamScheduler.hostOf(url)));
+        client.setScheduler(upstreamScheduler);
+        return client;
+    }
+
+    /**
+     * Creates the guard for an upstream from the resilience settings
+     * and registers its metrics.
+     * @param upstream is a String with the upstream name.
+     * @param forecastMetrics is the ForecastMetrics to register with.
+     * @param upstreamScheduler is the UpstreamScheduler hedges take a token from.
+     * @param host is a String with the upstream host.
+     * @return An UpstreamGuard object.
+     */
+    private UpstreamGuard createGuard(String upstream, ForecastMetrics forecastMetrics, UpstreamScheduler upstreamScheduler,
+                                      String host) {
+        CircuitBreaker breaker = this.circuitBreakerEnabled
+            ? new CircuitBreaker(this.circuitWindowSize, this.circuitMinimumCalls, this.circuitFailureRate, this.circuitOpenMillis)
+            : null;
+        AdaptiveConcurrencyLimiter limiter = this.concurrencyLimitEnabled
+            ? new AdaptiveConcurrencyLimiter(this.concurrencyInitialLimit, this.concurrencyMinLimit, this.concurrencyMaxLimit,
+                this.concurrencyLatencyMillis, this.concurrencyBackoffRatio)
+            : null;
+        logger.info("Initializing the " + upstream + " upstream guard. (circuitBreaker=" + this.circuitBreakerEnabled
+            + " concurrencyLimit=" + this.concurrencyLimitEnabled + " hedge=" + this.hedgeEnabled + ")");
+        UpstreamGuard guard = new UpstreamGuard(upstream, breaker, limiter, this.hedgeEnabled, this.hedgeMinDelayMillis,
+            upstreamScheduler, host);
+        guard.bindTo(forecastMetrics);
+        return guard;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.io.IOException;
+
+/**
+ * Answers the requests of every endpoint that were shed because an
+ * upstream is failing or overloaded.
+ */
+@RestControllerAdvice
+public class UpstreamExceptionHandler {
+    private static Logger logger = LogManager.getLogger(UpstreamExceptionHandler.class);
+
+    /**
+     * Answers requests that were shed because an upstream is failing
+     * or overloaded and there was no stale forecast to serve, with a
+     * 503 and when to retry.
+     * @param response is the HttpServletResponse.
+     * @param e is the UpstreamUnavailableException.
+     * @throws IOException
+     */
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public void upstreamUnavailable(HttpServletResponse response, UpstreamUnavailableException e) throws IOException {
+        logger.warn("Upstream unavailable: {}", e.getMessage());
+        ForecastResponseWriter.writeUnavailable(response, e.getRetryAfterSeconds());
+    }
+}
@@ -0,0 +1,387 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resilience layer around the calls to one upstream service. Calls
+ * pass through an optional circuit breaker, which fails them fast
+ * while the upstream is failing, and an optional adaptive concurrency
+ * limit, which fails them fast while too many are already waiting on a
+ * slow upstream, so request threads never pile up behind it. Both
+ * rejections throw UpstreamUnavailableException, which lets the caller
+ * serve a stale forecast if it has one. When hedging is on, a call
+ * that hasn't answered within the p95 of recent latencies is sent a
+ * second time and the first answer wins, which trims the slowest
+ * responses at the cost of about 5% more upstream calls. A hedge is
+ * only sent if the host's rate limit has a token free for it, so
+ * hedging never pushes the upstream past its rate limit.
+ */
+public class UpstreamGuard {
+    public static final String CIRCUIT_STATE = "upstream.circuit.state";
+    public static final String CIRCUIT_OPENED = "upstream.circuit.opened";
+    public static final String CIRCUIT_REJECTED = "upstream.circuit.rejected";
+    public static final String CONCURRENCY_LIMIT = "upstream.concurrency.limit";
+    public static final String CONCURRENCY_IN_FLIGHT = "upstream.concurrency.inflight";
+    public static final String CONCURRENCY_REJECTED = "upstream.concurrency.rejected";
+    public static final String HEDGE_DELAY = "upstream.hedge.delay";
+    public static final String HEDGE_SENT = "upstream.hedge.sent";
+    public static final String HEDGE_WINS = "upstream.hedge.wins";
+
+    // Number of recent latencies the hedge delay is computed from, the
+    // number needed before hedging starts and how often it is updated.
+    private static final int HEDGE_SAMPLES = 128;
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final int HEDGE_UPDATE_SAMPLES = 16;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    protected final String upstream;
+    protected final CircuitBreaker breaker;
+    protected final AdaptiveConcurrencyLimiter limiter;
+    protected final boolean hedge;
+    protected final long minHedgeDelayNanos;
+    protected final UpstreamScheduler scheduler;
+    protected final String host;
+
+    private final long[] latencies = new long[HEDGE_SAMPLES];
+    private int latencyCount;
+    private int latencyNext;
+    private int latenciesSinceUpdate;
+    private volatile long hedgeDelayNanos = -1;
+
+    private final ExecutorService hedgeExecutor;
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * Constructor sets up the guard.
+     * @param upstream is a String with the upstream name used in
+     * messages and metric tags.
+     * @param breaker is the CircuitBreaker or null for none.
+     * @param limiter is the AdaptiveConcurrencyLimiter or null for none.
+     * @param hedge is a boolean with true to hedge slow calls.
+     * @param minHedgeDelayMillis is a long with the least millis to
+     * wait before hedging a call.
+     */
+    public UpstreamGuard(String upstream, CircuitBreaker breaker, AdaptiveConcurrencyLimiter limiter,
+                         boolean hedge, long minHedgeDelayMillis) {
+        this(upstream, breaker, limiter, hedge, minHedgeDelayMillis, null, null);
+    }
+
+    /**
+     * Constructor sets up the guard with hedges rate limited by the
+     * scheduler. The first call of each request is expected to have its
+     * token already, since the clients call the guard through the
+     * scheduler.
+     * @param upstream is a String with the upstream name used in
+     * messages and metric tags.
+     * @param breaker is the CircuitBreaker or null for none.
+     * @param limiter is the AdaptiveConcurrencyLimiter or null for none.
+     * @param hedge is a boolean with true to hedge slow calls.
+     * @param minHedgeDelayMillis is a long with the least millis to
+     * wait before hedging a call.
+     * @param scheduler is the UpstreamScheduler hedges take a token
+     * from, or null for none.
+     * @param host is a String with the upstream host the scheduler
+     * limits.
+     */
+    public UpstreamGuard(String upstream, CircuitBreaker breaker, AdaptiveConcurrencyLimiter limiter,
+                         boolean hedge, long minHedgeDelayMillis, UpstreamScheduler scheduler, String host) {
+        this.upstream = upstream;
+        this.breaker = breaker;
+        this.limiter = limiter;
+        this.hedge = hedge;
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+        this.hedgeExecutor = hedge ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.scheduler = scheduler;
+        this.host = host;
+    }
+
+    /**
+     * Creates a guard that makes every call as is.
+     * @param upstream is a String with the upstream name.
+     * @return An UpstreamGuard object.
+     */
+    public static UpstreamGuard unguarded(String upstream) {
+        return new UpstreamGuard(upstream, null, null, false, 0);
+    }
+
+    /**
+     * Makes the upstream call through the circuit breaker, the
+     * concurrency limit and hedging.
+     * @param request is the Timed function that makes the call.
+     * @return The value the call returned.
+     * @throws E if the call failed.
+     * @throws UpstreamUnavailableException if the call was rejected.
+     */
+    public <V, E extends Exception> V call(ForecastMetrics.Timed<V, E> request) throws E {
+        long delayNanos = this.hedgeDelayNanos;
+        if (!this.hedge || delayNanos < 0) {
+            return this.attempt(request, null);
+        }
+        return this.hedged(request, delayNanos);
+    }
+
+    /**
+     * Registers the guard's meters, tagged with the upstream name.
+     * @param metrics is the ForecastMetrics to register with.
+     */
+    public void bindTo(ForecastMetrics metrics) {
+        if (this.breaker != null) {
+            metrics.upstreamGauge(CIRCUIT_STATE, "Circuit breaker state, 0 closed, 1 half open and 2 open",
+                this.upstream, () -> this.breaker.getState().getValue());
+            metrics.upstreamCounter(CIRCUIT_OPENED, "Times the circuit breaker opened",
+                this.upstream, this.breaker::getOpenedCount);
+            metrics.upstreamCounter(CIRCUIT_REJECTED, "Calls rejected by the open circuit breaker",
+                this.upstream, this.breaker::getRejectedCount);
+        }
+        if (this.limiter != null) {
+            metrics.upstreamGauge(CONCURRENCY_LIMIT, "Adaptive concurrency limit",
+                this.upstream, this.limiter::getLimit);
+            metrics.upstreamGauge(CONCURRENCY_IN_FLIGHT, "Upstream calls in flight",
+                this.upstream, this.limiter::getInFlight);
+            metrics.upstreamCounter(CONCURRENCY_REJECTED, "Calls rejected by the concurrency limit",
+                this.upstream, this.limiter::getRejectedCount);
+        }
+        if (this.hedge) {
+            metrics.upstreamGauge(HEDGE_DELAY, "Seconds a call waits before it is hedged",
+                this.upstream, () -> Math.max(0, this.hedgeDelayNanos) / 1e9);
+            metrics.upstreamCounter(HEDGE_SENT, "Hedged calls sent",
+                this.upstream, this.hedgesSent::sum);
+            metrics.upstreamCounter(HEDGE_WINS, "Hedged calls that answered first",
+                this.upstream, this.hedgeWins::sum);
+        }
+    }
+
+    /**
+     * Gets the current hedge delay.
+     * @return A long with the hedge delay in nanos or -1 if there
+     * aren't enough samples yet.
+     */
+    public long getHedgeDelayNanos() {
+        return this.hedgeDelayNanos;
+    }
+
+    /**
+     * Gets the number of hedged calls sent.
+     * @return A long with the hedge count.
+     */
+    public long getHedgesSent() {
+        return this.hedgesSent.sum();
+    }
+
+    /**
+     * Gets the number of hedged calls that answered first.
+     * @return A long with the hedge win count.
+     */
+    public long getHedgeWins() {
+        return this.hedgeWins.sum();
+    }
+
+    /**
+     * Makes a single call if the breaker and limit allow it and records
+     * its outcome.
+     * @param request is the Timed function that makes the call.
+     * @param abandoned is set once the call's result is no longer
+     * needed, or null if it isn't hedged.
+     * @return The value the call returned.
+     * @throws E if the call failed.
+     */
+    private <V, E extends Exception> V attempt(ForecastMetrics.Timed<V, E> request, AtomicBoolean abandoned) throws E {
+        if (this.breaker != null && !this.breaker.tryAcquire()) {
+            long retryAfterMillis = this.breaker.getOpenRemainingMillis();
+            throw new UpstreamUnavailableException("The " + this.upstream + " circuit breaker is open.",
+                TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis + 999));
+        }
+        if (this.limiter != null && !this.limiter.tryAcquire()) {
+            if (this.breaker != null) {
+                this.breaker.release();
+            }
+            throw new UpstreamUnavailableException("The " + this.upstream + " concurrency limit has been reached.");
+        }
+
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            return request.call();
+        } catch (Exception e) {
+            failed = isOverloaded(e);
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            if (abandoned != null && abandoned.get()) {
+                // The other call answered first and this one was
+                // cancelled, which says nothing about the upstream.
+                if (this.limiter != null) {
+                    this.limiter.release();
+                }
+                if (this.breaker != null) {
+                    this.breaker.release();
+                }
+            } else {
+                if (this.limiter != null) {
+                    this.limiter.onSample(nanos, failed);
+                }
+                if (this.breaker != null) {
+                    if (failed) {
+                        this.breaker.onFailure();
+                    } else {
+                        this.breaker.onSuccess();
+                    }
+                }
+                if (this.hedge && !failed) {
+                    this.recordLatency(nanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the call and sends it a second time if it hasn't answered
+     * within the hedge delay, returning the first success.
+     * @param request is the Timed function that makes the call.
+     * @param delayNanos is a long with the hedge delay in nanos.
+     * @return The value of the first call that succeeded.
+     * @throws E with the first call's failure if both failed.
+     */
+    private <V, E extends Exception> V hedged(ForecastMetrics.Timed<V, E> request, long delayNanos) throws E {
+        AtomicBoolean abandoned = new AtomicBoolean();
+        ExecutorCompletionService<V> completion = new ExecutorCompletionService<>(this.hedgeExecutor);
+        List<Future<V>> futures = new ArrayList<>(2);
+        futures.add(completion.submit(() -> this.attempt(request, abandoned)));
+        try {
+            Future<V> done = completion.poll(delayNanos, TimeUnit.NANOSECONDS);
+            if (done == null && this.mayHedge()) {
+                this.hedgesSent.increment();
+                futures.add(completion.submit(() -> this.scheduler == null
+                    ? this.attempt(request, abandoned)
+                    : this.scheduler.callAcquired(this.host, () -> this.attempt(request, abandoned))));
+            }
+
+            Throwable failure = null;
+            for (int remaining = futures.size(); remaining > 0; remaining--) {
+                Future<V> future = done != null ? done : completion.take();
+                done = null;
+                try {
+                    V value = future.get();
+                    if (future != futures.get(0)) {
+                        this.hedgeWins.increment();
+                    }
+                    return value;
+                } catch (ExecutionException e) {
+                    // Prefer the first call's failure over the hedge's.
+                    if (failure == null || future == futures.get(0)) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            return rethrow(failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamUnavailableException("Interrupted while waiting for " + this.upstream + ".");
+        } finally {
+            abandoned.set(true);
+            for (Future<V> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Checks if there is room to hedge a call without tripping the
+     * breaker or the limit, and takes the hedge's rate limit token.
+     * @return A boolean with true if a hedge may be sent.
+     */
+    private boolean mayHedge() {
+        return (this.breaker == null || this.breaker.getState() == CircuitBreaker.State.CLOSED)
+            && (this.limiter == null || this.limiter.getInFlight() < this.limiter.getLimit())
+            && (this.scheduler == null || this.scheduler.tryAcquire(this.host));
+    }
+
+    /**
+     * Records the latency of a successful call and updates the hedge
+     * delay every so often.
+     * @param nanos is a long with the call latency in nanos.
+     */
+    private void recordLatency(long nanos) {
+        long[] snapshot = null;
+        synchronized (this.latencies) {
+            this.latencies[this.latencyNext] = nanos;
+            this.latencyNext = (this.latencyNext + 1) % this.latencies.length;
+            this.latencyCount = Math.min(this.latencyCount + 1, this.latencies.length);
+            if (++this.latenciesSinceUpdate >= HEDGE_UPDATE_SAMPLES && this.latencyCount >= HEDGE_MIN_SAMPLES) {
+                this.latenciesSinceUpdate = 0;
+                snapshot = Arrays.copyOf(this.latencies, this.latencyCount);
+            }
+        }
+        if (snapshot != null) {
+            Arrays.sort(snapshot);
+            long percentile = snapshot[(int) Math.ceil(snapshot.length * HEDGE_PERCENTILE) - 1];
+            this.hedgeDelayNanos = Math.max(this.minHedgeDelayNanos, percentile);
+        }
+    }
+
+    /**
+     * Checks if a failure means the upstream is down or overloaded, as
+     * opposed to rejecting the request itself.
+     * @param e is the Exception the call failed with.
+     * @return A boolean with true for IO failures, 5xx and 429.
+     */
+    protected static boolean isOverloaded(Exception e) {
+        if (e instanceof ResourceAccessException) {
+            return true;
+        }
+        if (e instanceof RestClientResponseException re) {
+            int status = re.getStatusCode().value();
+            return status >= 500 || status == 429;
+        }
+        return false;
+    }
+
+    /**
+     * Rethrows a call's failure as is.
+     * @param cause is the Throwable the call failed with.
+     * @return Never returns.
+     * @throws E with the call's exception.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V rethrow(Throwable cause) throws E {
+        if (cause instanceof RuntimeException re) {
+            throw re;
+        } else if (cause instanceof Error err) {
+            throw err;
+        }
+        throw (E) cause;
+    }
+}
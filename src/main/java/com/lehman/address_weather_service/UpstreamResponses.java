@@ -0,0 +1,104 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for upstream responses that are read with RestClient
+ * exchange, which skips the default status handling of retrieve.
+ */
+public final class UpstreamResponses {
+    private UpstreamResponses() { }
+
+    /**
+     * Parser of a response body stream.
+     * @param <T> is the parsed type.
+     */
+    @FunctionalInterface
+    public interface BodyParser<T> {
+        T parse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Parses the response body and then reads whatever the parser left
+     * unread. A streaming parse stops once it has its fields, and a
+     * body closed before its end throws away the pooled HTTP/1.1
+     * connection, or resets the HTTP/2 stream, instead of reusing it.
+     * @param response is the ClientHttpResponse to read.
+     * @param parser is the BodyParser that reads the body.
+     * @return The parsed value.
+     * @throws IOException
+     */
+    public static <T> T parseAndDrain(ClientHttpResponse response, BodyParser<T> parser) throws IOException {
+        InputStream body = response.getBody();
+        T value = parser.parse(StreamUtils.nonClosing(body));
+        body.transferTo(OutputStream.nullOutputStream());
+        return value;
+    }
+
+    /**
+     * Throws the same exceptions as RestClient retrieve does for a 4xx
+     * or 5xx response.
+     * @param response is the ClientHttpResponse to check.
+     * @throws IOException
+     */
+    public static void checkStatus(ClientHttpResponse response) throws IOException {
+        HttpStatusCode status = response.getStatusCode();
+        if (!status.isError()) {
+            return;
+        }
+        byte[] body = response.getBody().readAllBytes();
+        if (status.is4xxClientError()) {
+            throw HttpClientErrorException.create(status, response.getStatusText(), response.getHeaders(), body, StandardCharsets.UTF_8);
+        } else if (status.is5xxServerError()) {
+            throw HttpServerErrorException.create(status, response.getStatusText(), response.getHeaders(), body, StandardCharsets.UTF_8);
+        }
+        throw new RestClientResponseException("Unexpected status " + status.value(), status, response.getStatusText(),
+            response.getHeaders(), body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unwraps a JSON parse failure that RestClient wrapped while the
+     * response body was being read.
+     * @param e is the ResourceAccessException from RestClient.
+     * @return The ResourceAccessException if it isn't a parse failure.
+     * @throws JsonProcessingException if it is.
+     */
+    public static ResourceAccessException unwrapParseFailure(ResourceAccessException e)
+            throws JsonProcessingException {
+        if (e.getCause() instanceof JsonProcessingException jpe) {
+            throw jpe;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,559 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Central scheduler for the outbound upstream requests. Each upstream
+ * host with a configured rate gets a token bucket, and a request waits
+ * in the host's bounded queue until a token is free. Waiting requests
+ * are served by priority, so interactive forecast misses go ahead of
+ * batch loads and background refreshes, and when the queue is full a
+ * waiting request of a lower priority is shed to make room. Requests
+ * that can't get a token within the max wait are shed as well, by
+ * throwing UpstreamUnavailableException with a Retry-After estimate.
+ * When a host answers 429, or 403 with a Retry-After, its bucket is
+ * paused for the host's Retry-After, or a second, instead of sending
+ * more requests into the throttle. A bare 403 is a rejected request,
+ * such as a missing User-Agent, rather than a rate limit. A load that
+ * higher priority callers join has its priority raised to theirs.
+ */
+public class UpstreamScheduler {
+    public static final String QUEUE_DEPTH = "upstream.queue.depth";
+    public static final String QUEUE_WAIT = "upstream.queue.wait";
+    public static final String QUEUE_REJECTED = "upstream.queue.rejected";
+    public static final String THROTTLED = "upstream.throttled";
+
+    private static final long DEFAULT_PAUSE_MILLIS = 1000;
+
+    /**
+     * Request priorities, highest first.
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BATCH,
+        BACKGROUND
+    }
+
+    // Priority of the requests made by the current thread.
+    private static final ThreadLocal<LoadPriority> PRIORITY = ThreadLocal.withInitial(() -> new LoadPriority(Priority.INTERACTIVE));
+
+    /**
+     * Priority of the upstream requests of a load, which callers that
+     * join the load raise to their own so they don't wait behind lower
+     * priority requests. Raising it also moves a request of the load
+     * that is already waiting for a token.
+     */
+    public static final class LoadPriority {
+        private volatile Priority priority;
+        private volatile Bucket waitingIn;
+        private volatile Waiter waiter;
+
+        /**
+         * Constructor sets the starting priority.
+         * @param priority is the Priority of the load.
+         */
+        public LoadPriority(Priority priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Gets the current priority.
+         * @return A Priority object.
+         */
+        public Priority get() {
+            return priority;
+        }
+
+        /**
+         * Raises the priority if the provided one is higher.
+         * @param priority is the Priority of a caller joining the load.
+         */
+        public void raise(Priority priority) {
+            synchronized (this) {
+                if (priority.compareTo(this.priority) >= 0) {
+                    return;
+                }
+                this.priority = priority;
+            }
+            Bucket bucket = this.waitingIn;
+            if (bucket != null) {
+                bucket.reprioritize(this);
+            }
+        }
+    }
+
+    protected final int maxQueued;
+    protected final long maxWaitNanos;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor sets up a scheduler without any rate limits.
+     * @param maxQueued is an int with the max number of requests that
+     * may wait for a token per host.
+     * @param maxWaitMillis is a long with the max millis a request
+     * waits for a token.
+     */
+    public UpstreamScheduler(int maxQueued, long maxWaitMillis) {
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Sets the rate limit of a host. Requests to hosts without a rate
+     * limit are made right away.
+     * @param host is a String with the host name.
+     * @param permitsPerSecond is a double with the sustained requests
+     * per second, 0 or less for no limit.
+     * @param burst is an int with the number of requests that may be
+     * made at once after the host has been idle.
+     */
+    public void setRate(String host, double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            this.buckets.remove(host);
+        } else {
+            this.buckets.put(host, new Bucket(permitsPerSecond, Math.max(1, burst)));
+        }
+    }
+
+    /**
+     * Registers the queue metrics of every rate limited host, tagged
+     * with the host name.
+     * @param metrics is the ForecastMetrics to register with.
+     */
+    public void bindTo(ForecastMetrics metrics) {
+        this.buckets.forEach((host, bucket) -> {
+            metrics.upstreamGauge(QUEUE_DEPTH, "Requests waiting for a rate limit token", host, bucket::getQueued);
+            metrics.upstreamCounter(QUEUE_REJECTED, "Requests shed by the rate limit queue", host, bucket.rejected::sum);
+            metrics.upstreamCounter(THROTTLED, "Throttled (429, or 403 with Retry-After) upstream responses", host, bucket.throttled::sum);
+            bucket.waitTimer = metrics.upstreamTimer(QUEUE_WAIT, "Time requests waited for a rate limit token", host);
+        });
+    }
+
+    /**
+     * Makes the request once the host's rate limit allows it, at the
+     * priority of the current thread.
+     * @param host is a String with the host the request goes to.
+     * @param request is the Timed function that makes the request.
+     * @return The value the request returned.
+     * @throws E if the request failed.
+     * @throws UpstreamUnavailableException if the request was shed.
+     */
+    public <V, E extends Exception> V call(String host, ForecastMetrics.Timed<V, E> request) throws E {
+        Bucket bucket = host == null ? null : this.buckets.get(host);
+        if (bucket == null) {
+            return request.call();
+        }
+        bucket.acquire(host, PRIORITY.get());
+        return observe(bucket, request);
+    }
+
+    /**
+     * Takes a token for the host only if one is free right now and no
+     * request is waiting for one, for extra requests such as hedges
+     * that are sent only when they fit in the rate limit.
+     * @param host is a String with the host the request goes to.
+     * @return A boolean with true if a token was taken, which must be
+     * used with callAcquired.
+     */
+    public boolean tryAcquire(String host) {
+        Bucket bucket = host == null ? null : this.buckets.get(host);
+        return bucket == null || bucket.tryAcquire();
+    }
+
+    /**
+     * Makes a request that already took its token with tryAcquire,
+     * pausing the host if it is throttled.
+     * @param host is a String with the host the request goes to.
+     * @param request is the Timed function that makes the request.
+     * @return The value the request returned.
+     * @throws E if the request failed.
+     */
+    public <V, E extends Exception> V callAcquired(String host, ForecastMetrics.Timed<V, E> request) throws E {
+        Bucket bucket = host == null ? null : this.buckets.get(host);
+        return bucket == null ? request.call() : observe(bucket, request);
+    }
+
+    /**
+     * Makes the request and pauses the bucket if the host throttled it.
+     * @param bucket is the Bucket of the host.
+     * @param request is the Timed function that makes the request.
+     * @return The value the request returned.
+     * @throws E if the request failed.
+     */
+    private static <V, E extends Exception> V observe(Bucket bucket, ForecastMetrics.Timed<V, E> request) throws E {
+        try {
+            return request.call();
+        } catch (RestClientResponseException e) {
+            if (isThrottled(e)) {
+                bucket.throttled.increment();
+                bucket.pause(retryAfterMillis(e.getResponseHeaders()));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for a token for the host.
+     * @param host is a String with the host name.
+     * @return An int with the number of waiting requests.
+     */
+    public int getQueued(String host) {
+        Bucket bucket = this.buckets.get(host);
+        return bucket == null ? 0 : bucket.getQueued();
+    }
+
+    /**
+     * Gets the number of requests to the host that were shed.
+     * @param host is a String with the host name.
+     * @return A long with the rejected count.
+     */
+    public long getRejectedCount(String host) {
+        Bucket bucket = this.buckets.get(host);
+        return bucket == null ? 0 : bucket.rejected.sum();
+    }
+
+    /**
+     * Runs the task with the upstream requests it makes on the current
+     * thread at the provided priority.
+     * @param priority is the Priority of the requests.
+     * @param task is the Timed function to run.
+     * @return The value the task returned.
+     * @throws E if the task failed.
+     */
+    public static <V, E extends Exception> V withPriority(Priority priority, ForecastMetrics.Timed<V, E> task) throws E {
+        return withPriority(new LoadPriority(priority), task);
+    }
+
+    /**
+     * Runs the task with the upstream requests it makes on the current
+     * thread at the load's priority, which may be raised as it runs.
+     * @param priority is the LoadPriority of the requests.
+     * @param task is the Timed function to run.
+     * @return The value the task returned.
+     * @throws E if the task failed.
+     */
+    public static <V, E extends Exception> V withPriority(LoadPriority priority, ForecastMetrics.Timed<V, E> task) throws E {
+        LoadPriority previous = PRIORITY.get();
+        PRIORITY.set(priority);
+        try {
+            return task.call();
+        } finally {
+            PRIORITY.set(previous);
+        }
+    }
+
+    /**
+     * Gets the priority of the upstream requests made by the current
+     * thread.
+     * @return A LoadPriority object.
+     */
+    public static LoadPriority currentPriority() {
+        return PRIORITY.get();
+    }
+
+    /**
+     * Checks if an error response is the host throttling requests.
+     * @param e is the RestClientResponseException of the response.
+     * @return A boolean with true for a 429, or a 403 with Retry-After.
+     */
+    static boolean isThrottled(RestClientResponseException e) {
+        int status = e.getStatusCode().value();
+        return status == 429 || (status == 403 && e.getResponseHeaders() != null
+            && e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER) != null);
+    }
+
+    /**
+     * Gets the host of a URL or URL template.
+     * @param url is a String with the URL.
+     * @return A String with the host or null if it has none.
+     */
+    public static String hostOf(String url) {
+        return UriComponentsBuilder.fromUriString(url).build().getHost();
+    }
+
+    /**
+     * Gets the millis to pause for from a throttled response's
+     * Retry-After header in seconds, or the default pause.
+     * @param headers is the HttpHeaders of the response or null.
+     * @return A long with the millis to pause for.
+     */
+    private static long retryAfterMillis(HttpHeaders headers) {
+        String retryAfter = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                // An HTTP date, use the default pause.
+            }
+        }
+        return DEFAULT_PAUSE_MILLIS;
+    }
+
+    /**
+     * A request waiting for a token.
+     */
+    private static final class Waiter {
+        private Priority priority;
+        private final long sequence;
+        private boolean shed;
+
+        private Waiter(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Token bucket and wait queue of a single host.
+     */
+    private final class Bucket {
+        private final double permitsPerNano;
+        private final double burst;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = this.lock.newCondition();
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparing((Waiter w) -> w.priority).thenComparingLong(w -> w.sequence));
+
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private long pausedUntil = this.refilledAt;
+        private long sequence;
+
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private Timer waitTimer;
+
+        private Bucket(double permitsPerSecond, int burst) {
+            this.permitsPerNano = permitsPerSecond / 1e9;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * Waits for a token, in priority order.
+         * @param host is a String with the host name for messages.
+         * @param load is the LoadPriority of the request.
+         */
+        private void acquire(String host, LoadPriority load) {
+            long start = System.nanoTime();
+            long deadline = start + UpstreamScheduler.this.maxWaitNanos;
+            this.lock.lock();
+            try {
+                this.refill(start);
+                if (this.queue.isEmpty() && start - this.pausedUntil >= 0 && this.tokens >= 1) {
+                    this.tokens -= 1;
+                    return;
+                }
+                if (this.queue.size() >= UpstreamScheduler.this.maxQueued && !this.shedLowerThan(load.get())) {
+                    throw this.reject(host, "queue is full");
+                }
+
+                // Published before the priority is read, so a raise either
+                // is seen here or moves the waiter once it is queued.
+                Waiter waiter = new Waiter(null, this.sequence++);
+                load.waiter = waiter;
+                load.waitingIn = this;
+                waiter.priority = load.get();
+                this.queue.add(waiter);
+                try {
+                    this.await(host, waiter, deadline);
+                } finally {
+                    load.waitingIn = null;
+                    load.waiter = null;
+                }
+            } finally {
+                this.lock.unlock();
+                if (this.waitTimer != null) {
+                    this.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        /**
+         * Waits until the queued waiter is first and gets a token. Must
+         * hold the lock.
+         * @param host is a String with the host name for messages.
+         * @param waiter is the queued Waiter.
+         * @param deadline is a long with the nano time to give up at.
+         */
+        private void await(String host, Waiter waiter, long deadline) {
+            while (true) {
+                if (waiter.shed) {
+                    throw this.reject(host, "queue is full");
+                }
+                long now = System.nanoTime();
+                this.refill(now);
+                boolean first = this.queue.peek() == waiter;
+                if (first && now - this.pausedUntil >= 0 && this.tokens >= 1) {
+                    this.queue.poll();
+                    this.tokens -= 1;
+                    this.changed.signalAll();
+                    return;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    this.queue.remove(waiter);
+                    this.changed.signalAll();
+                    throw this.reject(host, "wait for a token timed out");
+                }
+                long wait = remaining;
+                if (first) {
+                    long untilToken = (long) Math.ceil((1 - this.tokens) / this.permitsPerNano);
+                    wait = Math.min(remaining, Math.max(1, Math.max(untilToken, this.pausedUntil - now)));
+                }
+                try {
+                    this.changed.awaitNanos(wait);
+                } catch (InterruptedException e) {
+                    this.queue.remove(waiter);
+                    this.changed.signalAll();
+                    Thread.currentThread().interrupt();
+                    throw new UpstreamUnavailableException("Interrupted while waiting to call " + host + ".");
+                }
+            }
+        }
+
+        /**
+         * Takes a token if one is free and no request is waiting.
+         * @return A boolean with true if a token was taken.
+         */
+        private boolean tryAcquire() {
+            this.lock.lock();
+            try {
+                long now = System.nanoTime();
+                this.refill(now);
+                if (this.queue.isEmpty() && now - this.pausedUntil >= 0 && this.tokens >= 1) {
+                    this.tokens -= 1;
+                    return true;
+                }
+                return false;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Moves the load's waiting request to its raised priority.
+         * @param load is the LoadPriority that was raised.
+         */
+        private void reprioritize(LoadPriority load) {
+            this.lock.lock();
+            try {
+                Waiter waiter = load.waiter;
+                if (load.waitingIn == this && waiter != null && this.queue.remove(waiter)) {
+                    waiter.priority = load.get();
+                    this.queue.add(waiter);
+                    this.changed.signalAll();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Sheds the newest waiter with a lower priority than the one
+         * provided to make room for it. Must hold the lock.
+         * @param priority is the Priority that needs room.
+         * @return A boolean with true if a waiter was shed.
+         */
+        private boolean shedLowerThan(Priority priority) {
+            Waiter lowest = null;
+            for (Waiter waiter : this.queue) {
+                if (waiter.priority.compareTo(priority) > 0 && (lowest == null
+                        || waiter.priority.compareTo(lowest.priority) > 0
+                        || (waiter.priority == lowest.priority && waiter.sequence > lowest.sequence))) {
+                    lowest = waiter;
+                }
+            }
+            if (lowest == null) {
+                return false;
+            }
+            this.queue.remove(lowest);
+            lowest.shed = true;
+            this.changed.signalAll();
+            return true;
+        }
+
+        /**
+         * Pauses the bucket after the host throttled a request.
+         * @param millis is a long with the millis to pause for.
+         */
+        private void pause(long millis) {
+            this.lock.lock();
+            try {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+                if (until - this.pausedUntil > 0) {
+                    this.pausedUntil = until;
+                }
+                // Start refilling only once the pause is over.
+                this.tokens = 0;
+                if (until - this.refilledAt > 0) {
+                    this.refilledAt = until;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Counts a shed request and builds its exception with an
+         * estimate of when the queue will have drained. Must hold the
+         * lock.
+         */
+        private UpstreamUnavailableException reject(String host, String reason) {
+            this.rejected.increment();
+            long now = System.nanoTime();
+            long drainNanos = (long) ((this.queue.size() + 1) / this.permitsPerNano) + Math.max(0, this.pausedUntil - now);
+            return new UpstreamUnavailableException("Request to " + host + " shed, the " + reason + ".",
+                TimeUnit.NANOSECONDS.toSeconds(drainNanos + 999_999_999L));
+        }
+
+        private void refill(long now) {
+            if (now - this.refilledAt > 0) {
+                this.tokens = Math.min(this.burst, this.tokens + (now - this.refilledAt) * this.permitsPerNano);
+                this.refilledAt = now;
+            }
+        }
+
+        private int getQueued() {
+            this.lock.lock();
+            try {
+                return this.queue.size();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+}
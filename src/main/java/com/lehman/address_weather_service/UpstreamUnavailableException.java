@@ -0,0 +1,57 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+/**
+ * Thrown when a call to an upstream service is rejected without being
+ * made, because its circuit breaker is open, it is at its concurrency
+ * limit or its request queue is full. Requests that fail with it get a
+ * 503 Service Unavailable with a Retry-After header.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+    protected final long retryAfterSeconds;
+
+    /**
+     * Constructor sets the message with a one second retry after.
+     * @param message is a String with the reason the call was rejected.
+     */
+    public UpstreamUnavailableException(String message) {
+        this(message, 1);
+    }
+
+    /**
+     * Constructor sets the message and retry after.
+     * @param message is a String with the reason the call was rejected.
+     * @param retryAfterSeconds is a long with the seconds after which
+     * the call is likely to succeed, at least 1.
+     */
+    public UpstreamUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    /**
+     * Gets the seconds after which the call is likely to succeed.
+     * @return A long with the retry after seconds.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
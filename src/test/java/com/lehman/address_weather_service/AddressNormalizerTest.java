@@ -0,0 +1,52 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * AddressNormalizer test class.
+ */
+public class AddressNormalizerTest {
+    /**
+     * Tests that equivalent spellings of an address share one key.
+     */
+    @Test
+    public void equivalentAddressesShareKey() {
+        String expected = AddressNormalizer.normalize("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747");
+
+        assertThat(AddressNormalizer.normalize("1261  pleasant grove boulevard", " roseville ", "ca", "95747"))
+            .isEqualTo(expected);
+        assertThat(AddressNormalizer.normalize("1261 Pleasant Grove Blvd.", "ROSEVILLE", "CA", "95747-1234"))
+            .isEqualTo(expected);
+        assertThat(expected).isEqualTo("1261 PLEASANT GROVE BLVD|ROSEVILLE|CA|95747");
+    }
+
+    /**
+     * Tests that directionals and unit designators are abbreviated.
+     */
+    @Test
+    public void directionalsAreAbbreviated() {
+        assertThat(AddressNormalizer.normalize("100 North Main Street, Suite #5", "Austin", "TX", "78701"))
+            .isEqualTo("100 N MAIN ST STE 5|AUSTIN|TX|78701");
+    }
+}
@@ -30,6 +30,7 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -44,6 +45,9 @@ public class CensusGovGeocodeClientTest {
     @Value("classpath:CensusGovGeocodeClientResult1.json")
     private Resource geocodeResult;
 
+    @Value("classpath:CensusGovGeocodeClientNoMatch.json")
+    private Resource geocodeNoMatch;
+
     @Value( "${weatherservice.geocodeUrl}" )
     private String weatherServiceUrl;
 
@@ -88,4 +92,28 @@ public class CensusGovGeocodeClientTest {
         assertThat(coordinates.getLongitude()).isEqualTo(-121.316399912491);
         assertThat(coordinates.getLatitude()).isEqualTo(38.771887717945);
     }
+
+    /**
+     * Tests that the streaming parse returns the same coordinates as
+     * the tree parse for a match and for no match.
+     * @throws IOException
+     */
+    @Test
+    public void getCoordinatesFromCensusStreamTest() throws IOException {
+        Coordinates expected = this.client.getCoordinatesFromCensusJson(
+                this.geocodeResult.getContentAsString(Charset.defaultCharset())
+        );
+        try (InputStream in = this.geocodeResult.getInputStream()) {
+            Coordinates coordinates = this.client.getCoordinatesFromCensusStream(in);
+            assertThat(coordinates.getLongitude()).isEqualTo(expected.getLongitude());
+            assertThat(coordinates.getLatitude()).isEqualTo(expected.getLatitude());
+        }
+
+        assertThat(this.client.getCoordinatesFromCensusJson(
+                this.geocodeNoMatch.getContentAsString(Charset.defaultCharset())
+        )).isNull();
+        try (InputStream in = this.geocodeNoMatch.getInputStream()) {
+            assertThat(this.client.getCoordinatesFromCensusStream(in)).isNull();
+        }
+    }
 }
@@ -0,0 +1,67 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ConsistentHashRing test class.
+ */
+public class ConsistentHashRingTest {
+    private static final int KEYS = 10000;
+
+    /**
+     * Tests that keys spread evenly over the nodes and that adding a
+     * node only moves keys to the new node.
+     */
+    @Test
+    public void spreadsKeysAndMovesFewOnResize() {
+        List<String> nodes = List.of("http://10.0.0.1:8080", "http://10.0.0.2:8080", "http://10.0.0.3:8080");
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, 128);
+        ConsistentHashRing grown = new ConsistentHashRing(
+            List.of("http://10.0.0.1:8080", "http://10.0.0.2:8080", "http://10.0.0.3:8080", "http://10.0.0.4:8080"), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "STO/" + (i % 200) + "," + (i / 200);
+            String owner = ring.getOwner(key);
+            counts.merge(owner, 1, Integer::sum);
+            assertThat(ring.getOwner(key)).isEqualTo(owner);
+
+            String newOwner = grown.getOwner(key);
+            if (!newOwner.equals(owner)) {
+                assertThat(newOwner).isEqualTo("http://10.0.0.4:8080");
+                moved++;
+            }
+        }
+
+        for (String node : nodes) {
+            assertThat(counts.get(node)).isBetween(KEYS / 4, KEYS / 2);
+        }
+        assertThat(moved).isBetween(KEYS / 8, KEYS * 3 / 8);
+    }
+}
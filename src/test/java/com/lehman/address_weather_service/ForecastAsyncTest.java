@@ -0,0 +1,152 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the async mode of the forecast endpoint.
+ */
+public class ForecastAsyncTest {
+    private static final int REQUESTS = 2000;
+
+    /**
+     * Service whose forecast loads take the provided millis.
+     */
+    private static StubForecastService slowService(long loadMillis) {
+        return new StubForecastService() {
+            @Override
+            protected CachedForecast fetchForecast(GridPoint point, String street, String city, String state, String zipcode) {
+                try {
+                    Thread.sleep(loadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.fetchForecast(point, street, city, state, zipcode);
+            }
+        };
+    }
+
+    /**
+     * Controller in async mode with the provided request deadline.
+     */
+    private static ForecastController asyncController(StubForecastService service, long deadlineMillis) {
+        ForecastController controller = new ForecastController(service);
+        controller.asyncEnabled = true;
+        controller.requestDeadlineMillis = deadlineMillis;
+        return controller;
+    }
+
+    /**
+     * Tests that thousands of concurrent cache misses, each waiting on
+     * a slow load, are handled at once instead of a thread pool's worth
+     * at a time, and that their deadline timers are cancelled once they
+     * are answered.
+     * @throws Exception
+     */
+    @Test
+    public void concurrentMissesDoNotQueue() throws Exception {
+        StubForecastService service = slowService(500);
+        ForecastController controller = asyncController(service, 10_000);
+        try (ExecutorService servlet = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                String zipcode = Integer.toString(10000 + i);
+                responses.add(servlet.submit(() -> {
+                    MockHttpServletResponse response = new MockHttpServletResponse();
+                    assertThat(await(controller.forecast(new MockHttpServletRequest(), response, "1 Main St", "Roseville", "CA", zipcode, null)))
+                        .isNull();
+                    return response;
+                }));
+            }
+            for (Future<MockHttpServletResponse> response : responses) {
+                assertThat(response.get(30, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+            }
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(20));
+            // Answered requests don't leave their deadline timers behind.
+            assertThat(controller.deadlineScheduler.getQueue()).isEmpty();
+        } finally {
+            controller.shutdown();
+            service.shutdown();
+        }
+        assertThat(service.fetches.get()).isEqualTo(REQUESTS);
+    }
+
+    /**
+     * Tests that a request that passes its deadline gets a 504 and that
+     * its load still caches the forecast.
+     * @throws Exception
+     */
+    @Test
+    public void deadlineAnswersGatewayTimeout() throws Exception {
+        StubForecastService service = slowService(500);
+        ForecastController controller = asyncController(service, 50);
+        try {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            long start = System.nanoTime();
+            Object result = await(controller.forecast(new MockHttpServletRequest(), response, "1 Main St", "Roseville", "CA", "95747", null));
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(400));
+            assertThat(result).isInstanceOf(ResponseStatusException.class)
+                .satisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT));
+            assertThat(response.getHeader(RequestTiming.SERVER_TIMING)).startsWith("cache;dur=");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (service.cache.getIfPresent(StubForecastService.gridKey("95747")) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(service.cache.getIfPresent(StubForecastService.gridKey("95747"))).isNotNull();
+
+            // The load finishing after the deadline doesn't touch the response.
+            assertThat(response.getContentAsString()).isEmpty();
+            assertThat(response.getHeader(RequestTiming.SERVER_TIMING)).doesNotContain("forecast;dur=");
+        } finally {
+            controller.shutdown();
+            service.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the result of an async request.
+     * @param result is the DeferredResult of the request.
+     * @return The result, or the exception the request failed with.
+     */
+    private static Object await(DeferredResult<Void> result) throws Exception {
+        CompletableFuture<Object> done = new CompletableFuture<>();
+        result.setResultHandler(done::complete);
+        return done.get(30, TimeUnit.SECONDS);
+    }
+}
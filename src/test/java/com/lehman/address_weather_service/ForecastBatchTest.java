@@ -0,0 +1,90 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Tests the batch forecast endpoint without making upstream requests.
+ */
+public class ForecastBatchTest {
+    /**
+     * Tests that addresses are deduplicated by grid cell and each gets
+     * its own result in order, including per-item errors.
+     * @throws Exception
+     */
+    @Test
+    public void batchDeduplicatesAndReportsPerItem() throws Exception {
+        StubForecastService service = new StubForecastService();
+        service.notFoundZipcode = "00000";
+        BatchForecastController controller = service.batchController();
+        List<Address> addresses = Arrays.asList(
+            new Address("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747"),
+            new Address("1 Main St", "Roseville", "CA", "95747"),
+            new Address("100 Sunrise Ave", "Roseville", "CA", "95661"),
+            new Address("Nowhere", "Nowhere", "CA", "00000"),
+            new Address(null, "Roseville", "CA", "95747")
+        );
+
+        String json = controller.forecastBatch(new MockHttpServletResponse(), addresses, null);
+        JsonNode results = new ObjectMapper().readTree(json).get("results");
+
+        assertThat(results.size()).isEqualTo(5);
+        assertThat(service.fetches.get()).isEqualTo(2);
+        assertThat(results.get(0).get("success").asBoolean()).isTrue();
+        assertThat(results.get(0).get("forecast")).isEqualTo(results.get(1).get("forecast"));
+        assertThat(results.get(2).get("zipcode").asText()).isEqualTo("95661");
+        assertThat(results.get(3).get("success").asBoolean()).isFalse();
+        assertThat(results.get(4).get("success").asBoolean()).isFalse();
+        assertThat(results.get(4).get("index").asInt()).isEqualTo(4);
+
+        // A second batch is served from the cache.
+        json = controller.forecastBatch(new MockHttpServletResponse(), addresses.subList(0, 3), null);
+        results = new ObjectMapper().readTree(json).get("results");
+        assertThat(results.get(0).get("cached").asBoolean()).isTrue();
+        assertThat(service.fetches.get()).isEqualTo(2);
+    }
+
+    /**
+     * Tests that upstream failures are returned per item.
+     * @throws Exception
+     */
+    @Test
+    public void batchReportsUpstreamFailures() throws Exception {
+        StubForecastService service = new StubForecastService();
+        service.failing = true;
+        BatchForecastController controller = service.batchController();
+
+        String json = controller.forecastBatch(new MockHttpServletResponse(),
+            List.of(new Address("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747")), null);
+        JsonNode result = new ObjectMapper().readTree(json).get("results").get(0);
+
+        assertThat(result.get("success").asBoolean()).isFalse();
+        assertThat(result.get("message").asText()).isEqualTo("Failed to get the forecast for the provided address.");
+    }
+}
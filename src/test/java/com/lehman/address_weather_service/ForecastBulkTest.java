@@ -0,0 +1,159 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the streaming bulk forecast endpoint without making upstream
+ * requests.
+ */
+public class ForecastBulkTest {
+    private static final String CSV = "street,city,state,zipcode\n"
+        + "1261 Pleasant Grove Blvd,Roseville,CA,95747\n"
+        + "\"1 Main St, Apt 2\",Roseville,CA,95747\n"
+        + "\n"
+        + "100 Sunrise Ave,Roseville,CA,95661\n"
+        + "Nowhere,Nowhere,CA,00000\n"
+        + ",Roseville,CA,95747\n";
+
+    private static List<JsonNode> bulk(BatchForecastController controller, String csv, String order, long offset) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/forecast/bulk");
+        request.setContent(csv.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.forecastBulk(request, response, order, offset, null);
+
+        assertThat(response.getContentType()).startsWith("application/x-ndjson");
+        ObjectMapper mapper = new ObjectMapper();
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.getContentAsString().split("\n")) {
+            lines.add(mapper.readTree(line));
+        }
+        return lines;
+    }
+
+    /**
+     * Tests that every row gets a line in input order, including the
+     * per-row errors, and that a job can resume from a row offset.
+     * @throws Exception
+     */
+    @Test
+    public void streamsResultsInInputOrder() throws Exception {
+        StubForecastService service = new StubForecastService();
+        service.notFoundZipcode = "00000";
+        BatchForecastController controller = service.batchController();
+
+        List<JsonNode> lines = bulk(controller, CSV, "input", 0);
+        assertThat(lines).hasSize(5);
+        for (int i = 0; i < lines.size(); i++) {
+            assertThat(lines.get(i).get("index").asInt()).isEqualTo(i);
+        }
+        assertThat(lines.get(0).get("success").asBoolean()).isTrue();
+        assertThat(lines.get(1).get("success").asBoolean()).isTrue();
+        assertThat(lines.get(2).get("forecast").get("n").asInt()).isGreaterThan(0);
+        assertThat(lines.get(3).get("message").asText()).isEqualTo("Forecast not found for the provided address.");
+        assertThat(lines.get(4).get("message").asText()).isEqualTo("The street, city, state and zipcode are required.");
+        assertThat(service.fetches.get()).isEqualTo(2);
+
+        List<JsonNode> resumed = bulk(controller, CSV, "input", 3);
+        assertThat(resumed).hasSize(2);
+        assertThat(resumed.get(0).get("index").asInt()).isEqualTo(3);
+        assertThat(resumed.get(1).get("index").asInt()).isEqualTo(4);
+    }
+
+    /**
+     * Tests that a large job in completion order returns every row while
+     * never loading more than the max in-flight rows at a time.
+     * @throws Exception
+     */
+    @Test
+    public void boundsRowsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        StubForecastService service = new StubForecastService();
+        BatchForecastController controller = new BatchForecastController(service) {
+            @Override
+            protected String bulkLine(long row, Address address, ForecastProjection projection) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                    return super.bulkLine(row, address, projection);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        controller.bulkMaxInFlight = 4;
+
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            csv.append(i).append(" Main St,Roseville,CA,").append(95600 + i % 50).append('\n');
+        }
+        List<JsonNode> lines = bulk(controller, csv.toString(), "completion", 0);
+
+        TreeSet<Integer> rows = new TreeSet<>();
+        for (JsonNode line : lines) {
+            assertThat(line.get("success").asBoolean()).isTrue();
+            rows.add(line.get("index").asInt());
+        }
+        assertThat(rows).hasSize(200);
+        assertThat(rows.first()).isEqualTo(0);
+        assertThat(rows.last()).isEqualTo(199);
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(controller.bulkMaxInFlight);
+        assertThat(service.fetches.get()).isEqualTo(50);
+    }
+
+    /**
+     * Tests the CSV parsing of quoted fields and headers.
+     * @throws Exception
+     */
+    @Test
+    public void readsCsvRows() throws Exception {
+        AddressCsvReader reader = new AddressCsvReader(new ByteArrayInputStream(
+            "Street,City,State,Zipcode\n\"1 \"\"A\"\" St, Unit 5\", Roseville ,CA,95747\n1 Main St,Roseville\n".getBytes(StandardCharsets.UTF_8)));
+
+        Address first = reader.next();
+        assertThat(reader.getRow()).isEqualTo(0);
+        assertThat(first.getStreet()).isEqualTo("1 \"A\" St, Unit 5");
+        assertThat(first.getCity()).isEqualTo("Roseville");
+        assertThat(first.getZipcode()).isEqualTo("95747");
+
+        Address second = reader.next();
+        assertThat(second.isComplete()).isFalse();
+        assertThat(reader.next()).isNull();
+        assertThat(reader.getRow()).isEqualTo(1);
+    }
+}
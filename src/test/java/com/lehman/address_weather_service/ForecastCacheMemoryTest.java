@@ -0,0 +1,206 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the byte limited and off-heap forecast cache storage.
+ */
+public class ForecastCacheMemoryTest {
+    /**
+     * Builds a forecast of about the provided size.
+     */
+    private static CachedForecast forecast(int size, char fill) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, fill);
+        long now = System.currentTimeMillis();
+        return new CachedForecast("{\"f\":\"" + new String(chars) + "\"}", now, now + 60000,
+            "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747");
+    }
+
+    /**
+     * Tests that the cache is limited by the bytes of its forecasts
+     * rather than the number of entries.
+     */
+    @Test
+    public void evictsByBytes() {
+        ForecastService service = new ForecastService(30, 1000, 100_000, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        for (int i = 0; i < 20; i++) {
+            service.putForecast("TST/" + i + ",0", forecast(20_000, 'a'));
+        }
+        service.cache.cleanUp();
+
+        // Only about 100KB of the 400KB of forecasts fit, even though
+        // the entry limit is much higher.
+        assertThat(service.cache.estimatedSize()).isBetween(1L, 5L);
+        assertThat(service.cache.policy().eviction().get().weightedSize().getAsLong()).isLessThanOrEqualTo(100_000);
+        assertThat(service.getCacheBytes(false)).isLessThanOrEqualTo(100_000);
+        assertThat(service.getCacheBytes(true)).isEqualTo(0);
+    }
+
+    /**
+     * Tests that cached projections are held to their share of the
+     * byte limit and counted in the heap bytes.
+     */
+    @Test
+    public void projectionsCountAgainstBytes() {
+        ForecastService service = new ForecastService(30, 1000, 100_000, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        for (int i = 0; i < 20; i++) {
+            service.projectionCache.put("etag-" + i + "|fields", forecast(5_000, 'p'));
+        }
+        service.projectionCache.cleanUp();
+
+        long projected = service.projectionCache.policy().eviction().get().weightedSize().getAsLong();
+        assertThat(projected).isPositive().isLessThanOrEqualTo(service.getProjectionMaxBytes());
+        assertThat(service.cache.policy().eviction().get().getMaximum()).isEqualTo(100_000 - service.getProjectionMaxBytes());
+        assertThat(service.getCacheBytes(false)).isEqualTo(projected);
+    }
+
+    /**
+     * Tests that an off-heap entry returns the same forecast, ETag and
+     * compressed copy as the heap entry it was made from.
+     */
+    @Test
+    public void offHeapEntryMatchesHeapEntry() {
+        CachedForecast heap = forecast(5_000, 'b').withCompressed();
+        CachedForecast offHeap = heap.offHeap();
+
+        assertThat(offHeap.isOffHeap()).isTrue();
+        assertThat(offHeap.getForecastBytes()).isEqualTo(heap.getForecastBytes());
+        assertThat(offHeap.getEtag()).isEqualTo(heap.getEtag());
+        assertThat(offHeap.getCompressed().getDeflated()).isEqualTo(heap.getCompressed().getDeflated());
+        assertThat(offHeap.getCompressed().getCrc()).isEqualTo(heap.getCompressed().getCrc());
+        // Blocks are rounded up to their size class.
+        assertThat(offHeap.getWeight()).isBetween(heap.getWeight(), heap.getWeight() + heap.getPayloadBytes() / 4);
+
+        CachedForecast revalidated = offHeap.revalidated(offHeap.getWrittenAt() + 1000, offHeap.getExpiresAt() + 1000, null);
+        assertThat(revalidated.isOffHeap()).isTrue();
+        assertThat(revalidated.getForecast()).isEqualTo(heap.getForecast());
+        assertThat(revalidated.getExpiresAt()).isEqualTo(heap.getExpiresAt() + 1000);
+    }
+
+    /**
+     * Tests that forecasts loaded with off-heap storage enabled are kept
+     * off the heap and still served.
+     * @throws Exception
+     */
+    @Test
+    public void servesOffHeapForecasts() throws Exception {
+        StubForecastService service = new StubForecastService();
+        service.cacheOffHeap = true;
+        service.cacheGzip = true;
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new ForecastController(service).forecast(new MockHttpServletRequest(), response, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", null);
+        assertThat(response.getContentAsString()).contains("\"n\":1");
+
+        CachedForecast entry = service.cache.getIfPresent(StubForecastService.gridKey("95747"));
+        assertThat(entry.isOffHeap()).isTrue();
+        assertThat(service.getCacheBytes(true)).isEqualTo(entry.getPayloadBytes());
+
+        response = new MockHttpServletResponse();
+        new ForecastController(service).forecast(new MockHttpServletRequest(), response, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", null);
+        assertThat(response.getContentAsString()).contains("\"n\":1").contains("\"cached\": true");
+        assertThat(service.fetches.get()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that an off-heap entry stays readable while a reader holds
+     * it after the cache releases it, and that its block is reused once
+     * both are done.
+     * @throws Exception
+     */
+    @Test
+    public void releasedBlocksAreReused() throws Exception {
+        CachedForecast heap = forecast(3_000, 'c').withCompressed();
+        CachedForecast entry = heap.offHeap();
+        CachedForecast revalidated = entry.revalidated(entry.getWrittenAt(), entry.getExpiresAt() + 1000, null);
+
+        // The cache drops the original entry while a response is writing it.
+        assertThat(entry.retain()).isTrue();
+        entry.release();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.writeForecast(out);
+        assertThat(out.toByteArray()).isEqualTo(heap.getForecastBytes());
+        entry.release();
+
+        // The revalidated copy still holds the block.
+        assertThat(revalidated.getForecast()).isEqualTo(heap.getForecast());
+        revalidated.release();
+        assertThat(entry.retain()).isFalse();
+        assertThatThrownBy(entry::getForecastBytes).isInstanceOf(ReleasedForecastException.class);
+
+        // A forecast of the same size class gets the freed block back.
+        long reserved = OffHeapCachedForecast.getPoolReservedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            CachedForecast churn = forecast(3_000, 'd').offHeap();
+            assertThat(churn.getForecast()).isEqualTo(forecast(3_000, 'd').getForecast());
+            churn.release();
+        }
+        assertThat(OffHeapCachedForecast.getPoolReservedBytes()).isLessThanOrEqualTo(reserved + (1 << 20));
+    }
+
+    /**
+     * Tests that a response for a cache hit is written from the
+     * off-heap entry and the cache releases it once it is evicted.
+     * @throws Exception
+     */
+    @Test
+    public void evictionReleasesOffHeapEntries() throws Exception {
+        ForecastService service = new ForecastService(30, 1000, 100_000, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        service.cacheOffHeap = true;
+        service.cacheGzip = true;
+        CachedForecast first = service.putForecast("TST/0,0", forecast(20_000, 'e'));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ForecastResponseWriter.write(request, response, first, true, false, System.currentTimeMillis());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertThat(new String(in.readAllBytes())).contains("eeee").endsWith("\"age\": 0 }");
+        }
+
+        // The admission policy may evict the newcomers first, so keep
+        // adding entries until the first one is evicted.
+        for (int i = 1; i < 1000 && service.cache.asMap().containsKey("TST/0,0"); i++) {
+            service.putForecast("TST/" + i + ",0", forecast(20_000, 'e'));
+            service.cache.cleanUp();
+        }
+        ForkJoinPool.commonPool().awaitQuiescence(5, TimeUnit.SECONDS);
+        assertThat(service.cache.getIfPresent("TST/0,0")).isNull();
+        assertThat(first.retain()).isFalse();
+        assertThatThrownBy(() -> ForecastResponseWriter.write(new MockHttpServletRequest(), new MockHttpServletResponse(),
+            first, true, false, System.currentTimeMillis())).isInstanceOf(ReleasedForecastException.class);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ForecastMetrics test class.
+ */
+public class ForecastMetricsTest {
+    /**
+     * Tests that a stage is timed and its upstream failures counted
+     * by status.
+     */
+    @Test
+    public void timesStagesAndCountsUpstreamErrors() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ForecastMetrics metrics = new ForecastMetrics(registry);
+
+        assertThat(metrics.time(ForecastMetrics.Stage.GEOCODE, () -> "ok")).isEqualTo("ok");
+        assertThatThrownBy(() -> metrics.time(ForecastMetrics.Stage.NWS_POINTS, () -> {
+            throw HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", null, null, null);
+        })).isInstanceOf(HttpServerErrorException.class);
+
+        assertThat(registry.get(ForecastMetrics.STAGE_TIMER).tag("stage", "geocode").timer().count()).isEqualTo(1);
+        assertThat(registry.get(ForecastMetrics.STAGE_TIMER).tag("stage", "nws.points").timer().count()).isEqualTo(1);
+        assertThat(registry.get(ForecastMetrics.UPSTREAM_ERRORS)
+            .tag("upstream", "nws").tag("status", "503").counter().count()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that forecast requests record the request and write stages
+     * and the forecast cache stats.
+     * @throws IOException
+     */
+    @Test
+    public void recordsForecastRequests() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StubForecastService service = new StubForecastService();
+        service.metrics = new ForecastMetrics(registry);
+        service.initMetrics();
+        ForecastController controller = new ForecastController(service);
+        try {
+            for (int i = 0; i < 3; i++) {
+                controller.forecast(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                    "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", null);
+            }
+
+            assertThat(registry.get(ForecastMetrics.STAGE_TIMER).tag("stage", "request").timer().count()).isEqualTo(3);
+            assertThat(registry.get(ForecastMetrics.STAGE_TIMER).tag("stage", "write").timer().count()).isEqualTo(3);
+            assertThat(registry.get("cache.gets").tag("cache", "forecast").tag("result", "hit").functionCounter().count())
+                .isEqualTo(2);
+            assertThat(registry.get(ForecastMetrics.REQUESTS_IN_FLIGHT).gauge().value()).isEqualTo(0);
+        } finally {
+            controller.shutdown();
+            service.shutdown();
+        }
+    }
+}
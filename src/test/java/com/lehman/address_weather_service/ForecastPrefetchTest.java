@@ -0,0 +1,110 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Tests prefetching of the most requested grid cells without making
+ * upstream requests.
+ */
+public class ForecastPrefetchTest {
+    private StubForecastService service;
+    private ForecastPrefetcher prefetcher;
+
+    @BeforeEach
+    public void setUp() {
+        this.service = new StubForecastService();
+        this.prefetcher = new ForecastPrefetcher(this.service);
+        this.prefetcher.prefetchEnabled = true;
+        this.prefetcher.prefetchHotKeys = 2;
+        this.prefetcher.prefetchIntervalSeconds = TimeUnit.HOURS.toSeconds(1);
+        this.prefetcher.prefetchLeadSeconds = TimeUnit.HOURS.toSeconds(1);
+        this.prefetcher.prefetchMaxPerInterval = 1;
+        this.prefetcher.initPrefetch();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.prefetcher.shutdown();
+        this.service.shutdown();
+    }
+
+    private void request(String zipcode, int times) throws Exception {
+        for (int i = 0; i < times; i++) {
+            this.service.getForecast("1 Main St", "Roseville", "CA", zipcode);
+        }
+    }
+
+    private void awaitRefreshes() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!this.service.refreshes.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Tests that the hottest grid cell is reloaded within the upstream
+     * call budget and that its next request counts as a prefetch hit.
+     * @throws Exception
+     */
+    @Test
+    public void prefetchesHottestWithinBudget() throws Exception {
+        request("95601", 5);
+        request("95602", 3);
+        request("95603", 1);
+        assertThat(this.service.fetches.get()).isEqualTo(3);
+
+        assertThat(this.prefetcher.prefetchHotKeys()).isEqualTo(1);
+        awaitRefreshes();
+        assertThat(this.service.fetches.get()).isEqualTo(4);
+        assertThat(this.service.cache.getIfPresent(StubForecastService.gridKey("95601")).getForecast()).isEqualTo("{\"n\":4}");
+
+        request("95601", 1);
+        assertThat(this.service.getPrefetchHitRate()).isEqualTo(1.0);
+
+        // Nothing is prefetched while the hot cells aren't near expiring.
+        this.prefetcher.prefetchLeadSeconds = 60;
+        assertThat(this.prefetcher.prefetchHotKeys()).isEqualTo(0);
+    }
+
+    /**
+     * Tests that the debug endpoint lists the hot set in order.
+     * @throws Exception
+     */
+    @Test
+    public void debugEndpointListsHotSet() throws Exception {
+        request("95602", 2);
+        request("95601", 4);
+        request("95603", 1);
+
+        String json = new CacheDebugController(this.service).hotGridCells(new MockHttpServletResponse());
+        assertThat(json).startsWith("{ \"hotKeys\": [{ \"key\": \"TST/95601,0\", \"frequency\": 4, \"cached\": true");
+        assertThat(json).contains("\"key\": \"TST/95602,0\"").doesNotContain("TST/95603,0");
+        assertThat(json).contains("\"prefetches\": 0").contains("\"prefetchHitRate\": 0.0");
+    }
+}
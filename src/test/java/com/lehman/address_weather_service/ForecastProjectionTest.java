@@ -0,0 +1,134 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ForecastProjection test class.
+ */
+public class ForecastProjectionTest {
+    private static final String FIELDS = "properties.periods.temperature, properties.periods.startTime,properties.periods.shortForecast";
+
+    private static byte[] forecast() throws IOException {
+        try (InputStream in = ForecastProjectionTest.class.getResourceAsStream("/NwsGovClientForecastResult1.json")) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Tests that only the requested fields of each period are kept.
+     * @throws Exception
+     */
+    @Test
+    public void projectsRequestedFields() throws Exception {
+        byte[] forecast = forecast();
+        ForecastProjection projection = ForecastProjection.parse(FIELDS);
+        byte[] projected = projection.project(forecast);
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode full = mapper.readTree(forecast);
+        JsonNode result = mapper.readTree(projected);
+        assertThat(result.size()).isEqualTo(1);
+        assertThat(result.get("properties").size()).isEqualTo(1);
+
+        JsonNode periods = result.get("properties").get("periods");
+        assertThat(periods.size()).isEqualTo(full.get("properties").get("periods").size());
+        for (int i = 0; i < periods.size(); i++) {
+            JsonNode period = periods.get(i);
+            JsonNode fullPeriod = full.get("properties").get("periods").get(i);
+            assertThat(period.size()).isEqualTo(3);
+            assertThat(period.get("temperature")).isEqualTo(fullPeriod.get("temperature"));
+            assertThat(period.get("startTime")).isEqualTo(fullPeriod.get("startTime"));
+            assertThat(period.get("shortForecast")).isEqualTo(fullPeriod.get("shortForecast"));
+        }
+        assertThat(projected.length).isLessThan(forecast.length / 2);
+    }
+
+    /**
+     * Tests that every spelling of the same fields has the same key and
+     * that a field covers the fields below it.
+     */
+    @Test
+    public void canonicalKey() {
+        String key = ForecastProjection.parse(FIELDS).getKey();
+        assertThat(key).isEqualTo("properties.periods.shortForecast,properties.periods.startTime,properties.periods.temperature");
+        assertThat(ForecastProjection.parse("properties.periods.shortForecast,properties.periods.temperature,properties.periods.startTime,").getKey())
+            .isEqualTo(key);
+        assertThat(ForecastProjection.parse("properties.periods.temperature,properties.periods,properties.periods.name").getKey())
+            .isEqualTo("properties.periods");
+    }
+
+    /**
+     * Tests that unknown fields are rejected.
+     */
+    @Test
+    public void rejectsUnknownFields() {
+        assertThatThrownBy(() -> ForecastProjection.parse("properties.periods.temp"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("properties.periods.temp");
+        assertThatThrownBy(() -> ForecastProjection.parse(" , "))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ForecastController(new StubForecastService()).forecast(new MockHttpServletRequest(), new MockHttpServletResponse(),
+            "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", "properties.nope"))
+            .isInstanceOf(ResponseStatusException.class)
+            .hasMessageContaining("400");
+    }
+
+    /**
+     * Tests that the forecast endpoint returns the projection and
+     * computes it once per forecast version.
+     * @throws Exception
+     */
+    @Test
+    public void endpointServesCachedProjection() throws Exception {
+        StubForecastService service = new StubForecastService();
+        ForecastController controller = new ForecastController(service);
+        long now = System.currentTimeMillis();
+        service.cache.put(StubForecastService.gridKey("95747"), new CachedForecast(
+            new String(forecast(), StandardCharsets.UTF_8), now, now + TimeUnit.MINUTES.toMillis(30), "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747"
+        ));
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            controller.forecast(new MockHttpServletRequest(), response, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", FIELDS);
+            assertThat(response.getStatus()).isEqualTo(200);
+            assertThat(response.getContentAsString()).contains("\"shortForecast\"").doesNotContain("\"detailedForecast\"");
+        }
+
+        assertThat(service.fetches.get()).isEqualTo(0);
+        assertThat(service.projectionCache.estimatedSize()).isEqualTo(1);
+        assertThat(service.projectionCache.stats().hitCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Tests the refresh-ahead and stale-while-revalidate behavior of the
+ * forecast cache without making upstream requests.
+ */
+public class ForecastRefreshTest {
+    /**
+     * Puts an entry in the cache with the provided age and duration.
+     */
+    private static void putEntry(StubForecastService service, long ageMillis, long ttlMillis) {
+        long writtenAt = System.currentTimeMillis() - ageMillis;
+        service.cache.put(StubForecastService.gridKey("95747"), new CachedForecast(
+            "{\"n\":0}", writtenAt, writtenAt + ttlMillis, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747"
+        ));
+    }
+
+    private static String forecast(StubForecastService service) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new ForecastController(service).forecast(new MockHttpServletRequest(), response, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", null);
+        return response.getContentAsString();
+    }
+
+    /**
+     * Tests that a hit past the refresh-ahead point returns the cached
+     * value and reloads it in the background.
+     * @throws Exception
+     */
+    @Test
+    public void refreshAheadReloadsInBackground() throws Exception {
+        StubForecastService service = new StubForecastService();
+        putEntry(service, TimeUnit.MINUTES.toMillis(20), TimeUnit.MINUTES.toMillis(30));
+
+        String result = forecast(service);
+        assertThat(result).contains("\"n\":0").contains("\"cached\": true").contains("\"stale\": false");
+
+        // Wait for the background reload to land in the cache.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.cache.getIfPresent(StubForecastService.gridKey("95747")).getForecast().equals("{\"n\":0}") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(service.fetches.get()).isEqualTo(1);
+        assertThat(forecast(service)).contains("\"n\":1").contains("\"cached\": true");
+    }
+
+    /**
+     * Tests that an expired entry is served as stale when the reload fails.
+     */
+    @Test
+    public void staleServedWhenReloadFails() throws IOException {
+        StubForecastService service = new StubForecastService();
+        service.failing = true;
+        putEntry(service, TimeUnit.MINUTES.toMillis(35), TimeUnit.MINUTES.toMillis(30));
+
+        String result = forecast(service);
+        assertThat(result).contains("\"n\":0").contains("\"stale\": true").contains("\"age\": 2100");
+    }
+
+    /**
+     * Tests that an expired entry is replaced when the reload succeeds in time.
+     */
+    @Test
+    public void expiredEntryReloadedWhenUpstreamHealthy() throws IOException {
+        StubForecastService service = new StubForecastService();
+        putEntry(service, TimeUnit.MINUTES.toMillis(35), TimeUnit.MINUTES.toMillis(30));
+
+        String result = forecast(service);
+        assertThat(result).contains("\"n\":1").contains("\"cached\": false").contains("\"stale\": false");
+    }
+
+    /**
+     * Tests that an entry with NWS validators is revalidated with a
+     * conditional request and keeps its forecast when not modified,
+     * taking its new expiration from the NWS Expires header.
+     * @throws IOException
+     */
+    @Test
+    public void expiredEntryRevalidatedUpstream() throws IOException {
+        long expires = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(45);
+        StubForecastService service = new StubForecastService();
+        service.cacheHonorUpstreamExpires = true;
+        service.nwsGovClient = new NwsGovClient("http://localhost/points/{latitude},{longitude}") {
+            @Override
+            public NwsForecast revalidate(NwsForecast previous) {
+                return new NwsForecast(null, previous.getForecastUrl(), previous.getEtag(), null, expires, true);
+            }
+        };
+        long writtenAt = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(35);
+        service.cache.put(StubForecastService.gridKey("95747"), new CachedForecast("{\"n\":0}".getBytes(), null, writtenAt, writtenAt + TimeUnit.MINUTES.toMillis(30),
+            "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747",
+            new NwsForecast(null, "http://localhost/gridpoints/STO/50,80/forecast", "\"abc\"", null, -1, false)));
+
+        String result = forecast(service);
+        assertThat(result).contains("\"n\":0").contains("\"cached\": false").contains("\"stale\": false");
+        assertThat(service.fetches.get()).isEqualTo(0);
+        assertThat(service.cache.getIfPresent(StubForecastService.gridKey("95747")).getExpiresAt()).isEqualTo(expires);
+    }
+}
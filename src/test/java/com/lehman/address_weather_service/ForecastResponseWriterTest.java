@@ -0,0 +1,149 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * ForecastResponseWriter test class.
+ */
+public class ForecastResponseWriterTest {
+    private static final String FORECAST = "{\"type\": \"Feature\", \"properties\": {\"periods\": [{\"name\": \"Tonight\", "
+        + "\"detailedForecast\": \"Mostly clear, with a low around 48. Mostly clear, with a low around 48.\"}]}}";
+
+    private static CachedForecast entry() {
+        long now = System.currentTimeMillis();
+        return new CachedForecast(FORECAST, now - 5000, now + 60000, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747")
+            .withCompressed();
+    }
+
+    /**
+     * Tests that the plain response is the envelope around the forecast.
+     * @throws IOException
+     */
+    @Test
+    public void writesPlainResponse() throws IOException {
+        CachedForecast entry = entry();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ForecastResponseWriter.write(new MockHttpServletRequest(), response, entry, true, false, entry.getWrittenAt() + 5000);
+
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getContentAsString())
+            .isEqualTo("{ \"forecast\": " + FORECAST + ", \"cached\": true, \"stale\": false, \"age\": 5 }");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+    }
+
+    /**
+     * Tests that the gzip response decompresses to the plain response.
+     * @throws IOException
+     */
+    @Test
+    public void writesGzipResponse() throws IOException {
+        CachedForecast entry = entry();
+        MockHttpServletResponse plain = new MockHttpServletResponse();
+        ForecastResponseWriter.write(new MockHttpServletRequest(), plain, entry, true, true, entry.getWrittenAt() + 5000);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "deflate, gzip;q=0.8");
+        MockHttpServletResponse gzip = new MockHttpServletResponse();
+        ForecastResponseWriter.write(request, gzip, entry, true, true, entry.getWrittenAt() + 5000);
+
+        assertThat(gzip.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(gzip.getContentLength()).isEqualTo(gzip.getContentAsByteArray().length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getContentAsByteArray()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(plain.getContentAsString());
+        }
+    }
+
+    /**
+     * Tests that gzip with a zero quality value is not used.
+     */
+    @Test
+    public void acceptsGzipHonorsQuality() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "gzip;q=0, br");
+        assertThat(ForecastResponseWriter.acceptsGzip(request)).isFalse();
+    }
+
+    /**
+     * Tests that combined CRC32 values match the CRC32 of the
+     * concatenated bytes.
+     */
+    @Test
+    public void crc32CombineMatches() {
+        byte[] first = FORECAST.getBytes(StandardCharsets.UTF_8);
+        byte[] second = ", \"cached\": true }".getBytes(StandardCharsets.UTF_8);
+        CRC32 all = new CRC32();
+        all.update(first);
+        all.update(second);
+        CRC32 a = new CRC32();
+        a.update(first);
+        CRC32 b = new CRC32();
+        b.update(second);
+        assertThat(ForecastResponseWriter.crc32Combine(a.getValue(), b.getValue(), second.length)).isEqualTo(all.getValue());
+    }
+
+    /**
+     * Tests that the ETag and Cache-Control headers are set and that a
+     * matching If-None-Match gets a 304 without a body.
+     * @throws IOException
+     */
+    @Test
+    public void conditionalRequestGetsNotModified() throws IOException {
+        CachedForecast entry = entry();
+        long now = entry.getWrittenAt() + 5000;
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        ForecastResponseWriter.write(new MockHttpServletRequest(), first, entry, true, false, now);
+        assertThat(first.getHeader("ETag")).isEqualTo(entry.getEtag());
+        assertThat(first.getHeader("Cache-Control")).isEqualTo("max-age=60");
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"other\", " + first.getHeader("ETag").substring(2));
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        ForecastResponseWriter.write(request, second, entry, true, false, now);
+        assertThat(second.getStatus()).isEqualTo(304);
+        assertThat(second.getContentAsByteArray().length).isEqualTo(0);
+        assertThat(second.getHeader("ETag")).isEqualTo(entry.getEtag());
+    }
+
+    /**
+     * Tests that a shed request gets a 503 with when to retry.
+     * @throws IOException
+     */
+    @Test
+    public void writesUnavailableWithRetryAfter() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ForecastResponseWriter.writeUnavailable(response, 3);
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("3");
+        assertThat(response.getContentAsString()).contains("\"success\": false");
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.lang.reflect.Field;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the native image hints cover the Caffeine classes the
+ * application's caches are actually built with.
+ */
+public class ForecastRuntimeHintsTest {
+    /**
+     * Tests the cache and node classes of every cache, with the forecast
+     * cache limited by entries and by bytes.
+     * @throws Exception
+     */
+    @Test
+    public void hintsCoverCacheClasses() throws Exception {
+        RuntimeHints hints = new RuntimeHints();
+        new ForecastRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        ForecastService byEntries = new ForecastService(30, 1000, 0, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        ForecastService byBytes = new ForecastService(30, 1000, 1_000_000, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        for (Cache<?, ?> cache : new Cache<?, ?>[] {
+                byEntries.cache, byBytes.cache, byEntries.geocodeCache, byEntries.pointsCache, byEntries.projectionCache,
+                byBytes.projectionCache,
+                byEntries.negativeCache }) {
+            Object map = cache.asMap();
+            assertThat(RuntimeHintsPredicates.reflection().onType(map.getClass())).accepts(hints);
+            assertThat(RuntimeHintsPredicates.reflection().onType(nodeFactory(map).getClass())).accepts(hints);
+        }
+        assertThat(RuntimeHintsPredicates.reflection().onType(Address.class)).accepts(hints);
+    }
+
+    /**
+     * Gets the Caffeine node factory of the bounded cache map.
+     */
+    private static Object nodeFactory(Object map) throws Exception {
+        for (Class<?> type = map.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField("nodeFactory");
+                field.setAccessible(true);
+                return field.get(map);
+            } catch (NoSuchFieldException e) {
+                // Declared on a superclass.
+            }
+        }
+        throw new IllegalStateException("No node factory on " + map.getClass());
+    }
+}
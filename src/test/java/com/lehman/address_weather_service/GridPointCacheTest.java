@@ -0,0 +1,108 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Tests that forecasts are cached by NWS grid cell, so addresses in
+ * different zipcodes share a cell's forecast and addresses in the same
+ * zipcode get their own cell's forecast.
+ */
+public class GridPointCacheTest {
+    /**
+     * Tests that the points lookup and forecast are shared by every
+     * address in a grid cell.
+     * @throws Exception
+     */
+    @Test
+    public void forecastsSharedByGridCell() throws Exception {
+        AtomicInteger geocodes = new AtomicInteger();
+        AtomicInteger points = new AtomicInteger();
+        AtomicInteger forecasts = new AtomicInteger();
+
+        ForecastService service = new ForecastService(30, 1000, 0, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        service.censusGovGeocodeClient = new CensusGovGeocodeClient("http://localhost/geocoder") {
+            @Override
+            public Coordinates geocode(String street, String city, String state, String zipcode) {
+                geocodes.incrementAndGet();
+                Coordinates coordinates = new Coordinates();
+                // Both Main St addresses round to the same point.
+                if (street.startsWith("1 Main")) {
+                    coordinates.set(38.77101, -121.31601);
+                } else if (street.startsWith("2 Main")) {
+                    coordinates.set(38.77104, -121.31599);
+                } else {
+                    coordinates.set(38.9, -121.5);
+                }
+                return coordinates;
+            }
+        };
+        service.nwsGovClient = new NwsGovClient("http://localhost/points/{latitude},{longitude}") {
+            @Override
+            public GridPoint getGridPoint(Coordinates coordinates) {
+                points.incrementAndGet();
+                int x = coordinates.getLatitude() < 38.8 ? 53 : 60;
+                return new GridPoint("STO", x, 82, "http://localhost/gridpoints/STO/" + x + ",82/forecast");
+            }
+
+            @Override
+            public NwsForecast fetchForecast(GridPoint point) {
+                forecasts.incrementAndGet();
+                return new NwsForecast(forecastOf(point.getKey()), point.getForecastUrl(), null, null, -1, false);
+            }
+        };
+
+        try {
+            // Different zipcodes in the same cell share one load.
+            ForecastResult first = service.getForecast("1 Main St", "Roseville", "CA", "95747");
+            ForecastResult second = service.getForecast("2 Main St", "Roseville", "CA", "95678");
+            assertThat(first.getEntry().getForecast()).isEqualTo(forecastOf("STO/53,82"));
+            assertThat(second.isCached()).isTrue();
+            assertThat(second.getEntry()).isSameAs(first.getEntry());
+            assertThat(points.get()).isEqualTo(1);
+            assertThat(forecasts.get()).isEqualTo(1);
+
+            // Another address in the first zipcode that is in another cell.
+            ForecastResult third = service.getForecast("9000 Far Rd", "Roseville", "CA", "95747");
+            assertThat(third.getEntry().getForecast()).isEqualTo(forecastOf("STO/60,82"));
+            assertThat(forecasts.get()).isEqualTo(2);
+
+            // Repeat lookups are served from the caches.
+            assertThat(service.getForecast("1 Main St", "Roseville", "CA", "95747").isCached()).isTrue();
+            assertThat(service.getCachedForecast("2 Main St", "Roseville", "CA", "95678")).isNotNull();
+            assertThat(geocodes.get()).isEqualTo(3);
+            assertThat(points.get()).isEqualTo(2);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * Gets a minimal forecast naming the grid cell in its one period.
+     */
+    private static String forecastOf(String key) {
+        return "{\"properties\":{\"periods\":[{\"name\":\"" + key + "\"}]}}";
+    }
+}
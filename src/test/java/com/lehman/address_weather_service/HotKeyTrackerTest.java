@@ -0,0 +1,75 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HotKeyTracker and FrequencySketch test class.
+ */
+public class HotKeyTrackerTest {
+    /**
+     * Tests that the hot set holds the most requested keys in order.
+     */
+    @Test
+    public void tracksMostRequestedKeys() {
+        HotKeyTracker tracker = new HotKeyTracker(3, 1000);
+        for (int i = 0; i < 500; i++) {
+            tracker.record("TST/" + i + ",0");
+        }
+        for (int i = 0; i < 50; i++) {
+            tracker.record("STO/53,82");
+            if (i % 2 == 0) {
+                tracker.record("MTR/85,105");
+            }
+            if (i % 5 == 0) {
+                tracker.record("LOX/154,44");
+            }
+        }
+
+        List<HotKeyTracker.HotKey> hot = tracker.getHotKeys();
+        assertThat(hot).extracting(HotKeyTracker.HotKey::getKey).containsExactly("STO/53,82", "MTR/85,105", "LOX/154,44");
+        assertThat(hot.get(0).getFrequency()).isGreaterThanOrEqualTo(50);
+        assertThat(tracker.frequency("TST/1,0")).isLessThan(10);
+    }
+
+    /**
+     * Tests that counts are halved once the sample size is reached so
+     * that old popularity fades.
+     */
+    @Test
+    public void sketchAgesCounts() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("STO/53,82");
+        }
+        assertThat(sketch.frequency("STO/53,82")).isEqualTo(100);
+
+        // The sketch is 32 wide, so it ages after 320 increments.
+        for (int i = 0; i < 220; i++) {
+            sketch.increment("MTR/85," + (i % 8));
+        }
+        assertThat(sketch.frequency("STO/53,82")).isBetween(50, 60);
+    }
+}
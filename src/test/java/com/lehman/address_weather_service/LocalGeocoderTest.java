@@ -0,0 +1,88 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * LocalGeocoder test class.
+ */
+public class LocalGeocoderTest {
+    private static Path resource(String name) throws URISyntaxException {
+        return Path.of(LocalGeocoderTest.class.getResource("/" + name).toURI());
+    }
+
+    private static LocalGeocoder load(LocalGeocoder.Precision precision) throws IOException, URISyntaxException {
+        LocalGeocoder geocoder = new LocalGeocoder(precision);
+        geocoder.loadZctaCentroids(resource("LocalGeocoderZcta.txt"));
+        geocoder.loadAddressRanges(resource("LocalGeocoderAddressRanges.csv"));
+        return geocoder;
+    }
+
+    /**
+     * Tests that zipcodes resolve to their centroids, with unknown or
+     * malformed zipcodes left to the Census Bureau.
+     * @throws Exception
+     */
+    @Test
+    public void resolvesZipcodeCentroids() throws Exception {
+        LocalGeocoder geocoder = load(LocalGeocoder.Precision.ZIP);
+        assertThat(geocoder.getZipcodeCount()).isEqualTo(3);
+
+        Coordinates coordinates = geocoder.geocode("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747-1234");
+        assertThat(coordinates.getLatitude()).isEqualTo(38.778095);
+        assertThat(coordinates.getLongitude()).isEqualTo(-121.365723);
+        assertThat(geocoder.geocode("1 Main St", "San Juan", "PR", "00601").getLatitude()).isEqualTo(18.180555);
+
+        assertThat(geocoder.geocode("1 Main St", "Nowhere", "CA", "99999")).isNull();
+        assertThat(geocoder.geocode("1 Main St", "Nowhere", "CA", "9574")).isNull();
+        assertThat(geocoder.geocode("1 Main St", "Nowhere", "CA", "ABCDE")).isNull();
+    }
+
+    /**
+     * Tests that addresses are interpolated along the matching range
+     * and that a missing range is left to the Census Bureau.
+     * @throws Exception
+     */
+    @Test
+    public void interpolatesAddressRanges() throws Exception {
+        LocalGeocoder geocoder = load(LocalGeocoder.Precision.ADDRESS);
+        assertThat(geocoder.getAddressRangeCount()).isEqualTo(4);
+
+        Coordinates coordinates = geocoder.geocode("1250 Pleasant Grove Blvd.", "Roseville", "CA", "95747");
+        assertThat(coordinates.getLatitude()).isCloseTo(38.7720, within(1e-9));
+        assertThat(coordinates.getLongitude()).isCloseTo(-121.3150, within(1e-9));
+
+        // Ranges numbered high to low.
+        coordinates = geocoder.geocode("150 Foothills Boulevard", "Roseville", "CA", "95747");
+        assertThat(coordinates.getLatitude()).isCloseTo(38.7850, within(1e-9));
+
+        assertThat(geocoder.geocode("1500 Pleasant Grove Blvd", "Roseville", "CA", "95747")).isNull();
+        assertThat(geocoder.geocode("1250 Pleasant Grove Blvd", "Roseville", "CA", "95678")).isNull();
+        assertThat(geocoder.geocode("Pleasant Grove Blvd", "Roseville", "CA", "95747")).isNull();
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests that upstream misses and failures are kept in the negative
+ * cache and that unusable forecasts are never cached.
+ */
+public class NegativeCacheTest {
+    private static final String VALID = "{\"properties\":{\"periods\":[{\"number\":1}]}}";
+
+    private final AtomicInteger geocodes = new AtomicInteger();
+    private final AtomicInteger points = new AtomicInteger();
+    private final AtomicInteger forecasts = new AtomicInteger();
+
+    private ForecastService service;
+    private volatile Function<GridPoint, NwsForecast> forecast;
+
+    @BeforeEach
+    public void setUp() {
+        this.service = new ForecastService(30, 1000, 0, 60, 1000, 60, 1000, 0, 10, 200, 300, 15, 1000);
+        this.service.censusGovGeocodeClient = new CensusGovGeocodeClient("http://localhost/geocoder") {
+            @Override
+            public Coordinates geocode(String street, String city, String state, String zipcode) {
+                geocodes.incrementAndGet();
+                if (street.startsWith("0 Nowhere")) {
+                    return null;
+                }
+                Coordinates coordinates = new Coordinates();
+                coordinates.set(street.startsWith("1 Ocean") ? 30.0 : 38.77, -121.31);
+                return coordinates;
+            }
+        };
+        this.service.nwsGovClient = new NwsGovClient("http://localhost/points/{latitude},{longitude}") {
+            @Override
+            public GridPoint getGridPoint(Coordinates coordinates) {
+                points.incrementAndGet();
+                if (coordinates.getLatitude() < 31) {
+                    throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), new byte[0], null);
+                }
+                return new GridPoint("STO", 53, 82, "http://localhost/gridpoints/STO/53,82/forecast");
+            }
+
+            @Override
+            public NwsForecast fetchForecast(GridPoint point) {
+                forecasts.incrementAndGet();
+                return forecast.apply(point);
+            }
+        };
+        this.forecast = point -> new NwsForecast(VALID, point.getForecastUrl(), null, null, -1, false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.service.shutdown();
+    }
+
+    /**
+     * Tests that an address without a geocode match and a point
+     * without an NWS forecast are each looked up only once.
+     * @throws Exception
+     */
+    @Test
+    public void notFoundLookedUpOnce() throws Exception {
+        assertThat(this.service.getForecast("0 Nowhere Rd", "Roseville", "CA", "95747")).isNull();
+        assertThat(this.service.getForecast("0 Nowhere Road", "Roseville", "CA", "95747")).isNull();
+        assertThat(this.geocodes.get()).isEqualTo(1);
+
+        assertThat(this.service.getForecast("1 Ocean Dr", "Roseville", "CA", "95747")).isNull();
+        assertThat(this.service.getForecast("1 Ocean Dr", "Roseville", "CA", "95747")).isNull();
+        assertThat(this.points.get()).isEqualTo(1);
+        assertThat(this.forecasts.get()).isEqualTo(0);
+        assertThat(this.service.negativeCache.estimatedSize()).isEqualTo(2);
+    }
+
+    /**
+     * Tests that an empty forecast is never cached, that repeats fail
+     * fast while the error is remembered, and that a valid forecast is
+     * cached once it has expired.
+     * @throws Exception
+     */
+    @Test
+    public void invalidForecastNotCached() throws Exception {
+        this.forecast = point -> new NwsForecast("{}", point.getForecastUrl(), null, null, -1, false);
+        assertThatThrownBy(() -> this.service.getForecast("1 Main St", "Roseville", "CA", "95747"))
+            .isInstanceOf(InvalidForecastException.class);
+        assertThat(this.service.cache.getIfPresent("STO/53,82")).isNull();
+
+        assertThatThrownBy(() -> this.service.getForecast("1 Main St", "Roseville", "CA", "95747"))
+            .isInstanceOf(UpstreamUnavailableException.class)
+            .satisfies(e -> assertThat(((UpstreamUnavailableException) e).getRetryAfterSeconds()).isBetween(1L, 15L));
+        assertThat(this.forecasts.get()).isEqualTo(1);
+
+        this.forecast = point -> new NwsForecast(VALID, point.getForecastUrl(), null, null, -1, false);
+        this.service.negativeCache.invalidateAll();
+        assertThat(this.service.getForecast("1 Main St", "Roseville", "CA", "95747").getEntry().getForecast()).isEqualTo(VALID);
+        assertThat(this.service.cache.getIfPresent("STO/53,82")).isNotNull();
+        assertThat(this.forecasts.get()).isEqualTo(2);
+    }
+
+    /**
+     * Tests that a server error is remembered but throttling isn't,
+     * since the upstream scheduler already backs off on it.
+     * @throws Exception
+     */
+    @Test
+    public void serverErrorsRememberedThrottlingNot() throws Exception {
+        this.forecast = point -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", new HttpHeaders(), new byte[0], null);
+        };
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> this.service.getForecast("1 Main St", "Roseville", "CA", "95747"))
+                .isInstanceOf(HttpClientErrorException.class);
+        }
+        assertThat(this.forecasts.get()).isEqualTo(2);
+
+        this.forecast = point -> {
+            throw HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "Bad Gateway", new HttpHeaders(), new byte[0], null);
+        };
+        assertThatThrownBy(() -> this.service.getForecast("1 Main St", "Roseville", "CA", "95747"))
+            .isInstanceOf(HttpServerErrorException.class);
+        assertThatThrownBy(() -> this.service.getForecast("1 Main St", "Roseville", "CA", "95747"))
+            .isInstanceOf(UpstreamUnavailableException.class);
+        assertThat(this.forecasts.get()).isEqualTo(3);
+    }
+}
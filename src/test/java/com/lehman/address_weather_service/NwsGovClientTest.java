@@ -25,12 +25,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.testcontainers.shaded.com.fasterxml.jackson.databind.JsonNode;
 import org.testcontainers.shaded.com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -44,6 +50,9 @@ public class NwsGovClientTest {
     @Value( "${weatherservice.nwsUrl}" )
 	protected String nwsServiceUrl;
 
+    @Value("classpath:NwsGovClientPointsResult1.json")
+    private Resource pointsResult;
+
     private NwsGovClient client;
 
     /**
@@ -77,4 +86,52 @@ public class NwsGovClientTest {
         assertThat(root.get("type").asText()).isEqualTo("Feature");
         assertThat(root.get("properties")).isNotNull();
     }
+
+    /**
+     * Tests that coordinates are formatted the same way as the
+     * DecimalFormat("###.###") pattern used for the points URL.
+     */
+    @Test
+    public void formatCoordinateTest() {
+        DecimalFormat df = new DecimalFormat("###.###");
+        double[] values = { 38.771887717945, -121.316399912491, 38.7, -121.0, 0.0, 45.0005, 12.3456 };
+        for (double value : values) {
+            assertThat(NwsGovClient.formatCoordinate(value)).isEqualTo(df.format(value));
+        }
+    }
+
+    /**
+     * Tests that the streaming parse of the points response returns
+     * the same grid cell as the tree parse.
+     * @throws IOException
+     */
+    @Test
+    public void getGridPointFromPointsStreamTest() throws IOException {
+        GridPoint expected = this.client.getGridPointFromPointsJson(
+            this.pointsResult.getContentAsString(StandardCharsets.UTF_8)
+        );
+        assertThat(expected.getKey()).isEqualTo("STO/53,82");
+        assertThat(expected.getForecastUrl()).isEqualTo("https://api.weather.gov/gridpoints/STO/53,82/forecast");
+
+        try (InputStream in = this.pointsResult.getInputStream()) {
+            GridPoint point = this.client.getGridPointFromPointsStream(in);
+            assertThat(point.getGridId()).isEqualTo(expected.getGridId());
+            assertThat(point.getGridX()).isEqualTo(expected.getGridX());
+            assertThat(point.getGridY()).isEqualTo(expected.getGridY());
+            assertThat(point.getForecastUrl()).isEqualTo(expected.getForecastUrl());
+        }
+    }
+
+    /**
+     * Tests that the body is read to the end after the streaming parse
+     * has its fields, so the connection can be reused.
+     * @throws IOException
+     */
+    @Test
+    public void streamingParseDrainsBody() throws IOException {
+        MockClientHttpResponse response = new MockClientHttpResponse(this.pointsResult.getContentAsByteArray(), HttpStatus.OK);
+        GridPoint point = UpstreamResponses.parseAndDrain(response, this.client::getGridPointFromPointsStream);
+        assertThat(point.getKey()).isEqualTo("STO/53,82");
+        assertThat(response.getBody().available()).isEqualTo(0);
+    }
 }
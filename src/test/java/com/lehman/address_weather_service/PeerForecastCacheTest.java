@@ -0,0 +1,193 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Tests the peer forecast cache with two nodes on localhost ports,
+ * each serving the peer endpoint of its own forecast service.
+ */
+public class PeerForecastCacheTest {
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<StubForecastService> services = new ArrayList<>();
+    private final List<PeerForecastController> controllers = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+
+    private static final String SECRET = "test-secret";
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            this.servers.add(server);
+            this.urls.add("http://localhost:" + server.getAddress().getPort());
+        }
+        for (int i = 0; i < 2; i++) {
+            StubForecastService service = new StubForecastService();
+            service.nwsGovClient = new NwsGovClient("http://localhost/points/{latitude},{longitude}");
+            service.cacheTier = new PeerForecastCache(RestClient.create(), this.urls.get(i), this.urls, 64, 60000, SECRET);
+            this.services.add(service);
+            PeerForecastController controller = new PeerForecastController(service);
+            this.controllers.add(controller);
+
+            HttpServer server = this.servers.get(i);
+            server.createContext(PeerForecastCache.PEER_PATH, exchange -> {
+                MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(exchange.getRequestURI()).build().getQueryParams();
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                controller.peerForecast(response, exchange.getRequestHeaders().getFirst(PeerForecastCache.SECRET_HEADER), param(params, "key"), param(params, "forecastUrl"), param(params, "street"),
+                    param(params, "city"), param(params, "state"), param(params, "zipcode"));
+                byte[] body = response.getContentAsByteArray();
+                exchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.servers.forEach(server -> server.stop(0));
+        this.services.forEach(ForecastService::shutdown);
+    }
+
+    private static String param(MultiValueMap<String, String> params, String name) {
+        return URLDecoder.decode(params.getFirst(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds a zipcode whose grid cell is owned by the node.
+     */
+    private String zipcodeOwnedBy(int node) {
+        PeerForecastCache tier = (PeerForecastCache) this.services.get(0).cacheTier;
+        for (int zip = 95600; ; zip++) {
+            String zipcode = String.valueOf(zip);
+            if (tier.getOwner(StubForecastService.gridKey(zipcode)).equals(this.urls.get(node))) {
+                return zipcode;
+            }
+        }
+    }
+
+    /**
+     * Tests that a forecast is loaded once by its owner and shared with
+     * the other node without being cached there.
+     * @throws Exception
+     */
+    @Test
+    public void nonOwnerGetsForecastFromOwner() throws Exception {
+        String zipcode = zipcodeOwnedBy(1);
+
+        ForecastResult fromNonOwner = this.services.get(0).getForecast("1 Main St & 2nd", "Roseville", "CA", zipcode);
+        ForecastResult fromOwner = this.services.get(1).getForecast("1 Main St & 2nd", "Roseville", "CA", zipcode);
+
+        assertThat(this.services.get(0).fetches.get()).isEqualTo(0);
+        assertThat(this.services.get(1).fetches.get()).isEqualTo(1);
+        assertThat(fromOwner.isCached()).isTrue();
+        assertThat(fromNonOwner.getEntry().getForecast()).isEqualTo(fromOwner.getEntry().getForecast());
+        assertThat(fromNonOwner.getEntry().getStreet()).isEqualTo("1 Main St & 2nd");
+
+        // The non-owner doesn't keep its own copy, it asks the owner again.
+        String key = StubForecastService.gridKey(zipcode);
+        assertThat(this.services.get(0).cache.getIfPresent(key)).isNull();
+        assertThat(this.services.get(1).cache.getIfPresent(key)).isNotNull();
+        ForecastResult again = this.services.get(0).getForecast("1 Main St & 2nd", "Roseville", "CA", zipcode);
+        assertThat(again.getEntry().getForecast()).isEqualTo(fromOwner.getEntry().getForecast());
+        assertThat(this.services.get(0).fetches.get()).isEqualTo(0);
+        assertThat(this.services.get(1).fetches.get()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that the owner loads locally and that a node loads locally
+     * when the owner is down.
+     * @throws Exception
+     */
+    @Test
+    public void loadsLocallyWhenOwnerOrOwnerIsDown() throws Exception {
+        String owned = zipcodeOwnedBy(0);
+        this.services.get(0).getForecast("1 Main St", "Roseville", "CA", owned);
+        assertThat(this.services.get(0).fetches.get()).isEqualTo(1);
+
+        this.servers.get(1).stop(0);
+        String zipcode = zipcodeOwnedBy(1);
+        ForecastResult result = this.services.get(0).getForecast("1 Main St", "Roseville", "CA", zipcode);
+        assertThat(result.getEntry().getForecast()).isEqualTo("{\"n\":2}");
+        assertThat(this.services.get(0).fetches.get()).isEqualTo(2);
+        assertThat(this.services.get(1).fetches.get()).isEqualTo(0);
+    }
+
+    /**
+     * Tests that the peer endpoint refuses requests without the secret,
+     * for cells the node doesn't own or with a key that doesn't match
+     * the forecast URL.
+     * @throws Exception
+     */
+    @Test
+    public void peerEndpointRefusesUnauthorizedRequests() throws Exception {
+        StubForecastService owner = this.services.get(1);
+        PeerForecastController ownerController = this.controllers.get(1);
+        String zipcode = zipcodeOwnedBy(1);
+        String key = StubForecastService.gridKey(zipcode);
+        String url = "http://localhost/gridpoints/" + key + "/forecast";
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ownerController.peerForecast(response, null, key, url, "1 Main St", "Roseville", "CA", zipcode);
+        assertThat(response.getStatus()).isEqualTo(404);
+
+        response = new MockHttpServletResponse();
+        ownerController.peerForecast(response, "wrong", key, url, "1 Main St", "Roseville", "CA", zipcode);
+        assertThat(response.getStatus()).isEqualTo(404);
+
+        String other = zipcodeOwnedBy(0);
+        String otherKey = StubForecastService.gridKey(other);
+        response = new MockHttpServletResponse();
+        ownerController.peerForecast(response, SECRET, otherKey, "http://localhost/gridpoints/" + otherKey + "/forecast",
+            "1 Main St", "Roseville", "CA", other);
+        assertThat(response.getStatus()).isEqualTo(404);
+
+        response = new MockHttpServletResponse();
+        ownerController.peerForecast(response, SECRET, key, "http://localhost/gridpoints/" + otherKey + "/forecast",
+            "1 Main St", "Roseville", "CA", zipcode);
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(owner.fetches.get()).isEqualTo(0);
+
+        response = new MockHttpServletResponse();
+        ownerController.peerForecast(response, SECRET, key, url, "1 Main St", "Roseville", "CA", zipcode);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(owner.fetches.get()).isEqualTo(1);
+    }
+}
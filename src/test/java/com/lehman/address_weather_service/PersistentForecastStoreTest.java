@@ -0,0 +1,224 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * PersistentForecastStore test class.
+ */
+public class PersistentForecastStoreTest {
+    @TempDir
+    Path dir;
+
+    private static CachedForecast entry(String forecast, long writtenAt) {
+        return new CachedForecast(forecast, writtenAt, writtenAt + 60000, "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747");
+    }
+
+    /**
+     * Tests that appended entries are read back with the latest
+     * record winning for each key.
+     * @throws IOException
+     */
+    @Test
+    public void appendAndLoad() throws IOException {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        PersistentForecastStore store = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of);
+        store.open();
+        store.append("95747", entry("{\"n\":1}", 1000));
+        store.append("95747", entry("{\"n\":2}", 2000));
+        store.append("95678", entry("{\"n\":3}", 3000));
+        store.close();
+
+        Map<String, CachedForecast> loaded = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of).load();
+        assertThat(loaded.size()).isEqualTo(2);
+        assertThat(loaded.get("95747").getForecast()).isEqualTo("{\"n\":2}");
+        assertThat(loaded.get("95747").getWrittenAt()).isEqualTo(2000L);
+        assertThat(loaded.get("95747").getExpiresAt()).isEqualTo(62000L);
+        assertThat(loaded.get("95747").getStreet()).isEqualTo("1261 Pleasant Grove Blvd");
+        assertThat(loaded.get("95678").getForecast()).isEqualTo("{\"n\":3}");
+    }
+
+    /**
+     * Tests that a torn write at the end of the file is ignored.
+     * @throws IOException
+     */
+    @Test
+    public void truncatedTailIsIgnored() throws IOException {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        PersistentForecastStore store = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of);
+        store.open();
+        store.append("95747", entry("{\"n\":1}", 1000));
+        store.close();
+
+        // Simulate a crash part way through the next record.
+        Files.write(file, new byte[] { 0x46, 0x43, 0x53, 0x54, 0, 0, 1 }, StandardOpenOption.APPEND);
+
+        Map<String, CachedForecast> loaded = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of).load();
+        assertThat(loaded.size()).isEqualTo(1);
+        assertThat(loaded.get("95747").getForecast()).isEqualTo("{\"n\":1}");
+    }
+
+    /**
+     * Tests that a corrupt record length at the end of the file is
+     * treated as a truncated tail.
+     * @throws IOException
+     */
+    @Test
+    public void corruptLengthIsIgnored() throws IOException {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        PersistentForecastStore store = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of);
+        store.open();
+        store.append("95747", entry("{\"n\":1}", 1000));
+        store.close();
+
+        Files.write(file, new byte[] { 0x46, 0x43, 0x53, 0x54, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xf0,
+            0, 0, 0, 0, 0, 0, 0, 0 }, StandardOpenOption.APPEND);
+        assertThat(new PersistentForecastStore(file, Long.MAX_VALUE, Map::of).load().size()).isEqualTo(1);
+
+        Files.write(file, new byte[] { 0x46, 0x43, 0x53, 0x54, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            0, 0, 0, 0, 0, 0, 0, 0 }, StandardOpenOption.APPEND);
+        assertThat(new PersistentForecastStore(file, Long.MAX_VALUE, Map::of).load().size()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that appends keep going to the current file when the
+     * compacted file can't be written.
+     * @throws IOException
+     */
+    @Test
+    public void failedCompactionKeepsAppending() throws IOException {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        // A directory in the way of the compacted file fails every compaction.
+        Files.createDirectories(this.dir.resolve("forecast-cache.dat.compact").resolve("blocked"));
+        PersistentForecastStore store = new PersistentForecastStore(file, 256, Map::of);
+        store.open();
+        for (int i = 0; i < 50; i++) {
+            store.append(String.valueOf(95600 + i), entry("{\"n\":" + i + "}", i));
+        }
+        store.close();
+
+        Map<String, CachedForecast> loaded = new PersistentForecastStore(file, 256, Map::of).load();
+        assertThat(loaded.size()).isEqualTo(50);
+        assertThat(loaded.get("95649").getForecast()).isEqualTo("{\"n\":49}");
+    }
+
+    /**
+     * Tests that the file is compacted down to the live entries once
+     * it passes the compaction size.
+     * @throws IOException
+     */
+    @Test
+    public void compactsToLiveEntries() throws IOException {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        Map<String, CachedForecast> live = new ConcurrentHashMap<>();
+        PersistentForecastStore store = new PersistentForecastStore(file, 4096, () -> Map.copyOf(live));
+        store.open();
+        for (int i = 0; i < 200; i++) {
+            CachedForecast value = entry("{\"n\":" + i + "}", i);
+            live.put("95747", value);
+            store.append("95747", value);
+        }
+        store.close();
+
+        assertThat(Files.size(file)).isLessThan(4096L);
+        Map<String, CachedForecast> loaded = new PersistentForecastStore(file, 4096, Map::of).load();
+        assertThat(loaded.size()).isEqualTo(1);
+        assertThat(loaded.get("95747").getForecast()).isEqualTo("{\"n\":199}");
+    }
+
+    /**
+     * Tests that the NWS validators are stored with the entry.
+     * @throws IOException
+     */
+    @Test
+    public void storesUpstreamValidators() throws IOException {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        PersistentForecastStore store = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of);
+        store.open();
+        NwsForecast upstream = new NwsForecast(null, "https://api.weather.gov/gridpoints/STO/50,80/forecast",
+            "\"abc\"", "Tue, 14 Oct 2025 18:00:00 GMT", 5000, false);
+        store.append("95747", new CachedForecast("{\"n\":1}".getBytes(), null, 1000, 61000,
+            "1261 Pleasant Grove Blvd", "Roseville", "CA", "95747", upstream));
+        store.close();
+
+        CachedForecast loaded = new PersistentForecastStore(file, Long.MAX_VALUE, Map::of).load().get("95747");
+        assertThat(loaded.getUpstream().getForecastUrl()).isEqualTo(upstream.getForecastUrl());
+        assertThat(loaded.getUpstream().getEtag()).isEqualTo("\"abc\"");
+        assertThat(loaded.getUpstream().getLastModified()).isEqualTo(upstream.getLastModified());
+        assertThat(loaded.getUpstream().getExpires()).isEqualTo(5000L);
+    }
+
+    /**
+     * Tests that writes past the queue limit or after close are dropped
+     * and counted, and that the entries they retained are released.
+     * @throws Exception
+     */
+    @Test
+    public void droppedWritesReleaseEntries() throws Exception {
+        Path file = this.dir.resolve("forecast-cache.dat");
+        CountDownLatch compacting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // The first write compacts, which holds the writer thread.
+        PersistentForecastStore store = new PersistentForecastStore(file, 1, () -> {
+            compacting.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Map.of();
+        }, 1);
+        store.open();
+
+        CachedForecast writing = entry("{\"n\":1}", 1000).offHeap();
+        CachedForecast queued = entry("{\"n\":2}", 2000).offHeap();
+        CachedForecast dropped = entry("{\"n\":3}", 3000).offHeap();
+        store.append("95747", writing);
+        assertThat(compacting.await(5, TimeUnit.SECONDS)).isTrue();
+        store.append("95678", queued);
+        store.append("95661", dropped);
+        assertThat(store.getDroppedCount()).isEqualTo(1L);
+
+        release.countDown();
+        store.close();
+        CachedForecast closed = entry("{\"n\":4}", 4000).offHeap();
+        store.append("95747", closed);
+        assertThat(store.getDroppedCount()).isEqualTo(2L);
+
+        // Only the cache's own reference is left on each entry.
+        for (CachedForecast entry : new CachedForecast[] { writing, queued, dropped, closed }) {
+            entry.release();
+            assertThat(entry.retain()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the per-request stage timing and its Server-Timing header.
+ */
+public class RequestTimingTest {
+    /**
+     * Tests that stages timed on the request's thread are reported, and
+     * that stages timed after it finished or on other threads aren't.
+     * @throws Exception
+     */
+    @Test
+    public void stagesTimedOnRequestThread() throws Exception {
+        ForecastMetrics metrics = new ForecastMetrics();
+        RequestTiming timing = RequestTiming.start();
+        metrics.record(ForecastMetrics.Stage.GEOCODE, 1_500_000);
+        metrics.record(ForecastMetrics.Stage.GEOCODE, 1_000_000);
+        metrics.record(ForecastMetrics.Stage.NWS_POINTS, 20_000);
+        Thread other = Thread.ofVirtual().start(() -> metrics.record(ForecastMetrics.Stage.NWS_FORECAST, 5_000_000));
+        other.join();
+        timing.finish();
+        metrics.record(ForecastMetrics.Stage.NWS_FORECAST, 5_000_000);
+
+        assertThat(timing.getNanos(ForecastMetrics.Stage.GEOCODE)).isEqualTo(2_500_000);
+        assertThat(timing.getNanos(ForecastMetrics.Stage.NWS_FORECAST)).isEqualTo(0);
+        assertThat(timing.toServerTiming()).matches("geocode;dur=2\\.50, points;dur=0\\.02, total;dur=[0-9]+\\.[0-9]{2}");
+        assertThat(timing.toLogFields()).matches("geocodeMs=2\\.50 pointsMs=0\\.02 totalMs=[0-9]+\\.[0-9]{2}");
+    }
+
+    /**
+     * Tests that only one of the request's thread and its deadline
+     * claims the response, and that stages aren't recorded once the
+     * request expired.
+     * @throws Exception
+     */
+    @Test
+    public void expiredRequestStopsRecording() throws Exception {
+        ForecastMetrics metrics = new ForecastMetrics();
+        RequestTiming timing = RequestTiming.start();
+        metrics.record(ForecastMetrics.Stage.CACHE, 10_000);
+        assertThat(timing.expire()).isTrue();
+        metrics.record(ForecastMetrics.Stage.GEOCODE, 1_500_000);
+        assertThat(timing.respond()).isFalse();
+        timing.finish();
+        assertThat(timing.getNanos(ForecastMetrics.Stage.GEOCODE)).isEqualTo(0);
+        assertThat(timing.toServerTiming()).matches("cache;dur=0\\.01, total;dur=[0-9]+\\.[0-9]{2}");
+
+        RequestTiming answered = RequestTiming.start();
+        assertThat(answered.respond()).isTrue();
+        assertThat(answered.expire()).isFalse();
+        metrics.record(ForecastMetrics.Stage.WRITE, 20_000);
+        answered.finish();
+        assertThat(answered.getNanos(ForecastMetrics.Stage.WRITE)).isEqualTo(20_000);
+    }
+
+    /**
+     * Tests that a forecast response has the Server-Timing header with
+     * the cache lookup, and the forecast load on a miss.
+     * @throws Exception
+     */
+    @Test
+    public void forecastHasServerTiming() throws Exception {
+        StubForecastService service = new StubForecastService() {
+            @Override
+            protected CachedForecast fetchForecast(GridPoint point, String street, String city, String state, String zipcode) {
+                return this.metrics.time(ForecastMetrics.Stage.NWS_FORECAST, () -> super.fetchForecast(point, street, city, state, zipcode));
+            }
+        };
+        ForecastController controller = new ForecastController(service);
+
+        MockHttpServletResponse miss = new MockHttpServletResponse();
+        controller.forecast(new MockHttpServletRequest("GET", "/forecast"), miss, "1 Main St", "Roseville", "CA", "95747", null);
+        assertThat(miss.getHeader(RequestTiming.SERVER_TIMING)).matches("cache;dur=[0-9.]+, forecast;dur=[0-9.]+, total;dur=[0-9.]+");
+
+        MockHttpServletResponse hit = new MockHttpServletResponse();
+        controller.forecast(new MockHttpServletRequest("GET", "/forecast"), hit, "1 Main St", "Roseville", "CA", "95747", null);
+        assertThat(hit.getHeader(RequestTiming.SERVER_TIMING)).matches("cache;dur=[0-9.]+, total;dur=[0-9.]+");
+        assertThat(service.fetches.get()).isEqualTo(1);
+    }
+}
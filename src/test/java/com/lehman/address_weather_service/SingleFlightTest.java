@@ -0,0 +1,196 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SingleFlight test class.
+ */
+public class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    /**
+     * Tests that concurrent callers for the same key share one load.
+     * @throws Exception
+     */
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("95747", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "forecast";
+                })));
+            }
+
+            // Wait for every caller to either lead or join, then release the leader.
+            while (singleFlight.getLoadCount() + singleFlight.getCoalescedCount() < CALLERS) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("forecast");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(singleFlight.getLoadCount()).isEqualTo(1);
+        assertThat(singleFlight.getCoalescedCount()).isEqualTo(CALLERS - 1);
+        assertThat(singleFlight.getInFlightCount()).isEqualTo(0);
+    }
+
+    /**
+     * Tests that a loader failure is thrown to every waiter.
+     * @throws Exception
+     */
+    @Test
+    public void failurePropagatesToWaiters() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("95747", () -> {
+                    release.await();
+                    throw new IOException("upstream failed");
+                })));
+            }
+
+            while (singleFlight.getLoadCount() + singleFlight.getCoalescedCount() < CALLERS) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IOException.class)
+                    .hasRootCauseMessage("upstream failed");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Once the failed load is done the next caller loads again.
+        assertThat(singleFlight.execute("95747", () -> "forecast")).isEqualTo("forecast");
+        assertThat(singleFlight.getLoadCount()).isEqualTo(2);
+    }
+
+    /**
+     * Tests that a waiter gives up after the wait limit while the load
+     * carries on, and that a leader's checked exception of another type
+     * than the waiter's is thrown to it wrapped.
+     * @throws Exception
+     */
+    @Test
+    public void waitersGiveUpAndGetWrappedFailures() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(200);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("95747", () -> {
+                release.await();
+                throw new InterruptedException("leader failed");
+            }));
+            while (singleFlight.getInFlightCount() < 1) {
+                Thread.sleep(5);
+            }
+
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> singleFlight.execute("95747", IOException.class, () -> "forecast"))
+                .isInstanceOf(UpstreamUnavailableException.class);
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+            assertThat(singleFlight.getInFlightCount()).isEqualTo(1);
+
+            Future<String> waiter = executor.submit(() -> singleFlight.execute("95747", IOException.class, () -> "forecast"));
+            while (singleFlight.getCoalescedCount() < 2) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(CompletionException.class)
+                .hasRootCauseInstanceOf(InterruptedException.class);
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(InterruptedException.class);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a submitted load is in flight right away and that a
+     * caller joining it raises its priority to the caller's.
+     * @throws Exception
+     */
+    @Test
+    public void joiningRaisesPriority() throws Exception {
+        SingleFlight<String, UpstreamScheduler.Priority> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            CompletableFuture<UpstreamScheduler.Priority> refresh = UpstreamScheduler.withPriority(UpstreamScheduler.Priority.BACKGROUND,
+                () -> singleFlight.submit("key", () -> {
+                    release.await();
+                    return UpstreamScheduler.currentPriority().get();
+                }, executor));
+            assertThat(singleFlight.getInFlightCount()).isEqualTo(1);
+
+            // The current thread is interactive by default.
+            Future<UpstreamScheduler.Priority> joined = executor.submit(() -> singleFlight.execute("key", () -> null));
+            while (singleFlight.getCoalescedCount() < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertThat(refresh.get(5, TimeUnit.SECONDS)).isEqualTo(UpstreamScheduler.Priority.INTERACTIVE);
+            assertThat(joined.get(5, TimeUnit.SECONDS)).isEqualTo(UpstreamScheduler.Priority.INTERACTIVE);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(singleFlight.getLoadCount()).isEqualTo(1);
+    }
+}
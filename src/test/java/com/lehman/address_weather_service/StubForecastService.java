@@ -0,0 +1,84 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forecast service used by the tests that returns a canned forecast,
+ * or fails, instead of calling the upstream services. Each zipcode is
+ * its own grid cell.
+ */
+class StubForecastService extends ForecastService {
+    final AtomicInteger fetches = new AtomicInteger();
+    volatile boolean failing = false;
+    volatile String notFoundZipcode = null;
+
+    StubForecastService() {
+        super(30, 1000, 0, 60, 1000, 60, 1000, 0.5, 10, 200, 300, 15, 1000);
+    }
+
+    /**
+     * Creates the batch and bulk endpoints on top of this service.
+     */
+    BatchForecastController batchController() {
+        BatchForecastController controller = new BatchForecastController(this);
+        controller.batchMaxAddresses = 100;
+        controller.batchMaxConcurrency = 4;
+        controller.bulkMaxInFlight = 4;
+        return controller;
+    }
+
+    /**
+     * Gets the forecast cache key of the zipcode's grid cell.
+     */
+    static String gridKey(String zipcode) {
+        return "TST/" + Integer.parseInt(zipcode) + ",0";
+    }
+
+    @Override
+    protected GridPoint resolveGridPoint(String street, String city, String state, String zipcode) {
+        if (zipcode.equals(this.notFoundZipcode)) {
+            return null;
+        }
+        int x = Integer.parseInt(zipcode);
+        GridPoint point = new GridPoint("TST", x, 0, "http://localhost/gridpoints/TST/" + x + ",0/forecast");
+        Coordinates coordinates = new Coordinates();
+        coordinates.set(x, 0);
+        this.geocodeCache.put(AddressNormalizer.normalize(street, city, state, zipcode), coordinates);
+        this.pointsCache.put(pointsKey(coordinates), point);
+        return point;
+    }
+
+    @Override
+    protected CachedForecast fetchForecast(GridPoint point, String street, String city, String state, String zipcode) {
+        if (this.failing) {
+            throw new IllegalStateException("upstream down");
+        }
+        int n = this.fetches.incrementAndGet();
+        long now = System.currentTimeMillis();
+        CachedForecast entry = new CachedForecast(
+            "{\"n\":" + n + "}", now, now + TimeUnit.MINUTES.toMillis(30), street, city, state, zipcode
+        );
+        this.putForecast(point.getKey(), entry);
+        return entry;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * UpstreamGuard test class.
+ */
+public class UpstreamGuardTest {
+    /**
+     * Tests that the breaker opens on upstream failures, fails fast
+     * while open and closes again after a successful probe.
+     * @throws Exception
+     */
+    @Test
+    public void circuitBreakerOpensAndRecovers() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, 100);
+        UpstreamGuard guard = new UpstreamGuard("nws", breaker, null, false, 0);
+        AtomicInteger calls = new AtomicInteger();
+
+        // A 404 is the upstream answering, not failing.
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> guard.call(() -> {
+                calls.incrementAndGet();
+                throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+            })).isInstanceOf(HttpClientErrorException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        // Half of the last 4 calls failing opens it.
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> guard.call(() -> {
+                calls.incrementAndGet();
+                throw new ResourceAccessException("timed out");
+            })).isInstanceOf(ResourceAccessException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> guard.call(() -> calls.incrementAndGet()))
+            .isInstanceOf(UpstreamUnavailableException.class);
+        assertThat(calls.get()).isEqualTo(6);
+        assertThat(breaker.getRejectedCount()).isEqualTo(1);
+
+        Thread.sleep(150);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(guard.call(() -> calls.incrementAndGet())).isEqualTo(7);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getOpenedCount()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that calls over the limit are rejected and that the limit
+     * is cut by slow calls and grows back with fast ones.
+     */
+    @Test
+    public void concurrencyLimitFollowsLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8, 100, 0.5);
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getRejectedCount()).isEqualTo(1);
+
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(500), false);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10), true);
+        assertThat(limiter.getLimit()).isEqualTo(1);
+        limiter.release();
+        limiter.release();
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+
+        // The limit only grows while it is being used.
+        for (int i = 0; i < 20; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+            limiter.tryAcquire();
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10), false);
+            if (limiter.getInFlight() > 0) {
+                limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10), false);
+            }
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(2);
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+    }
+
+    /**
+     * Tests that a call slower than the hedge delay is sent again and
+     * the faster answer is returned.
+     * @throws Exception
+     */
+    @Test
+    public void slowCallIsHedged() throws Exception {
+        UpstreamGuard guard = new UpstreamGuard("nws", null, new AdaptiveConcurrencyLimiter(10, 1, 10, 1000, 0.9), true, 20);
+        for (int i = 0; i < 20; i++) {
+            assertThat(guard.call(() -> "fast")).isEqualTo("fast");
+        }
+        assertThat(guard.getHedgeDelayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.nanoTime();
+        String result = guard.call(() -> {
+            if (calls.incrementAndGet() == 1) {
+                Thread.sleep(5000);
+                return "slow";
+            }
+            return "hedge";
+        });
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertThat(guard.getHedgesSent()).isEqualTo(1);
+        assertThat(guard.getHedgeWins()).isEqualTo(1);
+
+        // The cancelled call gives its slot back without cutting the limit.
+        Thread.sleep(100);
+        assertThat(guard.limiter.getInFlight()).isEqualTo(0);
+        assertThat(guard.limiter.getLimit()).isEqualTo(10);
+    }
+
+    /**
+     * Tests that a hedge is only sent when the host's rate limit has a
+     * token free for it.
+     * @throws Exception
+     */
+    @Test
+    public void hedgeTakesRateLimitToken() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(10, 5000);
+        scheduler.setRate("api.weather.gov", 0.01, 1);
+        UpstreamGuard guard = new UpstreamGuard("nws", null, null, true, 20, scheduler, "api.weather.gov");
+        for (int i = 0; i < 20; i++) {
+            guard.call(() -> "fast");
+        }
+
+        // The call takes the only token, so there is none for a hedge.
+        AtomicInteger calls = new AtomicInteger();
+        String result = scheduler.call("api.weather.gov", () -> guard.call(() -> {
+            calls.incrementAndGet();
+            Thread.sleep(200);
+            return "slow";
+        }));
+        assertThat(result).isEqualTo("slow");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(guard.getHedgesSent()).isEqualTo(0);
+    }
+}
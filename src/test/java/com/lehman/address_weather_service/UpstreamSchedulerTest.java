@@ -0,0 +1,188 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * UpstreamScheduler test class.
+ */
+public class UpstreamSchedulerTest {
+    private static final String HOST = "api.weather.gov";
+
+    /**
+     * Tests that the burst is allowed right away and the rest waits
+     * for the rate.
+     * @throws Exception
+     */
+    @Test
+    public void limitsRateAfterBurst() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(10, 2000);
+        scheduler.setRate(HOST, 20, 2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            scheduler.call(HOST, () -> "forecast");
+        }
+        // Two tokens at 20 per second take 100ms to refill.
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(80L, 1000L);
+
+        // Hosts without a rate aren't limited.
+        assertThat(scheduler.call("geocoding.geo.census.gov", () -> "coordinates")).isEqualTo("coordinates");
+    }
+
+    /**
+     * Tests that waiting requests are served by priority and that
+     * lower priority ones are shed when the queue is full.
+     * @throws Exception
+     */
+    @Test
+    public void higherPriorityGoesFirst() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(2, 5000);
+        scheduler.setRate(HOST, 5, 1);
+        scheduler.call(HOST, () -> "drain");
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<?> first = submit(executor, scheduler, UpstreamScheduler.Priority.BACKGROUND, "first", order);
+            awaitQueued(scheduler, 1);
+            Future<?> second = submit(executor, scheduler, UpstreamScheduler.Priority.BACKGROUND, "second", order);
+            awaitQueued(scheduler, 2);
+
+            // The queue is full, so the newest background request is shed.
+            Future<?> interactive = submit(executor, scheduler, UpstreamScheduler.Priority.INTERACTIVE, "interactive", order);
+            assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(UpstreamUnavailableException.class);
+
+            // A batch request sheds the remaining background one.
+            Future<?> batch = submit(executor, scheduler, UpstreamScheduler.Priority.BATCH, "batch", order);
+            assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(UpstreamUnavailableException.class);
+
+            // Nothing lower than background is left to shed.
+            assertThatThrownBy(() -> UpstreamScheduler.withPriority(UpstreamScheduler.Priority.BACKGROUND,
+                () -> scheduler.call(HOST, () -> "refresh")))
+                .isInstanceOf(UpstreamUnavailableException.class)
+                .satisfies(e -> assertThat(((UpstreamUnavailableException) e).getRetryAfterSeconds()).isGreaterThanOrEqualTo(1));
+
+            interactive.get(5, TimeUnit.SECONDS);
+            batch.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(order).containsExactly("interactive", "batch");
+        assertThat(scheduler.getRejectedCount(HOST)).isEqualTo(3);
+    }
+
+    /**
+     * Tests that a throttled response pauses the host.
+     * @throws Exception
+     */
+    @Test
+    public void throttledResponsePausesHost() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(10, 5000);
+        scheduler.setRate(HOST, 100, 10);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        assertThatThrownBy(() -> scheduler.call(HOST, () -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", headers, null, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        long start = System.nanoTime();
+        scheduler.call(HOST, () -> "forecast");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(900L);
+    }
+
+    /**
+     * Tests that a 403 without a Retry-After doesn't pause the host.
+     * @throws Exception
+     */
+    @Test
+    public void bareForbiddenDoesNotPauseHost() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(10, 5000);
+        scheduler.setRate(HOST, 100, 10);
+
+        assertThatThrownBy(() -> scheduler.call(HOST, () -> {
+            throw HttpClientErrorException.create(HttpStatus.FORBIDDEN, "Forbidden", new HttpHeaders(), null, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        long start = System.nanoTime();
+        scheduler.call(HOST, () -> "forecast");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500L);
+    }
+
+    /**
+     * Tests that raising the priority of a load moves its waiting
+     * request ahead of lower priority ones.
+     * @throws Exception
+     */
+    @Test
+    public void raisedLoadGoesFirst() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(5, 5000);
+        scheduler.setRate(HOST, 5, 1);
+        scheduler.call(HOST, () -> "drain");
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            UpstreamScheduler.LoadPriority refresh = new UpstreamScheduler.LoadPriority(UpstreamScheduler.Priority.BACKGROUND);
+            Future<?> raised = executor.submit(() -> UpstreamScheduler.withPriority(refresh,
+                () -> scheduler.call(HOST, () -> order.add("refresh"))));
+            awaitQueued(scheduler, 1);
+            Future<?> batch = submit(executor, scheduler, UpstreamScheduler.Priority.BATCH, "batch", order);
+            awaitQueued(scheduler, 2);
+
+            // An interactive caller joins the refresh.
+            refresh.raise(UpstreamScheduler.Priority.INTERACTIVE);
+            assertThat(refresh.get()).isEqualTo(UpstreamScheduler.Priority.INTERACTIVE);
+
+            raised.get(5, TimeUnit.SECONDS);
+            batch.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(order).containsExactly("refresh", "batch");
+    }
+
+    private static Future<?> submit(ExecutorService executor, UpstreamScheduler scheduler,
+                                    UpstreamScheduler.Priority priority, String name, List<String> order) {
+        return executor.submit(() -> UpstreamScheduler.withPriority(priority,
+            () -> scheduler.call(HOST, () -> order.add(name))));
+    }
+
+    private static void awaitQueued(UpstreamScheduler scheduler, int queued) throws InterruptedException {
+        while (scheduler.getQueued(HOST) < queued) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded stand-in for the Census Bureau geocoder and the NWS API that
+ * replays the recorded responses in src/test/resources, so the clients
+ * and the whole service can be exercised offline. Each zipcode geocodes
+ * to its own point and NWS grid cell, and the zipcode 00000 has no
+ * address match. Responses can be delayed by a log-normal latency and
+ * fail with a 500 or be throttled with a 429 at the configured rates.
+ * The geocoder is reached through 127.0.0.1 and the NWS through
+ * localhost so the two get their own upstream rate limits.
+ */
+class UpstreamSimulator implements AutoCloseable {
+    // Value used in the 99th percentile of a standard normal.
+    private static final double Z_99 = 2.326;
+
+    private static final Pattern ZIP = Pattern.compile("[?&]zip=([^&]*)");
+    private static final Pattern POINT = Pattern.compile("/points/(-?[0-9.]+),(-?[0-9.]+)");
+    private static final Pattern CELL = Pattern.compile("/gridpoints/SIM/([0-9]+),([0-9]+)/forecast");
+
+    private final String geocodeResult = resource("CensusGovGeocodeClientResult1.json");
+    private final String geocodeNoMatch = resource("CensusGovGeocodeClientNoMatch.json");
+    private final String pointsResult = resource("NwsGovClientPointsResult1.json");
+    private final byte[] forecastResult = resource("NwsGovClientForecastResult1.json").getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+
+    private volatile long latencyMedianMillis = 0;
+    private volatile double latencySigma = 0;
+    private volatile double errorRate = 0;
+    private volatile double throttleRate = 0;
+
+    private final LongAdder geocodeRequests = new LongAdder();
+    private final LongAdder pointsRequests = new LongAdder();
+    private final LongAdder forecastRequests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * Constructor starts the simulator on a free port.
+     * @throws IOException
+     */
+    UpstreamSimulator() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/geocoder/", this::geocode);
+        this.server.createContext("/points/", this::points);
+        this.server.createContext("/gridpoints/", this::forecast);
+        this.server.start();
+    }
+
+    /**
+     * Sets the latency of every response as a log-normal distribution.
+     * @param medianMillis is a long with the median latency millis.
+     * @param p99Millis is a long with the 99th percentile latency millis,
+     * which is at least the median.
+     */
+    void setLatency(long medianMillis, long p99Millis) {
+        this.latencyMedianMillis = medianMillis;
+        this.latencySigma = medianMillis > 0 && p99Millis > medianMillis ? Math.log((double) p99Millis / medianMillis) / Z_99 : 0;
+    }
+
+    /**
+     * Sets the fraction of requests that fail with a 500.
+     * @param errorRate is a double from 0 to 1.
+     */
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets the fraction of requests that are throttled with a 429.
+     * @param throttleRate is a double from 0 to 1.
+     */
+    void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    /**
+     * Gets the URL to configure as weatherservice.geocodeUrl.
+     * @return A String with the geocode URL template.
+     */
+    String getGeocodeUrl() {
+        return "http://127.0.0.1:" + this.getPort()
+            + "/geocoder/locations/address?street={street}&city={city}&state={state}&zip={zipcode}&benchmark=4&format=json";
+    }
+
+    /**
+     * Gets the URL to configure as weatherservice.nwsUrl.
+     * @return A String with the NWS points URL template.
+     */
+    String getNwsUrl() {
+        return "http://localhost:" + this.getPort() + "/points/{latitude},{longitude}";
+    }
+
+    /**
+     * Gets the port the simulator listens on.
+     * @return An int with the port.
+     */
+    int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    // Request counts by endpoint and outcome.
+    long getGeocodeRequests() {
+        return this.geocodeRequests.sum();
+    }
+
+    long getPointsRequests() {
+        return this.pointsRequests.sum();
+    }
+
+    long getForecastRequests() {
+        return this.forecastRequests.sum();
+    }
+
+    long getNotModifiedCount() {
+        return this.notModified.sum();
+    }
+
+    long getErrorCount() {
+        return this.errors.sum();
+    }
+
+    long getThrottledCount() {
+        return this.throttled.sum();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    /**
+     * Gets the point a zipcode geocodes to, one hundredth of a degree
+     * apart for each zipcode.
+     * @param zipcode is an int with the zipcode.
+     * @return A double array with the latitude and longitude.
+     */
+    static double[] pointOf(int zipcode) {
+        return new double[] { 25 + (zipcode % 2000) / 100.0, -70 - (zipcode / 2000) / 100.0 };
+    }
+
+    private void geocode(HttpExchange exchange) throws IOException {
+        this.geocodeRequests.increment();
+        if (this.fault(exchange)) {
+            return;
+        }
+        Matcher zip = ZIP.matcher(exchange.getRequestURI().getRawQuery() == null ? "" : "?" + exchange.getRequestURI().getRawQuery());
+        int zipcode = zip.find() ? parseZipcode(URLDecoder.decode(zip.group(1), StandardCharsets.UTF_8)) : 0;
+        if (zipcode <= 0) {
+            send(exchange, 200, this.geocodeNoMatch.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        double[] point = pointOf(zipcode);
+        String body = this.geocodeResult
+            .replace("-121.316399912491", Double.toString(point[1]))
+            .replace("38.771887717945", Double.toString(point[0]));
+        send(exchange, 200, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void points(HttpExchange exchange) throws IOException {
+        this.pointsRequests.increment();
+        if (this.fault(exchange)) {
+            return;
+        }
+        Matcher point = POINT.matcher(exchange.getRequestURI().getPath());
+        if (!point.matches()) {
+            send(exchange, 404, new byte[0]);
+            return;
+        }
+        long x = Math.round((Double.parseDouble(point.group(1)) - 25) * 100);
+        long y = Math.round((-70 - Double.parseDouble(point.group(2))) * 100);
+        String body = this.pointsResult
+            .replace("https://api.weather.gov/gridpoints/STO/53,82", "http://localhost:" + this.getPort() + "/gridpoints/SIM/" + x + "," + y)
+            .replace("\"gridId\":\"STO\"", "\"gridId\":\"SIM\"")
+            .replace("\"gridX\":53", "\"gridX\":" + x)
+            .replace("\"gridY\":82", "\"gridY\":" + y);
+        send(exchange, 200, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void forecast(HttpExchange exchange) throws IOException {
+        this.forecastRequests.increment();
+        if (this.fault(exchange)) {
+            return;
+        }
+        Matcher cell = CELL.matcher(exchange.getRequestURI().getPath());
+        if (!cell.matches()) {
+            send(exchange, 404, new byte[0]);
+            return;
+        }
+        // The forecast of a cell never changes, so it is always valid.
+        String etag = "\"SIM/" + cell.group(1) + "," + cell.group(2) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "public, max-age=600");
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            this.notModified.increment();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/geo+json");
+        send(exchange, 200, this.forecastResult);
+    }
+
+    /**
+     * Delays the response and fails or throttles it at the configured
+     * rates.
+     * @param exchange is the HttpExchange of the request.
+     * @return A boolean with true if a fault response was sent.
+     * @throws IOException
+     */
+    private boolean fault(HttpExchange exchange) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long median = this.latencyMedianMillis;
+        if (median > 0) {
+            long nanos = (long) (TimeUnit.MILLISECONDS.toNanos(median) * Math.exp(this.latencySigma * random.nextGaussian()));
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double roll = random.nextDouble();
+        if (roll < this.throttleRate) {
+            this.throttled.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, new byte[0]);
+            return true;
+        }
+        if (roll < this.throttleRate + this.errorRate) {
+            this.errors.increment();
+            send(exchange, 500, new byte[0]);
+            return true;
+        }
+        return false;
+    }
+
+    private static int parseZipcode(String zipcode) {
+        try {
+            return Integer.parseInt(AddressNormalizer.normalizeZipcode(zipcode));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String resource(String name) {
+        try (InputStream in = UpstreamSimulator.class.getResourceAsStream("/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ *     Copyright 2025 Austin Lehman (cup_of_code@fastmail.com)
+ *
+ *     This file is part of address-weather-service.
+ *
+ *     address-weather-service is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License,
+ *     or (at your option) any later version.
+ *
+ *     address-weather-service is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with address-weather-service. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.lehman.address_weather_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the upstream clients against the UpstreamSimulator, which
+ * replays the recorded responses without network access.
+ */
+public class UpstreamSimulatorTest {
+    /**
+     * Tests geocoding, the points lookup, the forecast and its
+     * revalidation for a simulated address.
+     * @throws Exception
+     */
+    @Test
+    public void clientsGetSimulatedForecast() throws Exception {
+        try (UpstreamSimulator simulator = new UpstreamSimulator();
+             InputStream recorded = getClass().getResourceAsStream("/NwsGovClientForecastResult1.json")) {
+            CensusGovGeocodeClient census = new CensusGovGeocodeClient(simulator.getGeocodeUrl());
+            NwsGovClient nws = new NwsGovClient(simulator.getNwsUrl());
+
+            Coordinates coordinates = census.geocode("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747");
+            double[] point = UpstreamSimulator.pointOf(95747);
+            assertThat(coordinates.getLatitude()).isEqualTo(point[0]);
+            assertThat(coordinates.getLongitude()).isEqualTo(point[1]);
+            assertThat(census.geocode("Nowhere", "Nowhere", "CA", "00000")).isNull();
+
+            GridPoint gridPoint = nws.getGridPoint(coordinates);
+            assertThat(gridPoint.getKey()).isEqualTo("SIM/1747,47");
+            assertThat(nws.getGridPoint(census.geocode("1 Main St", "Roseville", "CA", "95748")).getKey()).isEqualTo("SIM/1748,47");
+
+            NwsForecast forecast = nws.fetchForecast(gridPoint);
+            assertThat(forecast.getBody()).isEqualTo(new String(recorded.readAllBytes(), StandardCharsets.UTF_8));
+            assertThat(nws.revalidate(forecast).isNotModified()).isTrue();
+
+            assertThat(simulator.getGeocodeRequests()).isEqualTo(3);
+            assertThat(simulator.getPointsRequests()).isEqualTo(2);
+            assertThat(simulator.getForecastRequests()).isEqualTo(2);
+            assertThat(simulator.getNotModifiedCount()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Tests that the simulator fails and throttles requests at the
+     * configured rates.
+     * @throws Exception
+     */
+    @Test
+    public void injectsErrorsAndThrottling() throws Exception {
+        try (UpstreamSimulator simulator = new UpstreamSimulator()) {
+            CensusGovGeocodeClient census = new CensusGovGeocodeClient(simulator.getGeocodeUrl());
+
+            simulator.setErrorRate(1);
+            assertThatThrownBy(() -> census.geocode("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747"))
+                .isInstanceOf(HttpServerErrorException.class);
+
+            simulator.setErrorRate(0);
+            simulator.setThrottleRate(1);
+            assertThatThrownBy(() -> census.geocode("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747"))
+                .isInstanceOf(HttpClientErrorException.TooManyRequests.class);
+
+            simulator.setThrottleRate(0);
+            simulator.setLatency(20, 40);
+            long start = System.nanoTime();
+            assertThat(census.geocode("1261 Pleasant Grove Blvd", "Roseville", "CA", "95747")).isNotNull();
+            assertThat(System.nanoTime() - start).isGreaterThan(5_000_000L);
+
+            assertThat(simulator.getErrorCount()).isEqualTo(1);
+            assertThat(simulator.getThrottledCount()).isEqualTo(1);
+        }
+    }
+}